@@ -0,0 +1,269 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.alfresco.repo.admin.SysAdminParams;
+import org.alfresco.repo.model.Repository;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.repository.MimetypeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.repository.TemplateService;
+import org.alfresco.service.cmr.rule.RuleService;
+import org.alfresco.service.namespace.NamespaceService;
+
+/**
+ * This class provides minimal stubs of Alfresco services so that webhook call components can be benchmarked without a running repository.
+ * Stubs answer any unspecified operation with {@code null} / the default value of primitive return types.
+ *
+ * @author Axel Faust
+ */
+public final class BenchmarkStubs
+{
+
+    public static final NodeRef PERSON = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "benchmark-person");
+
+    public static final NodeRef COMPANY_HOME = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "benchmark-company-home");
+
+    public static final NodeRef USER_HOME = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "benchmark-user-home");
+
+    private BenchmarkStubs()
+    {
+        // NO-OP
+    }
+
+    /**
+     * Creates a stub of a service interface.
+     *
+     * @param type
+     *            the service interface
+     * @param answers
+     *            the answers for specific operations, keyed by operation name
+     * @return the stub
+     */
+    public static <T> T stub(final Class<T> type, final Map<String, Function<Object[], Object>> answers)
+    {
+        final InvocationHandler handler = (proxy, method, args) -> {
+            final Object result;
+            if (method.getDeclaringClass() == Object.class)
+            {
+                result = handleObjectMethod(proxy, method, args, type);
+            }
+            else if (answers.containsKey(method.getName()))
+            {
+                result = answers.get(method.getName()).apply(args);
+            }
+            else
+            {
+                result = defaultValue(method.getReturnType());
+            }
+            return result;
+        };
+        return type.cast(Proxy.newProxyInstance(BenchmarkStubs.class.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    /**
+     * Creates a stub of a service interface answering all operations with default values.
+     *
+     * @param type
+     *            the service interface
+     * @return the stub
+     */
+    public static <T> T stub(final Class<T> type)
+    {
+        return stub(type, Collections.emptyMap());
+    }
+
+    /**
+     * Creates a stub of the template service which builds a default model of comparable size to the real service.
+     *
+     * @return the stub
+     */
+    public static TemplateService templateService()
+    {
+        final Map<String, Function<Object[], Object>> answers = new HashMap<>();
+        answers.put("buildDefaultModel", args -> {
+            final Map<String, Object> model = new HashMap<>();
+            model.put("person", args[0]);
+            model.put("companyhome", args[1]);
+            model.put("userhome", args[2]);
+            model.put("date", new Date());
+            model.put("message", new Object());
+            model.put("hasAspect", new Object());
+            model.put("hasPermission", new Object());
+            model.put("session", new Object());
+            model.put("classification", new Object());
+            model.put("url", new Object());
+            model.put("server", new Object());
+            return model;
+        });
+        return stub(TemplateService.class, answers);
+    }
+
+    /**
+     * Creates a stub of the repository helper returning fixed person / home nodes.
+     *
+     * @return the stub
+     */
+    public static Repository repository()
+    {
+        return new Repository()
+        {
+
+            /**
+             *
+             * {@inheritDoc}
+             */
+            @Override
+            public NodeRef getPerson()
+            {
+                return PERSON;
+            }
+
+            /**
+             *
+             * {@inheritDoc}
+             */
+            @Override
+            public NodeRef getCompanyHome()
+            {
+                return COMPANY_HOME;
+            }
+
+            /**
+             *
+             * {@inheritDoc}
+             */
+            @Override
+            public NodeRef getUserHome(final NodeRef person)
+            {
+                return USER_HOME;
+            }
+        };
+    }
+
+    /**
+     * Creates a webhook call action executer backed by stubbed services.
+     *
+     * @param transport
+     *            the transport to use for webhook calls
+     * @return the executer
+     */
+    public static WebhookCallActionExecuter executer(final WebhookTransport transport)
+    {
+        final WebhookCallActionExecuter executer = new WebhookCallActionExecuter();
+        executer.setNodeService(stub(NodeService.class));
+        executer.setNamespaceService(stub(NamespaceService.class));
+        executer.setRuleService(stub(RuleService.class));
+        executer.setTemplateService(templateService());
+        executer.setMimetypeService(stub(MimetypeService.class));
+        executer.setSysAdminParams(stub(SysAdminParams.class));
+        executer.setRepository(repository());
+        executer.setWebhookTransport(transport);
+        executer.setDispatchMode(WebhookCallActionExecuter.DispatchMode.SYNCHRONOUS.name());
+        executer.afterPropertiesSet();
+        return executer;
+    }
+
+    /**
+     * Creates a template cache backed by stubbed services.
+     *
+     * @return the template cache
+     */
+    public static WebhookTemplateCache templateCache()
+    {
+        final Map<String, Function<Object[], Object>> answers = new HashMap<>();
+        final NodeService nodeService = stub(NodeService.class);
+        final TemplateService templateService = stub(TemplateService.class);
+        answers.put("getNodeService", args -> nodeService);
+        answers.put("getTemplateService", args -> templateService);
+
+        final WebhookTemplateCache templateCache = new WebhookTemplateCache();
+        templateCache.setServiceRegistry(stub(ServiceRegistry.class, answers));
+        templateCache.setPolicyComponent(stub(PolicyComponent.class));
+        templateCache.afterPropertiesSet();
+        return templateCache;
+    }
+
+    private static Object handleObjectMethod(final Object proxy, final Method method, final Object[] args, final Class<?> type)
+    {
+        final Object result;
+        switch (method.getName())
+        {
+            case "equals":
+                result = Boolean.valueOf(proxy == args[0]);
+                break;
+            case "hashCode":
+                result = Integer.valueOf(System.identityHashCode(proxy));
+                break;
+            case "toString":
+                result = "Stub of " + type.getName();
+                break;
+            default:
+                result = null;
+        }
+        return result;
+    }
+
+    private static Object defaultValue(final Class<?> returnType)
+    {
+        Object result = null;
+        if (returnType == boolean.class)
+        {
+            result = Boolean.FALSE;
+        }
+        else if (returnType == char.class)
+        {
+            result = Character.valueOf('\0');
+        }
+        else if (returnType.isPrimitive() && returnType != void.class)
+        {
+            result = Integer.valueOf(0);
+            if (returnType == long.class)
+            {
+                result = Long.valueOf(0);
+            }
+            else if (returnType == double.class)
+            {
+                result = Double.valueOf(0);
+            }
+            else if (returnType == float.class)
+            {
+                result = Float.valueOf(0);
+            }
+            else if (returnType == short.class)
+            {
+                result = Short.valueOf((short) 0);
+            }
+            else if (returnType == byte.class)
+            {
+                result = Byte.valueOf((byte) 0);
+            }
+        }
+        return result;
+    }
+}
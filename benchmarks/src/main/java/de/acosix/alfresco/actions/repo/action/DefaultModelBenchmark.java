@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the construction of the default template model. As no transaction is active in the benchmark, this measures the cost of
+ * building the model from scratch, which is incurred once per user and transaction in the repository.
+ *
+ * @author Axel Faust
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DefaultModelBenchmark
+{
+
+    protected WebhookCallActionExecuter executer;
+
+    /**
+     * Sets up the executer for the benchmark.
+     */
+    @Setup
+    public void setup()
+    {
+        this.executer = BenchmarkStubs.executer(request -> new WebhookResponse(200, null));
+    }
+
+    /**
+     * Benchmarks the construction of the default template model.
+     *
+     * @return the default template model
+     */
+    @Benchmark
+    public Map<String, Object> buildDefaultModel()
+    {
+        return this.executer.buildDefaultModel();
+    }
+
+    /**
+     * Benchmarks the construction of the default template model including the resolution of all lazily resolved node values, i.e. the
+     * cost incurred if a template accesses the person and home folders.
+     *
+     * @return the default template model
+     */
+    @Benchmark
+    public Map<String, Object> buildAndResolveDefaultModel()
+    {
+        final Map<String, Object> defaultModel = this.executer.buildDefaultModel();
+        defaultModel.get("person");
+        defaultModel.get("companyhome");
+        defaultModel.get("userhome");
+        return defaultModel;
+    }
+}
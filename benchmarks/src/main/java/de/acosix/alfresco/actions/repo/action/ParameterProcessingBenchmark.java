@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the processing of the key-value action parameters for template model arguments and request headers, comparing the cached
+ * processing of the action executer with the raw parsing of parameter values by the current parser and the previous, regular expression
+ * based implementation.
+ *
+ * @author Axel Faust
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParameterProcessingBenchmark
+{
+
+    @Param({ "1", "10", "50" })
+    public int lines;
+
+    protected WebhookCallActionExecuter executer;
+
+    protected String parameterValue;
+
+    /**
+     * Sets up the executer and the parameter value for the benchmark.
+     */
+    @Setup
+    public void setup()
+    {
+        this.executer = BenchmarkStubs.executer(request -> new WebhookResponse(200, null));
+
+        final StringBuilder builder = new StringBuilder();
+        for (int line = 0; line < this.lines; line++)
+        {
+            if (line > 0)
+            {
+                builder.append('\n');
+            }
+            builder.append("key").append(line).append(" = some value ").append(line).append(" with an = sign");
+        }
+        this.parameterValue = builder.toString();
+    }
+
+    /**
+     * Benchmarks the processing of template model arguments.
+     *
+     * @return the filled template model
+     */
+    @Benchmark
+    public Map<String, Object> processTemplateModelArguments()
+    {
+        final Map<String, Object> model = new HashMap<>();
+        this.executer.processTemplateModelArguments(WebhookCallActionExecuter.PARAM_PAYLOAD_TEMPLATE_ARGUMENTS, this.parameterValue, model);
+        return model;
+    }
+
+    /**
+     * Benchmarks the processing of request headers.
+     *
+     * @return the filled list of headers
+     */
+    @Benchmark
+    public List<Pair<String, String>> processPostHeaders()
+    {
+        final List<Pair<String, String>> headers = new ArrayList<>();
+        this.executer.processPostHeaders(WebhookCallActionExecuter.PARAM_HEADERS, this.parameterValue, headers);
+        return headers;
+    }
+
+    /**
+     * Benchmarks the parsing of a parameter value without any caching.
+     *
+     * @return the parsed key-value pairs
+     */
+    @Benchmark
+    public List<Pair<String, String>> parseUncached()
+    {
+        return KeyValueParameterParser.parse(WebhookCallActionExecuter.PARAM_HEADERS, this.parameterValue);
+    }
+
+    /**
+     * Benchmarks the regular expression based parsing of a parameter value used before the introduction of
+     * {@link KeyValueParameterParser}, serving as a reference point for the allocation rate.
+     *
+     * @return the parsed key-value pairs
+     */
+    @Benchmark
+    public List<Pair<String, String>> parseLegacyUncached()
+    {
+        final List<Pair<String, String>> keyValues = new ArrayList<>();
+        final String[] lines = this.parameterValue.split("\\n");
+        for (final String line : lines)
+        {
+            final String[] keyVals = line.split("=");
+            if (keyVals.length >= 2)
+            {
+                final String key = keyVals[0].trim();
+                final String value = line.substring(line.indexOf('=', key.length()) + 1).trim();
+                keyValues.add(new Pair<>(key, value));
+            }
+            else
+            {
+                throw new IllegalArgumentException("Invalid line " + line);
+            }
+        }
+        return keyValues;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import freemarker.template.Template;
+
+/**
+ * Benchmarks the FreeMarker rendering of webhook URL and payload templates, comparing cached with freshly parsed templates and rendering
+ * into an intermediate string with streaming the result.
+ *
+ * @author Axel Faust
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TemplateRenderingBenchmark
+{
+
+    private static final String URL_TEMPLATE = "https://hooks.example.com/api/v1/events/${eventType}?node=${nodeId}&site=${site}";
+
+    private static final String PAYLOAD_TEMPLATE = "{\"eventType\": \"${eventType}\", \"nodeId\": \"${nodeId}\", "
+            + "\"title\": \"${title?json_string}\", \"items\": [<#list items as item>{\"index\": ${item?c}, \"label\": \"item-${item?c}\"}"
+            + "<#if item_has_next>, </#if></#list>]}";
+
+    @Param({ "10", "1000" })
+    public int payloadItems;
+
+    protected WebhookTemplateCache templateCache;
+
+    protected Map<String, Object> model;
+
+    /**
+     * Sets up the template cache and model for the benchmark.
+     */
+    @Setup
+    public void setup()
+    {
+        this.templateCache = BenchmarkStubs.templateCache();
+
+        this.model = new HashMap<>();
+        this.model.put("eventType", "nodeCreated");
+        this.model.put("nodeId", "4b0a8e5c-1c0d-4bb0-9a0b-5d0c0a5e3f7d");
+        this.model.put("site", "swsdp");
+        this.model.put("title", "A \"quoted\" document title");
+        final List<Integer> items = new ArrayList<>(this.payloadItems);
+        for (int idx = 0; idx < this.payloadItems; idx++)
+        {
+            items.add(Integer.valueOf(idx));
+        }
+        this.model.put("items", items);
+    }
+
+    /**
+     * Benchmarks the rendering of the URL template using the template cache.
+     *
+     * @return the rendered URL
+     */
+    @Benchmark
+    public String renderUrlCached()
+    {
+        return this.templateCache.processTemplateString(URL_TEMPLATE, this.model);
+    }
+
+    /**
+     * Benchmarks the rendering of the URL template parsing the template for every call, as the default template service does.
+     *
+     * @return the rendered URL
+     * @throws IOException
+     *             if the template cannot be parsed
+     */
+    @Benchmark
+    public String renderUrlUncached() throws IOException
+    {
+        final Template template = new Template("url", new StringReader(URL_TEMPLATE), this.templateCache.configuration);
+        return this.templateCache.process(template, this.model);
+    }
+
+    /**
+     * Benchmarks the rendering of the payload template into an intermediate string using the template cache.
+     *
+     * @return the rendered payload
+     */
+    @Benchmark
+    public String renderPayloadToString()
+    {
+        return this.templateCache.processTemplateString(PAYLOAD_TEMPLATE, this.model);
+    }
+
+    /**
+     * Benchmarks the streaming rendering of the payload template using the template cache.
+     */
+    @Benchmark
+    public void renderPayloadStreaming()
+    {
+        this.templateCache.processTemplateString(PAYLOAD_TEMPLATE, this.model, NullWriter.NULL_WRITER);
+    }
+
+    /**
+     * Benchmarks the rendering of the payload template parsing the template for every call, as the default template service does.
+     *
+     * @return the rendered payload
+     * @throws IOException
+     *             if the template cannot be parsed
+     */
+    @Benchmark
+    public String renderPayloadUncached() throws IOException
+    {
+        final Template template = new Template("payload", new StringReader(PAYLOAD_TEMPLATE), this.templateCache.configuration);
+        return this.templateCache.process(template, this.model);
+    }
+}
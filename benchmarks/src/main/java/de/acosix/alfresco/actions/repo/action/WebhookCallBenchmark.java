@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.entity.ContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Benchmarks webhook calls end-to-end against an embedded HTTP stub endpoint on the loopback interface, measuring both the latency of
+ * individual calls and the throughput of concurrent calls.
+ *
+ * @author Axel Faust
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class WebhookCallBenchmark
+{
+
+    private static final byte[] RESPONSE_BODY = "{\"status\": \"accepted\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({ "http", "guarded" })
+    public String transport;
+
+    @Param({ "1024", "65536" })
+    public int payloadSize;
+
+    protected HttpServer server;
+
+    protected ExecutorService serverExecutor;
+
+    protected HttpClientWebhookTransport httpTransport;
+
+    protected WebhookCallActionExecuter executer;
+
+    protected WebhookRequest request;
+
+    /**
+     * Starts the stub endpoint and sets up the executer for the benchmark.
+     *
+     * @throws IOException
+     *             if the stub endpoint cannot be started
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        this.serverExecutor = Executors.newFixedThreadPool(16);
+        this.server.setExecutor(this.serverExecutor);
+        this.server.createContext("/hook", WebhookCallBenchmark::handle);
+        this.server.start();
+
+        this.httpTransport = new HttpClientWebhookTransport();
+        this.httpTransport.setUserAgent("benchmark");
+        this.httpTransport.setMaxTotalConnections(32);
+        this.httpTransport.setMaxConnectionsPerRoute(16);
+        this.httpTransport.afterPropertiesSet();
+
+        WebhookTransport webhookTransport = this.httpTransport;
+        if ("guarded".equals(this.transport))
+        {
+            final GuardedWebhookTransport guardedTransport = new GuardedWebhookTransport();
+            guardedTransport.setDelegate(this.httpTransport);
+            guardedTransport.setMaxConcurrentCallsPerRoute(16);
+            guardedTransport.afterPropertiesSet();
+            webhookTransport = guardedTransport;
+        }
+        this.executer = BenchmarkStubs.executer(webhookTransport);
+
+        final byte[] payload = new byte[this.payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+        final String url = "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort() + "/hook";
+        this.request = new WebhookRequest(url, ContentType.APPLICATION_JSON, new ByteArrayWebhookPayload(payload),
+                Collections.emptyList());
+    }
+
+    /**
+     * Stops the stub endpoint and releases the HTTP client.
+     *
+     * @throws IOException
+     *             if the HTTP client cannot be closed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        this.httpTransport.destroy();
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+    }
+
+    /**
+     * Benchmarks the latency of individual webhook calls.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(1)
+    public void callWebhookLatency()
+    {
+        this.executer.callWebhook(this.request);
+    }
+
+    /**
+     * Benchmarks the throughput of concurrent webhook calls.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(8)
+    public void callWebhookThroughput()
+    {
+        this.executer.callWebhook(this.request);
+    }
+
+    private static void handle(final HttpExchange exchange) throws IOException
+    {
+        try (InputStream is = exchange.getRequestBody())
+        {
+            final byte[] buffer = new byte[8192];
+            while (is.read(buffer) != -1)
+            {
+                // drain the request
+            }
+        }
+
+        exchange.getResponseHeaders().add("Content-Type", ContentType.APPLICATION_JSON.toString());
+        exchange.sendResponseHeaders(200, RESPONSE_BODY.length);
+        try (OutputStream os = exchange.getResponseBody())
+        {
+            os.write(RESPONSE_BODY);
+        }
+    }
+}
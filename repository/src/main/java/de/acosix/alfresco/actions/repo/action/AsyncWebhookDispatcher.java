@@ -0,0 +1,469 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.util.Pair;
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.PropertyCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Instances of this class dispatch fully rendered webhook requests to a bounded pool of worker threads once the transaction in which
+ * they were generated has been committed successfully. Requests generated in transactions which are rolled back are never sent.
+ *
+ * @author Axel Faust
+ */
+public class AsyncWebhookDispatcher implements InitializingBean, AsyncWebhookDispatcherMBean
+{
+
+    /**
+     * The policies to apply when the work queue of the dispatcher is full.
+     *
+     * @author Axel Faust
+     */
+    public static enum OverflowPolicy
+    {
+        /**
+         * Perform the webhook call in the thread that committed the transaction, slowing down the producer.
+         */
+        CALLER_RUNS,
+        /**
+         * Block the thread that committed the transaction until space in the queue becomes available or the configured timeout expires.
+         */
+        BLOCK,
+        /**
+         * Discard the webhook call and log a warning.
+         */
+        DISCARD;
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncWebhookDispatcher.class);
+
+    private static final String TXN_KEY_PENDING_REQUESTS = AsyncWebhookDispatcher.class.getName() + "-pendingRequests";
+
+    protected ThreadPoolExecutor threadPoolExecutor;
+
+    protected OverflowPolicy overflowPolicy = OverflowPolicy.CALLER_RUNS;
+
+    protected long overflowBlockTimeout = 10000;
+
+    protected WebhookDeduplicator deduplicator;
+
+    protected final AtomicLong submitted = new AtomicLong();
+
+    protected final AtomicLong completed = new AtomicLong();
+
+    protected final AtomicLong failed = new AtomicLong();
+
+    protected final AtomicLong rejected = new AtomicLong();
+
+    protected final AtomicLong totalQueueWaitTime = new AtomicLong();
+
+    protected final AtomicLong maxQueueWaitTime = new AtomicLong();
+
+    protected final AtomicLong totalExecutionTime = new AtomicLong();
+
+    protected final AtomicLong maxExecutionTime = new AtomicLong();
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "threadPoolExecutor", this.threadPoolExecutor);
+        PropertyCheck.mandatory(this, "overflowPolicy", this.overflowPolicy);
+
+        this.threadPoolExecutor.setRejectedExecutionHandler(new OverflowHandler());
+    }
+
+    /**
+     * @param threadPoolExecutor
+     *            the threadPoolExecutor to set
+     */
+    public void setThreadPoolExecutor(final ThreadPoolExecutor threadPoolExecutor)
+    {
+        this.threadPoolExecutor = threadPoolExecutor;
+    }
+
+    /**
+     * @param overflowPolicy
+     *            the overflowPolicy to set
+     */
+    public void setOverflowPolicy(final String overflowPolicy)
+    {
+        ParameterCheck.mandatoryString("overflowPolicy", overflowPolicy);
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * @param overflowBlockTimeout
+     *            the time (in milliseconds) to wait for free space in the queue when using the {@link OverflowPolicy#BLOCK blocking
+     *            overflow policy}
+     */
+    public void setOverflowBlockTimeout(final long overflowBlockTimeout)
+    {
+        this.overflowBlockTimeout = overflowBlockTimeout;
+    }
+
+    /**
+     * @param deduplicator
+     *            the deduplicator to set - if set and enabled, requests discarded due to queue overflow are unregistered so that they do
+     *            not suppress an identical, later call
+     */
+    public void setDeduplicator(final WebhookDeduplicator deduplicator)
+    {
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * Schedules a webhook request to be dispatched after the currently active transaction has been committed. If no transaction is
+     * active, the request is dispatched immediately.
+     *
+     * @param request
+     *            the request to dispatch
+     * @param sender
+     *            the operation performing the actual webhook call
+     */
+    public void dispatchAfterCommit(final WebhookRequest request, final Consumer<WebhookRequest> sender)
+    {
+        ParameterCheck.mandatory("request", request);
+        ParameterCheck.mandatory("sender", sender);
+
+        if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE)
+        {
+            LOGGER.debug("No active transaction - dispatching {} immediately", request);
+            this.dispatch(request, sender);
+        }
+        else
+        {
+            final List<Pair<WebhookRequest, Consumer<WebhookRequest>>> pendingRequests = TransactionalResourceHelper
+                    .getList(TXN_KEY_PENDING_REQUESTS);
+            if (pendingRequests.isEmpty())
+            {
+                AlfrescoTransactionSupport.bindListener(new DispatchTransactionListener(pendingRequests));
+            }
+            LOGGER.debug("Queueing {} for dispatch after transaction commit", request);
+            pendingRequests.add(new Pair<>(request, sender));
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int getQueueDepth()
+    {
+        return this.threadPoolExecutor.getQueue().size();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int getQueueRemainingCapacity()
+    {
+        return this.threadPoolExecutor.getQueue().remainingCapacity();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int getActiveCount()
+    {
+        return this.threadPoolExecutor.getActiveCount();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSubmittedCount()
+    {
+        return this.submitted.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCompletedCount()
+    {
+        return this.completed.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFailedCount()
+    {
+        return this.failed.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRejectedCount()
+    {
+        return this.rejected.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAverageQueueWaitTime()
+    {
+        final long executed = this.completed.get() + this.failed.get();
+        return executed > 0 ? this.totalQueueWaitTime.get() / executed : 0;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMaxQueueWaitTime()
+    {
+        return this.maxQueueWaitTime.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAverageExecutionTime()
+    {
+        final long executed = this.completed.get() + this.failed.get();
+        return executed > 0 ? this.totalExecutionTime.get() / executed : 0;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMaxExecutionTime()
+    {
+        return this.maxExecutionTime.get();
+    }
+
+    protected void dispatch(final WebhookRequest request, final Consumer<WebhookRequest> sender)
+    {
+        this.submitted.incrementAndGet();
+        this.threadPoolExecutor.execute(new DispatchTask(request, sender));
+    }
+
+    protected void discard(final WebhookRequest request)
+    {
+        this.rejected.incrementAndGet();
+        if (this.deduplicator != null && this.deduplicator.isEnabled() && request.getIdempotencyKey() != null)
+        {
+            // request has not been delivered and must not suppress an identical call
+            this.deduplicator.unregister(request.getIdempotencyKey());
+        }
+        request.getPayload().release();
+    }
+
+    protected static void updateMax(final AtomicLong max, final long value)
+    {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value))
+        {
+            current = max.get();
+        }
+    }
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    protected class DispatchTransactionListener extends TransactionListenerAdapter
+    {
+
+        protected final List<Pair<WebhookRequest, Consumer<WebhookRequest>>> pendingRequests;
+
+        protected DispatchTransactionListener(final List<Pair<WebhookRequest, Consumer<WebhookRequest>>> pendingRequests)
+        {
+            this.pendingRequests = pendingRequests;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void afterCommit()
+        {
+            LOGGER.debug("Transaction committed - dispatching {} webhook request(s)", this.pendingRequests.size());
+            for (final Pair<WebhookRequest, Consumer<WebhookRequest>> pendingRequest : this.pendingRequests)
+            {
+                AsyncWebhookDispatcher.this.dispatch(pendingRequest.getFirst(), pendingRequest.getSecond());
+            }
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void afterRollback()
+        {
+            LOGGER.debug("Transaction rolled back - discarding {} webhook request(s)", this.pendingRequests.size());
+            for (final Pair<WebhookRequest, Consumer<WebhookRequest>> pendingRequest : this.pendingRequests)
+            {
+                pendingRequest.getFirst().getPayload().release();
+            }
+        }
+    }
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    protected class DispatchTask implements Runnable
+    {
+
+        protected final WebhookRequest request;
+
+        protected final Consumer<WebhookRequest> sender;
+
+        protected final long enqueuedAt = System.currentTimeMillis();
+
+        protected DispatchTask(final WebhookRequest request, final Consumer<WebhookRequest> sender)
+        {
+            this.request = request;
+            this.sender = sender;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void run()
+        {
+            final long startedAt = System.currentTimeMillis();
+            final long queueWaitTime = startedAt - this.enqueuedAt;
+            AsyncWebhookDispatcher.this.totalQueueWaitTime.addAndGet(queueWaitTime);
+            updateMax(AsyncWebhookDispatcher.this.maxQueueWaitTime, queueWaitTime);
+
+            try
+            {
+                this.sender.accept(this.request);
+                AsyncWebhookDispatcher.this.completed.incrementAndGet();
+            }
+            catch (final RuntimeException ex)
+            {
+                AsyncWebhookDispatcher.this.failed.incrementAndGet();
+                LOGGER.warn("Asynchronous dispatch of {} failed", this.request, ex);
+            }
+            finally
+            {
+                this.request.getPayload().release();
+
+                final long executionTime = System.currentTimeMillis() - startedAt;
+                AsyncWebhookDispatcher.this.totalExecutionTime.addAndGet(executionTime);
+                updateMax(AsyncWebhookDispatcher.this.maxExecutionTime, executionTime);
+            }
+        }
+    }
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    protected class OverflowHandler implements RejectedExecutionHandler
+    {
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor)
+        {
+            final WebhookRequest request = ((DispatchTask) r).request;
+            if (executor.isShutdown())
+            {
+                LOGGER.warn("Dispatcher has been shut down - discarding {}", request);
+                AsyncWebhookDispatcher.this.discard(request);
+                return;
+            }
+
+            switch (AsyncWebhookDispatcher.this.overflowPolicy)
+            {
+                case CALLER_RUNS:
+                    LOGGER.debug("Work queue is full - dispatching {} in calling thread", request);
+                    r.run();
+                    break;
+                case BLOCK:
+                    boolean queued;
+                    try
+                    {
+                        LOGGER.debug("Work queue is full - waiting for free space to dispatch {}", request);
+                        queued = executor.getQueue().offer(r, AsyncWebhookDispatcher.this.overflowBlockTimeout, TimeUnit.MILLISECONDS);
+                    }
+                    catch (final InterruptedException iex)
+                    {
+                        Thread.currentThread().interrupt();
+                        queued = false;
+                    }
+
+                    if (!queued)
+                    {
+                        LOGGER.warn("Work queue remained full - discarding {}", request);
+                        AsyncWebhookDispatcher.this.discard(request);
+                    }
+                    break;
+                case DISCARD:
+                    LOGGER.warn("Work queue is full - discarding {}", request);
+                    AsyncWebhookDispatcher.this.discard(request);
+                    break;
+                default:
+                    throw new RejectedExecutionException("Unsupported overflow policy " + AsyncWebhookDispatcher.this.overflowPolicy);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+/**
+ * Management interface of the {@link AsyncWebhookDispatcher asynchronous webhook dispatcher}.
+ *
+ * @author Axel Faust
+ */
+public interface AsyncWebhookDispatcherMBean
+{
+
+    /**
+     * @return the number of requests currently waiting in the work queue
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the number of additional requests the work queue can accept
+     */
+    int getQueueRemainingCapacity();
+
+    /**
+     * @return the number of worker threads currently performing webhook calls
+     */
+    int getActiveCount();
+
+    /**
+     * @return the total number of requests submitted for dispatch
+     */
+    long getSubmittedCount();
+
+    /**
+     * @return the total number of requests dispatched successfully
+     */
+    long getCompletedCount();
+
+    /**
+     * @return the total number of requests which failed during dispatch
+     */
+    long getFailedCount();
+
+    /**
+     * @return the total number of requests discarded due to queue overflow
+     */
+    long getRejectedCount();
+
+    /**
+     * @return the average time (in milliseconds) requests spent waiting in the queue
+     */
+    long getAverageQueueWaitTime();
+
+    /**
+     * @return the maximum time (in milliseconds) a request spent waiting in the queue
+     */
+    long getMaxQueueWaitTime();
+
+    /**
+     * @return the average time (in milliseconds) spent performing webhook calls
+     */
+    long getAverageExecutionTime();
+
+    /**
+     * @return the maximum time (in milliseconds) spent performing a single webhook call
+     */
+    long getMaxExecutionTime();
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instances of this class hold a pre-rendered webhook payload which is kept in memory up to a configurable size and spilled to a
+ * temporary file beyond that size. Instances are repeatable and can be used independently of the thread and transaction in which they
+ * were created, but must be {@link #release() released} after use to delete any temporary file.
+ *
+ * @author Axel Faust
+ */
+public class BufferedWebhookPayload implements WebhookPayload
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BufferedWebhookPayload.class);
+
+    protected final byte[] bytes;
+
+    protected final File file;
+
+    protected final long contentLength;
+
+    protected BufferedWebhookPayload(final byte[] bytes, final File file, final long contentLength)
+    {
+        this.bytes = bytes;
+        this.file = file;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Renders a payload into a new buffer.
+     *
+     * @param renderer
+     *            the renderer of the textual payload
+     * @param charset
+     *            the charset with which to encode the textual payload
+     * @param spillThreshold
+     *            the size in bytes beyond which the payload is spilled to a temporary file
+     * @return the buffered payload
+     */
+    public static BufferedWebhookPayload render(final StreamingWebhookPayload.PayloadRenderer renderer, final Charset charset,
+            final int spillThreshold)
+    {
+        ParameterCheck.mandatory("renderer", renderer);
+        ParameterCheck.mandatory("charset", charset);
+
+        // temporary file is only created lazily once the threshold is exceeded
+        final DeferredFileOutputStream dfos = new DeferredFileOutputStream(spillThreshold, "webhookPayload-", ".bin",
+                TempFileProvider.getTempDir());
+        boolean success = false;
+        try
+        {
+            try (Writer writer = new OutputStreamWriter(dfos, charset))
+            {
+                renderer.render(writer);
+            }
+
+            final BufferedWebhookPayload payload;
+            if (dfos.isInMemory())
+            {
+                payload = new BufferedWebhookPayload(dfos.getData(), null, dfos.getByteCount());
+            }
+            else
+            {
+                LOGGER.debug("Webhook payload of {} bytes spilled to temporary file {}", dfos.getByteCount(), dfos.getFile());
+                payload = new BufferedWebhookPayload(null, dfos.getFile(), dfos.getByteCount());
+            }
+            success = true;
+            return payload;
+        }
+        catch (final IOException ioex)
+        {
+            throw new AlfrescoRuntimeException("Failed to buffer webhook payload", ioex);
+        }
+        finally
+        {
+            if (!success && dfos.getFile() != null)
+            {
+                deleteFile(dfos.getFile());
+            }
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(final OutputStream out) throws IOException
+    {
+        if (this.bytes != null)
+        {
+            out.write(this.bytes);
+        }
+        else
+        {
+            try (InputStream is = this.openStream())
+            {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = is.read(buffer)) != -1)
+                {
+                    out.write(buffer, 0, read);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream openStream() throws IOException
+    {
+        final InputStream is;
+        if (this.bytes != null)
+        {
+            is = new ByteArrayInputStream(this.bytes);
+        }
+        else
+        {
+            is = new FileInputStream(this.file);
+        }
+        return is;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getContentLength()
+    {
+        return this.contentLength;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRepeatable()
+    {
+        return true;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void release()
+    {
+        if (this.file != null)
+        {
+            deleteFile(this.file);
+        }
+    }
+
+    protected static void deleteFile(final File file)
+    {
+        if (file.exists() && !file.delete())
+        {
+            // temp file cleaner job will eventually take care of it
+            LOGGER.debug("Failed to delete temporary file {}", file);
+        }
+    }
+}
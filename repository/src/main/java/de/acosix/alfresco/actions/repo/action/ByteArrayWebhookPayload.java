@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.util.ParameterCheck;
+
+/**
+ * Instances of this class hold a webhook payload fully in memory and can be persisted, e.g. in the {@link WebhookOutbox outbox}.
+ *
+ * @author Axel Faust
+ */
+public class ByteArrayWebhookPayload implements WebhookPayload, Serializable
+{
+
+    private static final long serialVersionUID = 1815470317906387216L;
+
+    protected final byte[] bytes;
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param bytes
+     *            the bytes of the payload
+     */
+    public ByteArrayWebhookPayload(final byte[] bytes)
+    {
+        ParameterCheck.mandatory("bytes", bytes);
+        this.bytes = bytes;
+    }
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param payload
+     *            the textual payload
+     * @param charset
+     *            the charset with which to encode the textual payload
+     */
+    public ByteArrayWebhookPayload(final String payload, final Charset charset)
+    {
+        ParameterCheck.mandatory("payload", payload);
+        ParameterCheck.mandatory("charset", charset);
+        this.bytes = payload.getBytes(charset);
+    }
+
+    /**
+     * Obtains an in-memory copy of an arbitrary payload.
+     *
+     * @param payload
+     *            the payload to copy
+     * @return the payload itself if it is already held in memory, or an in-memory copy of it
+     */
+    public static ByteArrayWebhookPayload copyOf(final WebhookPayload payload)
+    {
+        ParameterCheck.mandatory("payload", payload);
+
+        final ByteArrayWebhookPayload result;
+        if (payload instanceof ByteArrayWebhookPayload)
+        {
+            result = (ByteArrayWebhookPayload) payload;
+        }
+        else
+        {
+            final long contentLength = payload.getContentLength();
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 8192);
+            try
+            {
+                payload.writeTo(bos);
+            }
+            catch (final IOException ioex)
+            {
+                throw new AlfrescoRuntimeException("Failed to copy webhook payload", ioex);
+            }
+            result = new ByteArrayWebhookPayload(bos.toByteArray());
+        }
+        return result;
+    }
+
+    /**
+     * @return the bytes of the payload
+     */
+    public byte[] getBytes()
+    {
+        return this.bytes;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(final OutputStream out) throws IOException
+    {
+        out.write(this.bytes);
+        out.flush();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream openStream()
+    {
+        return new ByteArrayInputStream(this.bytes);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getContentLength()
+    {
+        return this.bytes.length;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRepeatable()
+    {
+        return true;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void release()
+    {
+        // NO-OP
+    }
+}
@@ -0,0 +1,761 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.PropertyCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Instances of this class guard the delivery of webhook requests via a delegate transport with a circuit breaker and a concurrency limit
+ * (bulkhead) per endpoint, so that a slow or failing endpoint cannot tie up an unbounded number of threads of the repository. Endpoints are
+ * distinguished by their route, i.e. the combination of scheme, host and port of the URL.
+ *
+ * Blocking calls wait a limited time for a free slot of the concurrency limit, while {@link #sendAsync(WebhookRequest) asynchronous calls}
+ * never block the calling thread and are rejected immediately if the limit has been reached. The slot of an asynchronous call is held
+ * until its future completes. For {@link WebhookTransport#isNonBlocking() non-blocking} delegates, which multiplex concurrent calls as
+ * HTTP/2 streams over a shared connection, the limit applies to the number of in-flight streams instead of the number of connections.
+ *
+ * The circuit breaker of an endpoint records the outcome of the most recent calls in a sliding window and opens if either the rate of
+ * failed or of slow calls exceeds the configured threshold. While open, calls are rejected immediately with a
+ * {@link WebhookCallRejectedException}, which the {@link WebhookOutbox outbox} treats as a deferral instead of a failed attempt. After a
+ * configured wait duration, the circuit breaker transitions to half-open and permits a limited number of probe calls, closing again if
+ * all of them succeed.
+ *
+ * @author Axel Faust
+ */
+public class GuardedWebhookTransport implements WebhookTransport, InitializingBean, GuardedWebhookTransportMBean
+{
+
+    /**
+     * The states of the circuit breaker of an endpoint.
+     *
+     * @author Axel Faust
+     */
+    public static enum CircuitState
+    {
+        /**
+         * Calls are permitted and their outcomes are recorded.
+         */
+        CLOSED,
+        /**
+         * Calls are rejected until the wait duration has elapsed.
+         */
+        OPEN,
+        /**
+         * A limited number of probe calls is permitted to determine whether the endpoint has recovered.
+         */
+        HALF_OPEN;
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GuardedWebhookTransport.class);
+
+    protected final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    protected final AtomicLong circuitOpenRejectedCount = new AtomicLong();
+
+    protected final AtomicLong concurrencyLimitRejectedCount = new AtomicLong();
+
+    protected final AtomicLong stateTransitionCount = new AtomicLong();
+
+    protected WebhookTransport delegate;
+
+    protected boolean enabled = true;
+
+    protected int slidingWindowSize = 20;
+
+    protected int minimumNumberOfCalls = 10;
+
+    protected float failureRateThreshold = 50;
+
+    protected float slowCallRateThreshold = 80;
+
+    protected long slowCallDurationThreshold = 10000;
+
+    protected long waitDurationInOpenState = 30000;
+
+    protected int permittedCallsInHalfOpenState = 3;
+
+    protected int maxConcurrentCallsPerRoute = 5;
+
+    protected int maxConcurrentStreamsPerRoute = 100;
+
+    protected long maxConcurrencyWait = 1000;
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "delegate", this.delegate);
+
+        if (this.slidingWindowSize <= 0)
+        {
+            throw new IllegalStateException("slidingWindowSize must be a positive integer");
+        }
+        if (this.minimumNumberOfCalls <= 0 || this.minimumNumberOfCalls > this.slidingWindowSize)
+        {
+            throw new IllegalStateException("minimumNumberOfCalls must be a positive integer not greater than slidingWindowSize");
+        }
+        if (this.permittedCallsInHalfOpenState <= 0)
+        {
+            throw new IllegalStateException("permittedCallsInHalfOpenState must be a positive integer");
+        }
+    }
+
+    /**
+     * @param delegate
+     *            the delegate to set
+     */
+    public void setDelegate(final WebhookTransport delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param enabled
+     *            {@code true} if calls should be guarded by circuit breakers and concurrency limits, {@code false} if they should be passed
+     *            through to the delegate without any checks
+     */
+    public void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param slidingWindowSize
+     *            the number of most recent calls per endpoint to consider when calculating failure / slow call rates
+     */
+    public void setSlidingWindowSize(final int slidingWindowSize)
+    {
+        this.slidingWindowSize = slidingWindowSize;
+    }
+
+    /**
+     * @param minimumNumberOfCalls
+     *            the minimum number of recorded calls per endpoint before failure / slow call rates are evaluated
+     */
+    public void setMinimumNumberOfCalls(final int minimumNumberOfCalls)
+    {
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+    }
+
+    /**
+     * @param failureRateThreshold
+     *            the percentage of failed calls at / above which the circuit breaker of an endpoint opens
+     */
+    public void setFailureRateThreshold(final float failureRateThreshold)
+    {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * @param slowCallRateThreshold
+     *            the percentage of slow calls at / above which the circuit breaker of an endpoint opens
+     */
+    public void setSlowCallRateThreshold(final float slowCallRateThreshold)
+    {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    /**
+     * @param slowCallDurationThreshold
+     *            the duration (in milliseconds) above which a call is considered slow
+     */
+    public void setSlowCallDurationThreshold(final long slowCallDurationThreshold)
+    {
+        this.slowCallDurationThreshold = slowCallDurationThreshold;
+    }
+
+    /**
+     * @param waitDurationInOpenState
+     *            the duration (in milliseconds) for which an open circuit breaker rejects calls before permitting probe calls
+     */
+    public void setWaitDurationInOpenState(final long waitDurationInOpenState)
+    {
+        this.waitDurationInOpenState = waitDurationInOpenState;
+    }
+
+    /**
+     * @param permittedCallsInHalfOpenState
+     *            the number of probe calls permitted in the half-open state
+     */
+    public void setPermittedCallsInHalfOpenState(final int permittedCallsInHalfOpenState)
+    {
+        this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+    }
+
+    /**
+     * @param maxConcurrentCallsPerRoute
+     *            the maximum number of concurrent calls per endpoint via a blocking delegate - a non-positive value disables the limit
+     */
+    public void setMaxConcurrentCallsPerRoute(final int maxConcurrentCallsPerRoute)
+    {
+        this.maxConcurrentCallsPerRoute = maxConcurrentCallsPerRoute;
+    }
+
+    /**
+     * @param maxConcurrentStreamsPerRoute
+     *            the maximum number of concurrent calls (in-flight streams) per endpoint via a {@link WebhookTransport#isNonBlocking()
+     *            non-blocking} delegate - a non-positive value disables the limit
+     */
+    public void setMaxConcurrentStreamsPerRoute(final int maxConcurrentStreamsPerRoute)
+    {
+        this.maxConcurrentStreamsPerRoute = maxConcurrentStreamsPerRoute;
+    }
+
+    /**
+     * @param maxConcurrencyWait
+     *            the maximum time (in milliseconds) a blocking call waits for the concurrency limit of its endpoint before being rejected
+     */
+    public void setMaxConcurrencyWait(final long maxConcurrencyWait)
+    {
+        this.maxConcurrencyWait = maxConcurrencyWait;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public WebhookResponse send(final WebhookRequest request)
+    {
+        ParameterCheck.mandatory("request", request);
+
+        if (!this.enabled)
+        {
+            return this.delegate.send(request);
+        }
+
+        final Endpoint endpoint = this.acquire(request, true);
+        final long start = System.nanoTime();
+        try
+        {
+            final WebhookResponse response = this.delegate.send(request);
+            this.complete(endpoint, start, null);
+            return response;
+        }
+        catch (final RuntimeException ex)
+        {
+            this.complete(endpoint, start, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<WebhookResponse> sendAsync(final WebhookRequest request)
+    {
+        ParameterCheck.mandatory("request", request);
+
+        final CompletableFuture<WebhookResponse> result;
+        if (!this.enabled)
+        {
+            result = this.delegate.sendAsync(request);
+        }
+        else
+        {
+            final Endpoint endpoint;
+            try
+            {
+                endpoint = this.acquire(request, false);
+            }
+            catch (final WebhookCallRejectedException ex)
+            {
+                final CompletableFuture<WebhookResponse> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(ex);
+                return rejected;
+            }
+
+            final long start = System.nanoTime();
+            CompletableFuture<WebhookResponse> future;
+            try
+            {
+                future = this.delegate.sendAsync(request);
+            }
+            catch (final RuntimeException ex)
+            {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(ex);
+            }
+            // the future of the delegate is returned so that cancelling it aborts the call - a dependent stage would neither propagate the
+            // cancellation nor run its action (releasing the concurrency slot) once cancelled itself
+            future.whenComplete((r, ex) -> this.complete(endpoint, start,
+                    ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex));
+            result = future;
+        }
+        return result;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isNonBlocking()
+    {
+        return this.delegate.isNonBlocking();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> listEndpoints()
+    {
+        final List<String> descriptions = new ArrayList<>();
+        for (final Entry<String, Endpoint> endpoint : new TreeMap<>(this.endpoints).entrySet())
+        {
+            descriptions.add(endpoint.getValue().toString());
+        }
+        return descriptions;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public String getEndpointState(final String route)
+    {
+        final Endpoint endpoint = route != null ? this.endpoints.get(route) : null;
+        return endpoint != null ? endpoint.getState().name() : null;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int getOpenCircuitCount()
+    {
+        int count = 0;
+        for (final Endpoint endpoint : this.endpoints.values())
+        {
+            if (endpoint.getState() != CircuitState.CLOSED)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCircuitOpenRejectedCount()
+    {
+        return this.circuitOpenRejectedCount.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getConcurrencyLimitRejectedCount()
+    {
+        return this.concurrencyLimitRejectedCount.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getStateTransitionCount()
+    {
+        return this.stateTransitionCount.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean resetEndpoint(final String route)
+    {
+        final Endpoint endpoint = route != null ? this.endpoints.get(route) : null;
+        if (endpoint != null)
+        {
+            endpoint.reset();
+        }
+        return endpoint != null;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetAllEndpoints()
+    {
+        for (final Endpoint endpoint : this.endpoints.values())
+        {
+            endpoint.reset();
+        }
+    }
+
+    /**
+     * Acquires the permission of the circuit breaker and a slot of the concurrency limit for the endpoint of a webhook request.
+     *
+     * @param request
+     *            the request to send
+     * @param wait
+     *            {@code true} if the calling thread may wait up to the {@link #setMaxConcurrencyWait(long) configured time} for a free
+     *            slot, {@code false} if the call should be rejected immediately if no slot is free
+     * @return the endpoint state for which the permission and slot have been acquired
+     * @throws WebhookCallRejectedException
+     *             if the circuit breaker is open or the concurrency limit has been reached
+     */
+    protected Endpoint acquire(final WebhookRequest request, final boolean wait)
+    {
+        final String route = request.getRoute();
+        final Endpoint endpoint = this.endpoints.computeIfAbsent(route, Endpoint::new);
+
+        if (!endpoint.tryAcquirePermission())
+        {
+            this.circuitOpenRejectedCount.incrementAndGet();
+            LOGGER.debug("Circuit breaker for {} is open - rejecting {}", route, request);
+            throw new WebhookCallRejectedException("Circuit breaker for " + route + " is open", endpoint.getRemainingOpenDuration());
+        }
+
+        if (!endpoint.tryAcquireConcurrencySlot(wait))
+        {
+            endpoint.releasePermission();
+            this.concurrencyLimitRejectedCount.incrementAndGet();
+            LOGGER.debug("Concurrency limit for {} reached - rejecting {}", route, request);
+            throw new WebhookCallRejectedException("Concurrency limit for " + route + " reached", this.maxConcurrencyWait);
+        }
+
+        return endpoint;
+    }
+
+    /**
+     * Records the outcome of a webhook call and releases the slot of the concurrency limit of its endpoint.
+     *
+     * @param endpoint
+     *            the endpoint state
+     * @param start
+     *            the start of the call as determined by {@link System#nanoTime()}
+     * @param failure
+     *            the failure of the call or {@code null} if the call succeeded
+     */
+    protected void complete(final Endpoint endpoint, final long start, final Throwable failure)
+    {
+        try
+        {
+            final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (failure == null)
+            {
+                endpoint.onResult(false, duration);
+            }
+            else if (failure instanceof WebhookCallException)
+            {
+                // permanent client errors indicate a reachable, responsive endpoint
+                endpoint.onResult(((WebhookCallException) failure).isRetryable(), duration);
+            }
+            else
+            {
+                // any other error (e.g. in reading a buffered payload) says nothing about the health of the endpoint
+                endpoint.releasePermission();
+            }
+        }
+        finally
+        {
+            endpoint.releaseConcurrencySlot();
+        }
+    }
+
+    /**
+     * Instances of this class hold the circuit breaker and concurrency limit state of a single endpoint.
+     *
+     * @author Axel Faust
+     */
+    protected class Endpoint
+    {
+
+        protected final String route;
+
+        protected final int concurrencyLimit;
+
+        protected final Semaphore concurrencySlots;
+
+        protected final boolean[] failedCalls;
+
+        protected final boolean[] slowCalls;
+
+        protected int recordedCalls;
+
+        protected int nextIndex;
+
+        protected int failedCallCount;
+
+        protected int slowCallCount;
+
+        protected CircuitState state = CircuitState.CLOSED;
+
+        protected long openedAt;
+
+        protected int halfOpenPermits;
+
+        protected int halfOpenSuccesses;
+
+        protected Endpoint(final String route)
+        {
+            this.route = route;
+            // HTTP/2 delegates multiplex calls over shared connections, so their limit applies to in-flight streams
+            this.concurrencyLimit = GuardedWebhookTransport.this.delegate.isNonBlocking()
+                    ? GuardedWebhookTransport.this.maxConcurrentStreamsPerRoute
+                    : GuardedWebhookTransport.this.maxConcurrentCallsPerRoute;
+            this.concurrencySlots = this.concurrencyLimit > 0 ? new Semaphore(this.concurrencyLimit, true) : null;
+            this.failedCalls = new boolean[GuardedWebhookTransport.this.slidingWindowSize];
+            this.slowCalls = new boolean[GuardedWebhookTransport.this.slidingWindowSize];
+        }
+
+        protected synchronized CircuitState getState()
+        {
+            return this.state;
+        }
+
+        protected synchronized long getRemainingOpenDuration()
+        {
+            return this.state == CircuitState.OPEN
+                    ? this.openedAt + GuardedWebhookTransport.this.waitDurationInOpenState - System.currentTimeMillis()
+                    : 0;
+        }
+
+        protected synchronized boolean tryAcquirePermission()
+        {
+            if (this.state == CircuitState.OPEN
+                    && System.currentTimeMillis() - this.openedAt >= GuardedWebhookTransport.this.waitDurationInOpenState)
+            {
+                this.transitionTo(CircuitState.HALF_OPEN);
+            }
+
+            boolean permitted;
+            switch (this.state)
+            {
+                case CLOSED:
+                    permitted = true;
+                    break;
+                case HALF_OPEN:
+                    permitted = this.halfOpenPermits < GuardedWebhookTransport.this.permittedCallsInHalfOpenState;
+                    if (permitted)
+                    {
+                        this.halfOpenPermits++;
+                    }
+                    break;
+                case OPEN:
+                default:
+                    permitted = false;
+            }
+            return permitted;
+        }
+
+        protected synchronized void releasePermission()
+        {
+            if (this.state == CircuitState.HALF_OPEN && this.halfOpenPermits > 0)
+            {
+                this.halfOpenPermits--;
+            }
+        }
+
+        protected boolean tryAcquireConcurrencySlot(final boolean wait)
+        {
+            boolean acquired = true;
+            if (this.concurrencySlots != null && !wait)
+            {
+                acquired = this.concurrencySlots.tryAcquire();
+            }
+            else if (this.concurrencySlots != null)
+            {
+                try
+                {
+                    acquired = this.concurrencySlots.tryAcquire(Math.max(0, GuardedWebhookTransport.this.maxConcurrencyWait),
+                            TimeUnit.MILLISECONDS);
+                }
+                catch (final InterruptedException iex)
+                {
+                    Thread.currentThread().interrupt();
+                    acquired = false;
+                }
+            }
+            return acquired;
+        }
+
+        protected void releaseConcurrencySlot()
+        {
+            if (this.concurrencySlots != null)
+            {
+                this.concurrencySlots.release();
+            }
+        }
+
+        protected synchronized void onResult(final boolean failed, final long duration)
+        {
+            final boolean slow = duration > GuardedWebhookTransport.this.slowCallDurationThreshold;
+            if (slow)
+            {
+                LOGGER.debug("Call to {} took {} ms and is considered slow", this.route, duration);
+            }
+
+            switch (this.state)
+            {
+                case HALF_OPEN:
+                    if (failed || slow)
+                    {
+                        this.transitionTo(CircuitState.OPEN);
+                    }
+                    else if (++this.halfOpenSuccesses >= GuardedWebhookTransport.this.permittedCallsInHalfOpenState)
+                    {
+                        this.transitionTo(CircuitState.CLOSED);
+                    }
+                    break;
+                case CLOSED:
+                    this.record(failed, slow);
+                    if (this.recordedCalls >= GuardedWebhookTransport.this.minimumNumberOfCalls)
+                    {
+                        final float failureRate = this.failedCallCount * 100f / this.recordedCalls;
+                        final float slowCallRate = this.slowCallCount * 100f / this.recordedCalls;
+                        if (failureRate >= GuardedWebhookTransport.this.failureRateThreshold
+                                || slowCallRate >= GuardedWebhookTransport.this.slowCallRateThreshold)
+                        {
+                            LOGGER.debug("Failure rate {}% / slow call rate {}% of {} exceeds threshold", failureRate, slowCallRate,
+                                    this.route);
+                            this.transitionTo(CircuitState.OPEN);
+                        }
+                    }
+                    break;
+                case OPEN:
+                default:
+                    // result of a call permitted before the circuit breaker opened - no longer relevant
+            }
+        }
+
+        protected synchronized void reset()
+        {
+            if (this.state != CircuitState.CLOSED)
+            {
+                this.transitionTo(CircuitState.CLOSED);
+            }
+            else
+            {
+                this.clearWindow();
+            }
+        }
+
+        protected void record(final boolean failed, final boolean slow)
+        {
+            if (this.recordedCalls == this.failedCalls.length)
+            {
+                this.failedCallCount -= this.failedCalls[this.nextIndex] ? 1 : 0;
+                this.slowCallCount -= this.slowCalls[this.nextIndex] ? 1 : 0;
+            }
+            else
+            {
+                this.recordedCalls++;
+            }
+
+            this.failedCalls[this.nextIndex] = failed;
+            this.slowCalls[this.nextIndex] = slow;
+            this.failedCallCount += failed ? 1 : 0;
+            this.slowCallCount += slow ? 1 : 0;
+            this.nextIndex = (this.nextIndex + 1) % this.failedCalls.length;
+        }
+
+        protected void clearWindow()
+        {
+            this.recordedCalls = 0;
+            this.nextIndex = 0;
+            this.failedCallCount = 0;
+            this.slowCallCount = 0;
+        }
+
+        protected void transitionTo(final CircuitState newState)
+        {
+            final CircuitState oldState = this.state;
+            this.state = newState;
+            this.halfOpenPermits = 0;
+            this.halfOpenSuccesses = 0;
+            this.clearWindow();
+            if (newState == CircuitState.OPEN)
+            {
+                this.openedAt = System.currentTimeMillis();
+            }
+            GuardedWebhookTransport.this.stateTransitionCount.incrementAndGet();
+
+            if (newState == CircuitState.OPEN)
+            {
+                LOGGER.warn("Circuit breaker for webhook endpoint {} transitioned from {} to {}", this.route, oldState, newState);
+            }
+            else
+            {
+                LOGGER.info("Circuit breaker for webhook endpoint {} transitioned from {} to {}", this.route, oldState, newState);
+            }
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized String toString()
+        {
+            final StringBuilder builder = new StringBuilder();
+            builder.append("Endpoint [");
+            builder.append("route=");
+            builder.append(this.route);
+            builder.append(", state=");
+            builder.append(this.state);
+            builder.append(", recordedCalls=");
+            builder.append(this.recordedCalls);
+            builder.append(", failedCalls=");
+            builder.append(this.failedCallCount);
+            builder.append(", slowCalls=");
+            builder.append(this.slowCallCount);
+            if (this.concurrencySlots != null)
+            {
+                builder.append(", activeCalls=");
+                builder.append(this.concurrencyLimit - this.concurrencySlots.availablePermits());
+            }
+            builder.append("]");
+            return builder.toString();
+        }
+    }
+}
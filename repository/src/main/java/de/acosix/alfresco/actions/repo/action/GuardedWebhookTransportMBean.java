@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link GuardedWebhookTransport guarded webhook transport} allowing administrators to inspect and reset the
+ * circuit breakers of individual webhook endpoints.
+ *
+ * @author Axel Faust
+ */
+public interface GuardedWebhookTransportMBean
+{
+
+    /**
+     * Lists the endpoints for which webhook calls have been made, including the state of their circuit breakers.
+     *
+     * @return textual descriptions of the endpoints
+     */
+    List<String> listEndpoints();
+
+    /**
+     * Retrieves the state of the circuit breaker for an endpoint.
+     *
+     * @param route
+     *            the route of the endpoint in the form {@code scheme://host:port}
+     * @return the state of the circuit breaker or {@code null} if no call has been made for the endpoint
+     */
+    String getEndpointState(String route);
+
+    /**
+     * @return the number of endpoints with a circuit breaker which is currently not closed
+     */
+    int getOpenCircuitCount();
+
+    /**
+     * @return the total number of calls rejected due to an open circuit breaker
+     */
+    long getCircuitOpenRejectedCount();
+
+    /**
+     * @return the total number of calls rejected due to the concurrency limit of their endpoint
+     */
+    long getConcurrencyLimitRejectedCount();
+
+    /**
+     * @return the total number of state transitions of all circuit breakers
+     */
+    long getStateTransitionCount();
+
+    /**
+     * Resets the circuit breaker of an endpoint to the closed state, discarding any recorded call outcomes.
+     *
+     * @param route
+     *            the route of the endpoint in the form {@code scheme://host:port}
+     * @return {@code true} if the endpoint was found and reset, {@code false} otherwise
+     */
+    boolean resetEndpoint(String route);
+
+    /**
+     * Resets the circuit breakers of all endpoints to the closed state.
+     */
+    void resetAllEndpoints();
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+
+import org.alfresco.util.Pair;
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.PropertyCheck;
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.entity.BasicAsyncEntityProducer;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Instances of this class deliver webhook requests using a non-blocking Apache HTTP client 5, which performs all I/O on a small number of
+ * reactor threads and supports HTTP/2, multiplexing many concurrent calls to the same endpoint over a single connection. Blocking
+ * {@link #send(WebhookRequest) calls} simply wait for the completion of the corresponding {@link #sendAsync(WebhookRequest) asynchronous
+ * call}.
+ *
+ * As the I/O reactor threads do not run in the context of the repository (transaction, authentication), payloads are fully rendered into
+ * memory in the calling thread before a call is started.
+ *
+ * @author Axel Faust
+ */
+public class HttpClient5WebhookTransport implements WebhookTransport, InitializingBean, DisposableBean
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpClient5WebhookTransport.class);
+
+    protected String userAgent;
+
+    protected HttpVersionPolicy versionPolicy = HttpVersionPolicy.NEGOTIATE;
+
+    protected int ioThreadCount = 2;
+
+    protected int maxTotalConnections = 20;
+
+    protected int maxConnectionsPerRoute = 5;
+
+    protected int connectTimeout = 5000;
+
+    protected int socketTimeout = 30000;
+
+    protected int connectionRequestTimeout = 5000;
+
+    protected long idleConnectionTimeout = 60000;
+
+    protected long maxResponseBytes = 65536;
+
+    protected WebhookCallMetrics metrics;
+
+    protected CloseableHttpAsyncClient httpClient;
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "userAgent", this.userAgent);
+        PropertyCheck.mandatory(this, "versionPolicy", this.versionPolicy);
+
+        if (this.ioThreadCount <= 0)
+        {
+            throw new IllegalStateException("ioThreadCount must be a positive integer");
+        }
+        if (this.maxTotalConnections <= 0)
+        {
+            throw new IllegalStateException("maxTotalConnections must be a positive integer");
+        }
+        if (this.maxConnectionsPerRoute <= 0 || this.maxConnectionsPerRoute > this.maxTotalConnections)
+        {
+            throw new IllegalStateException("maxConnectionsPerRoute must be a positive integer not exceeding maxTotalConnections");
+        }
+        if (this.maxResponseBytes <= 0)
+        {
+            throw new IllegalStateException("maxResponseBytes must be a positive integer");
+        }
+
+        final PoolingAsyncClientConnectionManager connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(this.maxTotalConnections).setMaxConnPerRoute(this.maxConnectionsPerRoute).build();
+
+        final IOReactorConfig ioReactorConfig = IOReactorConfig.custom().setIoThreadCount(this.ioThreadCount)
+                .setSoTimeout(Timeout.ofMilliseconds(this.socketTimeout)).build();
+
+        final RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(Timeout.ofMilliseconds(this.connectTimeout))
+                .setResponseTimeout(Timeout.ofMilliseconds(this.socketTimeout))
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(this.connectionRequestTimeout)).build();
+
+        this.httpClient = HttpAsyncClients.custom().setConnectionManager(connectionManager).setIOReactorConfig(ioReactorConfig)
+                .setVersionPolicy(this.versionPolicy).setDefaultRequestConfig(requestConfig).setUserAgent(this.userAgent)
+                .evictExpiredConnections().evictIdleConnections(TimeValue.ofMilliseconds(this.idleConnectionTimeout)).build();
+        this.httpClient.start();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy()
+    {
+        if (this.httpClient != null)
+        {
+            // closes the connection manager and I/O reactor as well
+            this.httpClient.close(CloseMode.GRACEFUL);
+            this.httpClient = null;
+        }
+    }
+
+    /**
+     * @param userAgent
+     *            the userAgent to set
+     */
+    public void setUserAgent(final String userAgent)
+    {
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * @param versionPolicy
+     *            the HTTP version policy - {@code NEGOTIATE} to use HTTP/2 if supported by an endpoint (via ALPN for TLS connections),
+     *            {@code FORCE_HTTP_2} to always use HTTP/2 (including cleartext HTTP/2 with prior knowledge) or {@code FORCE_HTTP_1}
+     */
+    public void setVersionPolicy(final String versionPolicy)
+    {
+        ParameterCheck.mandatoryString("versionPolicy", versionPolicy);
+        this.versionPolicy = HttpVersionPolicy.valueOf(versionPolicy.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * @param ioThreadCount
+     *            the number of I/O reactor threads
+     */
+    public void setIoThreadCount(final int ioThreadCount)
+    {
+        this.ioThreadCount = ioThreadCount;
+    }
+
+    /**
+     * @param maxTotalConnections
+     *            the maxTotalConnections to set
+     */
+    public void setMaxTotalConnections(final int maxTotalConnections)
+    {
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
+    /**
+     * @param maxConnectionsPerRoute
+     *            the maxConnectionsPerRoute to set
+     */
+    public void setMaxConnectionsPerRoute(final int maxConnectionsPerRoute)
+    {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+     * @param connectTimeout
+     *            the connectTimeout to set (in milliseconds)
+     */
+    public void setConnectTimeout(final int connectTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @param socketTimeout
+     *            the socketTimeout to set (in milliseconds) - also used as the timeout for receiving a response
+     */
+    public void setSocketTimeout(final int socketTimeout)
+    {
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+     * @param connectionRequestTimeout
+     *            the connectionRequestTimeout to set (in milliseconds)
+     */
+    public void setConnectionRequestTimeout(final int connectionRequestTimeout)
+    {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    /**
+     * @param idleConnectionTimeout
+     *            the time (in milliseconds) after which idle connections are closed
+     */
+    public void setIdleConnectionTimeout(final long idleConnectionTimeout)
+    {
+        this.idleConnectionTimeout = idleConnectionTimeout;
+    }
+
+    /**
+     * @param maxResponseBytes
+     *            the maximum number of bytes of a response body to process for extracting values or logging
+     */
+    public void setMaxResponseBytes(final long maxResponseBytes)
+    {
+        this.maxResponseBytes = maxResponseBytes;
+    }
+
+    /**
+     * @param metrics
+     *            the metrics to set
+     */
+    public void setMetrics(final WebhookCallMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public WebhookResponse send(final WebhookRequest request)
+    {
+        try
+        {
+            return this.sendAsync(request).join();
+        }
+        catch (final CompletionException ex)
+        {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new WebhookCallException("Error executing webhook call", cause);
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<WebhookResponse> sendAsync(final WebhookRequest request)
+    {
+        ParameterCheck.mandatory("request", request);
+
+        final String url = request.getUrl();
+        final String route = request.getRoute();
+
+        // render in the calling thread as reactor threads lack the context required for rendering templates
+        final byte[] payload = ByteArrayWebhookPayload.copyOf(request.getPayload()).getBytes();
+        final org.apache.http.entity.ContentType contentType = request.getContentType();
+        final Charset charset = contentType.getCharset();
+
+        final AsyncRequestBuilder requestBuilder = AsyncRequestBuilder.post(url)
+                .setEntity(new BasicAsyncEntityProducer(payload, ContentType.create(contentType.getMimeType(), charset)));
+        for (final Pair<String, String> header : request.getHeaders())
+        {
+            requestBuilder.addHeader(header.getFirst(), header.getSecond());
+        }
+        final AsyncRequestProducer requestProducer = requestBuilder.build();
+
+        final CompletableFuture<WebhookResponse> future = new CompletableFuture<>();
+        final long start = System.nanoTime();
+        if (this.metrics != null)
+        {
+            this.metrics.callStarted();
+        }
+
+        LOGGER.debug("Performing webhook call to URL {}", url);
+        final WebhookResponseConsumer responseConsumer = new WebhookResponseConsumer(request);
+        final FutureCallback<WebhookResponse> callback = new FutureCallback<WebhookResponse>()
+        {
+
+            /**
+             *
+             * {@inheritDoc}
+             */
+            @Override
+            public void completed(final WebhookResponse result)
+            {
+                final HttpResponse response = responseConsumer.response;
+                final int statusCode = response.getCode();
+                HttpClient5WebhookTransport.this.recordMetrics(route, start, statusCode, payload.length);
+                LOGGER.debug("Webhook call to URL {} responded with status {} {} via {}", url, statusCode, response.getReasonPhrase(),
+                        response.getVersion());
+
+                if (statusCode >= 400)
+                {
+                    LOGGER.warn("Webhook call failed with HTTP error {} and status message {}", statusCode, response.getReasonPhrase());
+                    final Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+                    future.completeExceptionally(new WebhookCallException(
+                            "Webhook responded with HTTP error code " + statusCode + ", status message: " + response.getReasonPhrase(),
+                            statusCode, WebhookCallException.parseRetryAfter(retryAfter != null ? retryAfter.getValue() : null)));
+                }
+                else
+                {
+                    future.complete(result);
+                }
+            }
+
+            /**
+             *
+             * {@inheritDoc}
+             */
+            @Override
+            public void failed(final Exception ex)
+            {
+                HttpClient5WebhookTransport.this.recordMetrics(route, start, WebhookCallException.NO_RESPONSE, payload.length);
+                LOGGER.warn("Webhook call failed", ex);
+                future.completeExceptionally(new WebhookCallException("Error executing webhook call", ex));
+            }
+
+            /**
+             *
+             * {@inheritDoc}
+             */
+            @Override
+            public void cancelled()
+            {
+                HttpClient5WebhookTransport.this.recordMetrics(route, start, WebhookCallException.NO_RESPONSE, payload.length);
+                future.completeExceptionally(new WebhookCallException("Webhook call was cancelled", new CancellationException()));
+            }
+        };
+        final Future<WebhookResponse> exchange = this.httpClient.execute(requestProducer, responseConsumer, callback);
+
+        // abort the exchange (and release its connection / stream) if the caller cancels the call, e.g. due to a timeout
+        future.whenComplete((r, ex) -> {
+            if (future.isCancelled())
+            {
+                exchange.cancel(true);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isNonBlocking()
+    {
+        return true;
+    }
+
+    protected void recordMetrics(final String route, final long start, final int statusCode, final long payloadSize)
+    {
+        if (this.metrics != null)
+        {
+            this.metrics.recordPhase(WebhookCallMetrics.Phase.HTTP_REQUEST, start);
+            this.metrics.recordResponse(route, statusCode);
+            this.metrics.recordPayloadSize(route, payloadSize);
+            this.metrics.callFinished();
+        }
+    }
+
+    /**
+     * Instances of this class process the body of a response while it is being received by an I/O reactor thread, so that the body never
+     * has to be buffered as a whole. Any bytes beyond the {@link HttpClient5WebhookTransport#setMaxResponseBytes(long) limit} are
+     * discarded as they arrive, keeping the connection re-usable.
+     *
+     * @author Axel Faust
+     */
+    protected class WebhookResponseConsumer extends AbstractBinResponseConsumer<WebhookResponse>
+    {
+
+        protected final WebhookRequest request;
+
+        protected volatile HttpResponse response;
+
+        protected volatile WebhookResponseProcessor processor;
+
+        protected WebhookResponseConsumer(final WebhookRequest request)
+        {
+            this.request = request;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        protected void start(final HttpResponse response, final ContentType contentType)
+        {
+            this.response = response;
+            this.processor = WebhookResponseProcessor.create(this.request, response.getCode() < 400,
+                    contentType != null ? contentType.getMimeType() : null, contentType != null ? contentType.getCharset() : null,
+                    LOGGER.isTraceEnabled(), HttpClient5WebhookTransport.this.maxResponseBytes);
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        protected int capacityIncrement()
+        {
+            return Integer.MAX_VALUE;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        protected void data(final ByteBuffer src, final boolean endOfStream)
+        {
+            if (this.processor != null)
+            {
+                this.processor.update(src);
+            }
+            else
+            {
+                src.position(src.limit());
+            }
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        protected WebhookResponse buildResult()
+        {
+            final WebhookResponse result;
+            if (this.processor != null)
+            {
+                result = this.processor.toResponse(this.response.getCode());
+                if (this.processor.getBody() != null)
+                {
+                    LOGGER.trace("Webhook call to URL {} responded with response messsage: {}", this.request.getUrl(),
+                            this.processor.getBody());
+                }
+            }
+            else
+            {
+                result = new WebhookResponse(this.response.getCode(), null);
+            }
+            return result;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void releaseResources()
+        {
+            this.processor = null;
+        }
+    }
+}
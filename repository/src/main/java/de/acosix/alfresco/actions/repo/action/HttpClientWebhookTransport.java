@@ -0,0 +1,496 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.util.Pair;
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.ParseException;
+import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Instances of this class deliver webhook requests using a single, pooled Apache HTTP client, performing each call in a blocking manner
+ * on the calling thread.
+ *
+ * @author Axel Faust
+ */
+public class HttpClientWebhookTransport implements WebhookTransport, InitializingBean, DisposableBean
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpClientWebhookTransport.class);
+
+    protected String userAgent;
+
+    protected int maxTotalConnections = 20;
+
+    protected int maxConnectionsPerRoute = 5;
+
+    protected int connectTimeout = 5000;
+
+    protected int socketTimeout = 30000;
+
+    protected int connectionRequestTimeout = 5000;
+
+    protected long keepAliveDuration = 30000;
+
+    protected long idleConnectionTimeout = 60000;
+
+    protected long idleConnectionEvictionInterval = 15000;
+
+    protected boolean compressRequestBody;
+
+    protected long maxResponseBytes = 65536;
+
+    protected WebhookCallMetrics metrics;
+
+    protected PoolingHttpClientConnectionManager connectionManager;
+
+    protected CloseableHttpClient httpClient;
+
+    protected ScheduledExecutorService idleConnectionEvictor;
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "userAgent", this.userAgent);
+
+        if (this.maxTotalConnections <= 0)
+        {
+            throw new IllegalStateException("maxTotalConnections must be a positive integer");
+        }
+        if (this.maxConnectionsPerRoute <= 0 || this.maxConnectionsPerRoute > this.maxTotalConnections)
+        {
+            throw new IllegalStateException("maxConnectionsPerRoute must be a positive integer not exceeding maxTotalConnections");
+        }
+        if (this.maxResponseBytes <= 0)
+        {
+            throw new IllegalStateException("maxResponseBytes must be a positive integer");
+        }
+
+        final WebhookCallMetrics metrics = this.metrics;
+        this.connectionManager = new PoolingHttpClientConnectionManager()
+        {
+
+            /**
+             *
+             * {@inheritDoc}
+             */
+            @Override
+            public ConnectionRequest requestConnection(final HttpRoute route, final Object state)
+            {
+                final ConnectionRequest connectionRequest = super.requestConnection(route, state);
+                return metrics != null ? new TimedConnectionRequest(connectionRequest, metrics) : connectionRequest;
+            }
+        };
+        this.connectionManager.setMaxTotal(this.maxTotalConnections);
+        this.connectionManager.setDefaultMaxPerRoute(this.maxConnectionsPerRoute);
+
+        final RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(this.connectTimeout)
+                .setSocketTimeout(this.socketTimeout).setConnectionRequestTimeout(this.connectionRequestTimeout).build();
+
+        final long defaultKeepAliveDuration = this.keepAliveDuration;
+        this.httpClient = HttpClients.custom().setConnectionManager(this.connectionManager).setDefaultRequestConfig(requestConfig)
+                .setUserAgent(this.userAgent).setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy()
+                {
+
+                    /**
+                     *
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    public long getKeepAliveDuration(final HttpResponse response, final HttpContext context)
+                    {
+                        final long keepAliveDuration = super.getKeepAliveDuration(response, context);
+                        // server did not specify a keep-alive timeout, so we apply our own limit instead of keeping it open indefinitely
+                        return keepAliveDuration > 0 ? keepAliveDuration : defaultKeepAliveDuration;
+                    }
+                }).build();
+
+        if (this.idleConnectionEvictionInterval > 0)
+        {
+            final TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+            threadFactory.setThreadDaemon(true);
+            threadFactory.setNamePrefix(WebhookCallActionExecuter.NAME + "-idleConnectionEvictor");
+
+            this.idleConnectionEvictor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.idleConnectionEvictor.scheduleWithFixedDelay(this::evictIdleConnections, this.idleConnectionEvictionInterval,
+                    this.idleConnectionEvictionInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() throws IOException
+    {
+        if (this.idleConnectionEvictor != null)
+        {
+            this.idleConnectionEvictor.shutdownNow();
+            this.idleConnectionEvictor = null;
+        }
+
+        if (this.httpClient != null)
+        {
+            // closes the connection manager as well
+            this.httpClient.close();
+            this.httpClient = null;
+            this.connectionManager = null;
+        }
+    }
+
+    /**
+     * @param userAgent
+     *            the userAgent to set
+     */
+    public void setUserAgent(final String userAgent)
+    {
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * @param maxTotalConnections
+     *            the maxTotalConnections to set
+     */
+    public void setMaxTotalConnections(final int maxTotalConnections)
+    {
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
+    /**
+     * @param maxConnectionsPerRoute
+     *            the maxConnectionsPerRoute to set
+     */
+    public void setMaxConnectionsPerRoute(final int maxConnectionsPerRoute)
+    {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+     * @param connectTimeout
+     *            the connectTimeout to set (in milliseconds)
+     */
+    public void setConnectTimeout(final int connectTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @param socketTimeout
+     *            the socketTimeout to set (in milliseconds)
+     */
+    public void setSocketTimeout(final int socketTimeout)
+    {
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+     * @param connectionRequestTimeout
+     *            the timeout for leasing a connection from the pool to set (in milliseconds)
+     */
+    public void setConnectionRequestTimeout(final int connectionRequestTimeout)
+    {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    /**
+     * @param keepAliveDuration
+     *            the keep-alive duration to set (in milliseconds) for connections when servers do not specify one
+     */
+    public void setKeepAliveDuration(final long keepAliveDuration)
+    {
+        this.keepAliveDuration = keepAliveDuration;
+    }
+
+    /**
+     * @param idleConnectionTimeout
+     *            the duration (in milliseconds) after which idle pooled connections are evicted
+     */
+    public void setIdleConnectionTimeout(final long idleConnectionTimeout)
+    {
+        this.idleConnectionTimeout = idleConnectionTimeout;
+    }
+
+    /**
+     * @param idleConnectionEvictionInterval
+     *            the interval (in milliseconds) at which to check for expired / idle connections - a non-positive value disables the
+     *            eviction
+     */
+    public void setIdleConnectionEvictionInterval(final long idleConnectionEvictionInterval)
+    {
+        this.idleConnectionEvictionInterval = idleConnectionEvictionInterval;
+    }
+
+    /**
+     * @param compressRequestBody
+     *            {@code true} if request bodies should be compressed using gzip, {@code false} otherwise - should only be enabled if all
+     *            webhook endpoints support compressed requests
+     */
+    public void setCompressRequestBody(final boolean compressRequestBody)
+    {
+        this.compressRequestBody = compressRequestBody;
+    }
+
+    /**
+     * @param maxResponseBytes
+     *            the maximum number of bytes of a response body to process for extracting values or logging
+     */
+    public void setMaxResponseBytes(final long maxResponseBytes)
+    {
+        this.maxResponseBytes = maxResponseBytes;
+    }
+
+    /**
+     * @param metrics
+     *            the metrics to set
+     */
+    public void setMetrics(final WebhookCallMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public WebhookResponse send(final WebhookRequest request)
+    {
+        ParameterCheck.mandatory("request", request);
+
+        final String url = request.getUrl();
+        final HttpPost post = new HttpPost(url);
+
+        final WebhookPayloadEntity requestEntity = new WebhookPayloadEntity(request.getPayload(), request.getContentType(),
+                this.compressRequestBody);
+        post.setEntity(requestEntity);
+        for (final Pair<String, String> header : request.getHeaders())
+        {
+            post.addHeader(header.getFirst(), header.getSecond());
+        }
+
+        LOGGER.debug("Performing webhook call to URL {}", url);
+        final String route = request.getRoute();
+        final long start = System.nanoTime();
+        int statusCode = WebhookCallException.NO_RESPONSE;
+        if (this.metrics != null)
+        {
+            this.metrics.callStarted();
+        }
+        try (CloseableHttpResponse response = this.httpClient.execute(post))
+        {
+            final StatusLine statusLine = response.getStatusLine();
+            statusCode = statusLine.getStatusCode();
+            LOGGER.debug("Webhook call to URL {} responded with status {}", url, statusLine);
+
+            final HttpEntity entity = response.getEntity();
+            WebhookResponse webhookResponse = null;
+            try
+            {
+                webhookResponse = this.processResponseEntity(request, statusCode, entity);
+            }
+            finally
+            {
+                // fully consume the response so the connection can be returned to the pool and re-used
+                EntityUtils.consume(entity);
+            }
+
+            if (statusCode >= 400)
+            {
+                LOGGER.warn("Webhook call failed with HTTP error {} and status message {}", statusCode, statusLine.getReasonPhrase());
+                final Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+                throw new WebhookCallException(
+                        "Webhook responded with HTTP error code " + statusCode + ", status message: " + statusLine.getReasonPhrase(),
+                        statusCode, WebhookCallException.parseRetryAfter(retryAfter != null ? retryAfter.getValue() : null));
+            }
+            return webhookResponse;
+        }
+        catch (final IOException ex)
+        {
+            LOGGER.warn("Webhook call failed", ex);
+            throw new WebhookCallException("Error executing webhook call", ex);
+        }
+        finally
+        {
+            if (this.metrics != null)
+            {
+                this.metrics.recordPhase(WebhookCallMetrics.Phase.HTTP_REQUEST, start);
+                this.metrics.recordResponse(route, statusCode);
+                if (requestEntity.getBytesWritten() >= 0)
+                {
+                    this.metrics.recordPayloadSize(route, requestEntity.getBytesWritten());
+                }
+                this.metrics.callFinished();
+            }
+        }
+    }
+
+    /**
+     * Processes the body of a response as far as required to extract {@link WebhookRequest#getResponsePointers() requested values} and
+     * to log an excerpt of the body (on trace level). At most {@link #setMaxResponseBytes(long) a limited number of bytes} are
+     * processed, and the body is never buffered as a whole.
+     *
+     * @param request
+     *            the request to which the response belongs
+     * @param statusCode
+     *            the HTTP status code of the response
+     * @param entity
+     *            the entity of the response
+     * @return the response
+     * @throws IOException
+     *             if an error occurs reading the response body
+     */
+    protected WebhookResponse processResponseEntity(final WebhookRequest request, final int statusCode, final HttpEntity entity)
+            throws IOException
+    {
+        WebhookResponseProcessor processor = null;
+        if (entity != null)
+        {
+            ContentType contentType;
+            try
+            {
+                contentType = ContentType.get(entity);
+            }
+            catch (final ParseException | UnsupportedCharsetException ex)
+            {
+                LOGGER.debug("Webhook call to URL {} responded with invalid content type", request.getUrl(), ex);
+                contentType = null;
+            }
+            processor = WebhookResponseProcessor.create(request, statusCode < 400, contentType != null ? contentType.getMimeType() : null,
+                    contentType != null ? contentType.getCharset() : null, LOGGER.isTraceEnabled(), this.maxResponseBytes);
+        }
+
+        final WebhookResponse response;
+        if (processor != null)
+        {
+            try (InputStream in = entity.getContent())
+            {
+                processor.process(in);
+            }
+            if (processor.getBody() != null)
+            {
+                LOGGER.trace("Webhook call to URL {} responded with response messsage: {}", request.getUrl(), processor.getBody());
+            }
+            response = processor.toResponse(statusCode);
+        }
+        else
+        {
+            response = new WebhookResponse(statusCode, null);
+        }
+        return response;
+    }
+
+    /**
+     * Instances of this class record the time spent waiting for a connection to be leased from the connection pool.
+     *
+     * @author Axel Faust
+     */
+    protected static class TimedConnectionRequest implements ConnectionRequest
+    {
+
+        protected final ConnectionRequest delegate;
+
+        protected final WebhookCallMetrics metrics;
+
+        protected TimedConnectionRequest(final ConnectionRequest delegate, final WebhookCallMetrics metrics)
+        {
+            this.delegate = delegate;
+            this.metrics = metrics;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public HttpClientConnection get(final long timeout, final TimeUnit tunit)
+                throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+        {
+            final long start = System.nanoTime();
+            try
+            {
+                return this.delegate.get(timeout, tunit);
+            }
+            finally
+            {
+                this.metrics.recordPhase(WebhookCallMetrics.Phase.CONNECTION_LEASE, start);
+            }
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean cancel()
+        {
+            return this.delegate.cancel();
+        }
+    }
+
+    /**
+     * Closes any expired connections and connections which have been idle for longer than the configured timeout in the connection pool.
+     */
+    protected void evictIdleConnections()
+    {
+        final PoolingHttpClientConnectionManager connectionManager = this.connectionManager;
+        if (connectionManager != null)
+        {
+            LOGGER.trace("Evicting expired / idle connections");
+            connectionManager.closeExpiredConnections();
+            if (this.idleConnectionTimeout > 0)
+            {
+                connectionManager.closeIdleConnections(this.idleConnectionTimeout, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.util.ParameterCheck;
+
+/**
+ * Instances of this class extract the values identified by a set of JSON pointers (RFC 6901) from a JSON document which is fed to them
+ * character by character, e.g. while a response is being read from the network. Only the characters of the requested values (and of the
+ * keys of objects which may contain requested values) are retained, so that the memory required does not depend on the size of the
+ * document. Processing ends as soon as all requested values have been found.
+ *
+ * Scalar values are extracted as their text (strings unescaped, {@code null} as a {@code null} value), objects and arrays as their JSON
+ * source text. Instances are not thread-safe and can only be used for a single document.
+ *
+ * @author Axel Faust
+ */
+public class JsonPointerExtractor
+{
+
+    protected static enum State
+    {
+        VALUE,
+        KEY,
+        COLON,
+        AFTER_VALUE,
+        STRING,
+        ESCAPE,
+        UNICODE,
+        LITERAL,
+        DONE,
+        INVALID;
+    }
+
+    protected final Set<String> pointers;
+
+    protected final Set<String> containerPointers = new HashSet<>();
+
+    protected final Map<String, String> values = new HashMap<>();
+
+    protected final Deque<Frame> frames = new ArrayDeque<>();
+
+    protected final StringBuilder buffer = new StringBuilder();
+
+    protected State state = State.VALUE;
+
+    protected boolean stringIsKey;
+
+    protected boolean retain;
+
+    protected String valuePointer;
+
+    protected int unicodeDigits;
+
+    protected int unicodeValue;
+
+    protected StringBuilder rawValue;
+
+    protected String rawValuePointer;
+
+    protected int rawValueDepth;
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param pointers
+     *            the JSON pointers of the values to extract
+     */
+    public JsonPointerExtractor(final Collection<String> pointers)
+    {
+        ParameterCheck.mandatory("pointers", pointers);
+
+        this.pointers = new HashSet<>(pointers);
+        for (final String pointer : this.pointers)
+        {
+            if (!isValidPointer(pointer))
+            {
+                throw new IllegalArgumentException("Invalid JSON pointer: " + pointer);
+            }
+
+            // all containers on the path to a requested value need to be tracked
+            for (int idx = pointer.indexOf('/'); idx != -1; idx = pointer.indexOf('/', idx + 1))
+            {
+                this.containerPointers.add(pointer.substring(0, idx));
+            }
+        }
+
+        if (this.pointers.isEmpty())
+        {
+            this.state = State.DONE;
+        }
+    }
+
+    /**
+     * Checks whether a string is a syntactically valid JSON pointer.
+     *
+     * @param pointer
+     *            the string to check
+     * @return {@code true} if the string is a valid JSON pointer, {@code false} otherwise
+     */
+    public static boolean isValidPointer(final String pointer)
+    {
+        boolean valid = pointer != null && (pointer.isEmpty() || pointer.charAt(0) == '/');
+        for (int idx = pointer != null ? pointer.indexOf('~') : -1; valid && idx != -1; idx = pointer.indexOf('~', idx + 1))
+        {
+            valid = idx + 1 < pointer.length() && (pointer.charAt(idx + 1) == '0' || pointer.charAt(idx + 1) == '1');
+        }
+        return valid;
+    }
+
+    /**
+     * Processes the next characters of the JSON document.
+     *
+     * @param chars
+     *            the characters to process
+     * @param offset
+     *            the offset of the first character to process
+     * @param length
+     *            the number of characters to process
+     * @return {@code true} if further characters are required, {@code false} if processing has ended
+     */
+    public boolean accept(final char[] chars, final int offset, final int length)
+    {
+        for (int idx = offset, max = offset + length; idx < max && !this.isDone(); idx++)
+        {
+            this.accept(chars[idx]);
+        }
+        return !this.isDone();
+    }
+
+    /**
+     * Processes the next character of the JSON document.
+     *
+     * @param c
+     *            the character to process
+     * @return {@code true} if further characters are required, {@code false} if processing has ended
+     */
+    public boolean accept(final char c)
+    {
+        if (this.rawValue != null)
+        {
+            this.rawValue.append(c);
+        }
+
+        switch (this.state)
+        {
+            case VALUE:
+                if (c == ']' && !this.frames.isEmpty() && !this.frames.peek().object)
+                {
+                    // empty array
+                    this.endContainer();
+                }
+                else if (!isWhitespace(c))
+                {
+                    this.startValue(c);
+                }
+                break;
+            case KEY:
+                if (c == '"')
+                {
+                    this.startString(true, this.frames.peek().pointer != null);
+                }
+                else if (c == '}')
+                {
+                    // empty object
+                    this.endContainer();
+                }
+                else if (!isWhitespace(c))
+                {
+                    this.state = State.INVALID;
+                }
+                break;
+            case COLON:
+                if (c == ':')
+                {
+                    this.state = State.VALUE;
+                }
+                else if (!isWhitespace(c))
+                {
+                    this.state = State.INVALID;
+                }
+                break;
+            case AFTER_VALUE:
+                this.afterValue(c);
+                break;
+            case STRING:
+                if (c == '"')
+                {
+                    this.endString();
+                }
+                else if (c == '\\')
+                {
+                    this.state = State.ESCAPE;
+                }
+                else
+                {
+                    this.append(c);
+                }
+                break;
+            case ESCAPE:
+                this.escape(c);
+                break;
+            case UNICODE:
+                this.unicode(c);
+                break;
+            case LITERAL:
+                if (c == ',' || c == '}' || c == ']' || isWhitespace(c))
+                {
+                    this.endScalar(this.valuePointer != null && "null".equals(this.buffer.toString()) ? null : this.buffer.toString());
+                    // the delimiter must not resume processing if all requested values have been found
+                    if (!this.isDone())
+                    {
+                        this.afterValue(c);
+                    }
+                }
+                else
+                {
+                    this.append(c);
+                }
+                break;
+            default:
+                // NO-OP - DONE / INVALID
+        }
+        return !this.isDone();
+    }
+
+    /**
+     * Completes processing of the JSON document, e.g. when the document ends with a root-level literal value. A document which ends before
+     * its root value has been completed is considered invalid.
+     */
+    public void finish()
+    {
+        if (this.state == State.LITERAL)
+        {
+            this.endScalar(this.valuePointer != null && "null".equals(this.buffer.toString()) ? null : this.buffer.toString());
+        }
+
+        if (!this.isDone())
+        {
+            this.state = State.INVALID;
+        }
+    }
+
+    /**
+     * @return {@code true} if processing has ended, either because all requested values have been found, the document has been fully
+     *         processed, or the document has been found to be invalid
+     */
+    public boolean isDone()
+    {
+        return this.state == State.DONE || this.state == State.INVALID;
+    }
+
+    /**
+     * @return {@code true} if the document has been found to be invalid
+     */
+    public boolean isInvalid()
+    {
+        return this.state == State.INVALID;
+    }
+
+    /**
+     * Retrieves the extracted values. Pointers for which no value has been found are not contained in the result, pointers for which a
+     * JSON {@code null} value has been found are mapped to {@code null}.
+     *
+     * @return the read-only map of extracted values, keyed by JSON pointer
+     */
+    public Map<String, String> getValues()
+    {
+        return Collections.unmodifiableMap(this.values);
+    }
+
+    protected void startValue(final char c)
+    {
+        final String pointer = this.currentPointer();
+        final boolean requested = pointer != null && this.pointers.contains(pointer);
+
+        if (c == '{' || c == '[')
+        {
+            final Frame frame = new Frame(c == '{', pointer != null && this.containerPointers.contains(pointer) ? pointer : null);
+            this.frames.push(frame);
+            this.state = frame.object ? State.KEY : State.VALUE;
+
+            if (requested && this.rawValue == null)
+            {
+                this.rawValue = new StringBuilder();
+                this.rawValue.append(c);
+                this.rawValuePointer = pointer;
+                this.rawValueDepth = this.frames.size();
+            }
+        }
+        else if (c == '"')
+        {
+            this.valuePointer = requested ? pointer : null;
+            this.startString(false, requested);
+        }
+        else if (c == '-' || Character.isLetterOrDigit(c))
+        {
+            this.valuePointer = requested ? pointer : null;
+            this.retain = requested;
+            this.buffer.setLength(0);
+            this.state = State.LITERAL;
+            this.append(c);
+        }
+        else
+        {
+            this.state = State.INVALID;
+        }
+    }
+
+    protected void afterValue(final char c)
+    {
+        if (c == ',' && !this.frames.isEmpty())
+        {
+            final Frame frame = this.frames.peek();
+            if (frame.object)
+            {
+                this.state = State.KEY;
+            }
+            else
+            {
+                frame.index++;
+                this.state = State.VALUE;
+            }
+        }
+        else if ((c == '}' || c == ']') && !this.frames.isEmpty() && this.frames.peek().object == (c == '}'))
+        {
+            this.endContainer();
+        }
+        else if (this.frames.isEmpty())
+        {
+            // anything after the root value is irrelevant
+            this.state = State.DONE;
+        }
+        else if (!isWhitespace(c))
+        {
+            this.state = State.INVALID;
+        }
+    }
+
+    protected void startString(final boolean key, final boolean retain)
+    {
+        this.stringIsKey = key;
+        this.retain = retain;
+        this.buffer.setLength(0);
+        this.state = State.STRING;
+    }
+
+    protected void endString()
+    {
+        if (this.stringIsKey)
+        {
+            final Frame frame = this.frames.peek();
+            frame.key = frame.pointer != null ? this.buffer.toString() : null;
+            this.state = State.COLON;
+        }
+        else
+        {
+            this.endScalar(this.buffer.toString());
+        }
+    }
+
+    protected void endScalar(final String value)
+    {
+        if (this.valuePointer != null)
+        {
+            this.values.put(this.valuePointer, value);
+            this.valuePointer = null;
+        }
+        this.state = this.frames.isEmpty() || this.values.size() == this.pointers.size() ? State.DONE : State.AFTER_VALUE;
+    }
+
+    protected void endContainer()
+    {
+        if (this.rawValue != null && this.frames.size() == this.rawValueDepth)
+        {
+            this.values.put(this.rawValuePointer, this.rawValue.toString());
+            this.rawValue = null;
+            this.rawValuePointer = null;
+        }
+        this.frames.pop();
+        this.state = this.frames.isEmpty() || this.values.size() == this.pointers.size() ? State.DONE : State.AFTER_VALUE;
+    }
+
+    protected void escape(final char c)
+    {
+        this.state = State.STRING;
+        switch (c)
+        {
+            case 'b':
+                this.append('\b');
+                break;
+            case 'f':
+                this.append('\f');
+                break;
+            case 'n':
+                this.append('\n');
+                break;
+            case 'r':
+                this.append('\r');
+                break;
+            case 't':
+                this.append('\t');
+                break;
+            case 'u':
+                this.unicodeDigits = 0;
+                this.unicodeValue = 0;
+                this.state = State.UNICODE;
+                break;
+            default:
+                // quotation mark, reverse solidus and solidus are escaped as themselves
+                this.append(c);
+        }
+    }
+
+    protected void unicode(final char c)
+    {
+        final int digit = Character.digit(c, 16);
+        if (digit == -1)
+        {
+            this.state = State.INVALID;
+        }
+        else
+        {
+            this.unicodeValue = (this.unicodeValue << 4) | digit;
+            this.unicodeDigits++;
+            if (this.unicodeDigits == 4)
+            {
+                this.state = State.STRING;
+                this.append((char) this.unicodeValue);
+            }
+        }
+    }
+
+    protected void append(final char c)
+    {
+        // characters of values / keys which are irrelevant for any requested value are skipped
+        if (this.retain)
+        {
+            this.buffer.append(c);
+        }
+    }
+
+    protected String currentPointer()
+    {
+        final String pointer;
+        if (this.frames.isEmpty())
+        {
+            pointer = "";
+        }
+        else
+        {
+            final Frame frame = this.frames.peek();
+            if (frame.pointer == null)
+            {
+                // container is not on the path to any requested value
+                pointer = null;
+            }
+            else if (frame.object)
+            {
+                pointer = frame.pointer + '/' + frame.key.replace("~", "~0").replace("/", "~1");
+            }
+            else
+            {
+                pointer = frame.pointer + '/' + frame.index;
+            }
+        }
+        return pointer;
+    }
+
+    protected static boolean isWhitespace(final char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Instances of this class represent an object or array which is currently being processed.
+     *
+     * @author Axel Faust
+     */
+    protected static class Frame
+    {
+
+        protected final boolean object;
+
+        protected final String pointer;
+
+        protected String key;
+
+        protected int index;
+
+        protected Frame(final boolean object, final String pointer)
+        {
+            this.object = object;
+            this.pointer = pointer;
+        }
+    }
+}
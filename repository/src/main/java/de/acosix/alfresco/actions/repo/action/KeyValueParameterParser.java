@@ -0,0 +1,198 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.alfresco.util.Pair;
+import org.alfresco.util.ParameterCheck;
+
+/**
+ * This class parses multi-line action parameters containing {@code key=value} pairs, e.g. template model arguments or HTTP headers, in a
+ * single pass without the use of regular expressions. The following rules apply:
+ * <ul>
+ * <li>lines may be separated by {@code \n}, {@code \r\n} or {@code \r}</li>
+ * <li>blank lines and lines starting with {@code #} (comments) are ignored</li>
+ * <li>key and value are separated by the first unescaped {@code =} and trimmed of surrounding whitespace</li>
+ * <li>{@code \=} denotes a literal {@code =} and {@code \\} a literal backslash - any other backslash is kept as-is</li>
+ * <li>keys must not be empty, values may be</li>
+ * </ul>
+ *
+ * @author Axel Faust
+ */
+public final class KeyValueParameterParser
+{
+
+    private static final char SEPARATOR = '=';
+
+    private static final char ESCAPE = '\\';
+
+    private static final char COMMENT = '#';
+
+    private KeyValueParameterParser()
+    {
+        // NO-OP
+    }
+
+    /**
+     * Parses a multi-line parameter containing key-value pairs.
+     *
+     * @param parameterName
+     *            the name of the parameter, used in validation errors
+     * @param parameterValue
+     *            the value of the parameter
+     * @return the read-only list of parsed key-value pairs in the order of their definition
+     * @throws IllegalArgumentException
+     *             if any line of the parameter value is not a valid key-value pair
+     */
+    public static List<Pair<String, String>> parse(final String parameterName, final String parameterValue)
+    {
+        ParameterCheck.mandatory("parameterValue", parameterValue);
+
+        final List<Pair<String, String>> keyValues = new ArrayList<>();
+        final int length = parameterValue.length();
+        int lineStart = 0;
+        int lineNumber = 0;
+        while (lineStart < length)
+        {
+            lineNumber++;
+            int lineEnd = lineStart;
+            char c = 0;
+            while (lineEnd < length && (c = parameterValue.charAt(lineEnd)) != '\n' && c != '\r')
+            {
+                lineEnd++;
+            }
+
+            parseLine(parameterName, parameterValue, lineStart, lineEnd, lineNumber, keyValues);
+
+            lineStart = lineEnd + 1;
+            if (c == '\r' && lineStart < length && parameterValue.charAt(lineStart) == '\n')
+            {
+                lineStart++;
+            }
+        }
+        return keyValues.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(keyValues);
+    }
+
+    private static void parseLine(final String parameterName, final String parameterValue, final int lineStart, final int lineEnd,
+            final int lineNumber, final List<Pair<String, String>> keyValues)
+    {
+        final int start = skipLeadingWhitespace(parameterValue, lineStart, lineEnd);
+        final int end = skipTrailingWhitespace(parameterValue, start, lineEnd);
+
+        if (start < end && parameterValue.charAt(start) != COMMENT)
+        {
+            int separator = -1;
+            boolean keyEscaped = false;
+            for (int idx = start; idx < end && separator == -1; idx++)
+            {
+                final char c = parameterValue.charAt(idx);
+                if (c == ESCAPE && idx + 1 < end)
+                {
+                    keyEscaped = true;
+                    idx++;
+                }
+                else if (c == SEPARATOR)
+                {
+                    separator = idx;
+                }
+            }
+
+            if (separator == -1)
+            {
+                throw new IllegalArgumentException(
+                        parameterName + " line " + lineNumber + " is not a =-separated key + value (use \\= for a literal =)");
+            }
+
+            final int keyEnd = skipTrailingWhitespace(parameterValue, start, separator);
+            if (keyEnd == start)
+            {
+                throw new IllegalArgumentException(parameterName + " line " + lineNumber + " has an empty key");
+            }
+            final int valueStart = skipLeadingWhitespace(parameterValue, separator + 1, end);
+
+            final String key = keyEscaped ? unescape(parameterValue, start, keyEnd) : parameterValue.substring(start, keyEnd);
+            final String value = unescape(parameterValue, valueStart, end);
+            keyValues.add(new Pair<>(key, value));
+        }
+    }
+
+    private static String unescape(final String str, final int start, final int end)
+    {
+        int firstEscape = -1;
+        for (int idx = start; idx < end - 1 && firstEscape == -1; idx++)
+        {
+            if (str.charAt(idx) == ESCAPE)
+            {
+                final char next = str.charAt(idx + 1);
+                if (next == SEPARATOR || next == ESCAPE)
+                {
+                    firstEscape = idx;
+                }
+            }
+        }
+
+        final String result;
+        if (firstEscape == -1)
+        {
+            result = str.substring(start, end);
+        }
+        else
+        {
+            final StringBuilder builder = new StringBuilder(end - start);
+            builder.append(str, start, firstEscape);
+            for (int idx = firstEscape; idx < end; idx++)
+            {
+                final char c = str.charAt(idx);
+                if (c == ESCAPE && idx + 1 < end)
+                {
+                    final char next = str.charAt(idx + 1);
+                    if (next == SEPARATOR || next == ESCAPE)
+                    {
+                        builder.append(next);
+                        idx++;
+                        continue;
+                    }
+                }
+                builder.append(c);
+            }
+            result = builder.toString();
+        }
+        return result;
+    }
+
+    private static int skipLeadingWhitespace(final String str, final int start, final int end)
+    {
+        int idx = start;
+        while (idx < end && Character.isWhitespace(str.charAt(idx)))
+        {
+            idx++;
+        }
+        return idx;
+    }
+
+    private static int skipTrailingWhitespace(final String str, final int start, final int end)
+    {
+        int idx = end;
+        while (idx > start && Character.isWhitespace(str.charAt(idx - 1)))
+        {
+            idx--;
+        }
+        return idx;
+    }
+}
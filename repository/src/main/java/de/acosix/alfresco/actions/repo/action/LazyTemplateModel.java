@@ -0,0 +1,285 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.alfresco.util.ParameterCheck;
+
+/**
+ * Instances of this class represent a template model which resolves expensive values only when a template actually accesses them, and
+ * which can be layered on top of a shared, read-only base model without copying it. Values provided via {@link #putLazy(String, Supplier)
+ * suppliers} are resolved at most once on first access.
+ *
+ * Operations which need to enumerate all values (e.g. {@link #entrySet()}) resolve all lazy values, so that instances remain usable
+ * anywhere a regular map is expected, e.g. by the default template processor. Instances are not thread-safe.
+ *
+ * @author Axel Faust
+ */
+public class LazyTemplateModel extends AbstractMap<String, Object>
+{
+
+    protected final Map<String, Object> parent;
+
+    protected final Map<String, Object> values = new HashMap<>();
+
+    protected final Map<String, Supplier<?>> lazyValues = new HashMap<>();
+
+    protected boolean readOnly;
+
+    /**
+     * Creates a new, empty instance of this class.
+     */
+    public LazyTemplateModel()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates a new instance of this class layered on top of a parent model. Any values put into this instance overlay the values of the
+     * parent model, which is never modified.
+     *
+     * @param parent
+     *            the parent model - may be {@code null}
+     */
+    public LazyTemplateModel(final Map<String, Object> parent)
+    {
+        this.parent = parent;
+    }
+
+    /**
+     * Puts a value into this model which will only be resolved when first accessed.
+     *
+     * @param key
+     *            the key of the value
+     * @param supplier
+     *            the supplier of the value
+     */
+    public void putLazy(final String key, final Supplier<?> supplier)
+    {
+        ParameterCheck.mandatoryString("key", key);
+        ParameterCheck.mandatory("supplier", supplier);
+        this.checkWritable();
+
+        this.values.remove(key);
+        this.lazyValues.put(key, supplier);
+    }
+
+    /**
+     * Marks this model as read-only, so that it can be safely shared as the base for other models. Lazy values can still be resolved.
+     *
+     * @return this instance
+     */
+    public LazyTemplateModel readOnly()
+    {
+        this.readOnly = true;
+        return this;
+    }
+
+    /**
+     * Creates a new, writable model layered on top of this instance.
+     *
+     * @return the new model
+     */
+    public LazyTemplateModel overlay()
+    {
+        return new LazyTemplateModel(this);
+    }
+
+    /**
+     * Checks whether a value of this model has already been resolved. This operation never resolves any values.
+     *
+     * @param key
+     *            the key of the value
+     * @return {@code true} if the value is contained in this model and has been resolved, {@code false} otherwise
+     */
+    public boolean isResolved(final String key)
+    {
+        boolean resolved;
+        if (this.values.containsKey(key))
+        {
+            resolved = true;
+        }
+        else if (this.lazyValues.containsKey(key))
+        {
+            resolved = false;
+        }
+        else if (this.parent instanceof LazyTemplateModel)
+        {
+            resolved = ((LazyTemplateModel) this.parent).isResolved(key);
+        }
+        else
+        {
+            resolved = this.parent != null && this.parent.containsKey(key);
+        }
+        return resolved;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Object get(final Object key)
+    {
+        Object value;
+        if (this.values.containsKey(key))
+        {
+            value = this.values.get(key);
+        }
+        else if (this.lazyValues.containsKey(key))
+        {
+            // memoising a lazy value is permitted even if read-only as it does not change the (observable) content
+            final Supplier<?> supplier = this.lazyValues.remove(key);
+            value = supplier.get();
+            this.values.put((String) key, value);
+        }
+        else
+        {
+            value = this.parent != null ? this.parent.get(key) : null;
+        }
+        return value;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(final Object key)
+    {
+        return this.values.containsKey(key) || this.lazyValues.containsKey(key) || (this.parent != null && this.parent.containsKey(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * In order to avoid resolving values only to discard them, this operation only returns a previous value if it has been put into this
+     * model (not the parent) and already been resolved.
+     */
+    @Override
+    public Object put(final String key, final Object value)
+    {
+        ParameterCheck.mandatoryString("key", key);
+        this.checkWritable();
+
+        this.lazyValues.remove(key);
+        return this.values.put(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Analogous to {@link #put(String, Object) put}, this operation only returns a removed value if it had already been resolved.
+     */
+    @Override
+    public Object remove(final Object key)
+    {
+        this.checkWritable();
+        if (this.parent != null && this.parent.containsKey(key))
+        {
+            throw new UnsupportedOperationException("Values of the parent model cannot be removed");
+        }
+
+        this.lazyValues.remove(key);
+        return this.values.remove(key);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        this.checkWritable();
+        if (this.parent != null && !this.parent.isEmpty())
+        {
+            throw new UnsupportedOperationException("Values of the parent model cannot be removed");
+        }
+
+        this.values.clear();
+        this.lazyValues.clear();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> keySet()
+    {
+        final Set<String> keys = new LinkedHashSet<>();
+        if (this.parent != null)
+        {
+            keys.addAll(this.parent.keySet());
+        }
+        keys.addAll(this.values.keySet());
+        keys.addAll(this.lazyValues.keySet());
+        return Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return this.keySet().size();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty()
+    {
+        return this.values.isEmpty() && this.lazyValues.isEmpty() && (this.parent == null || this.parent.isEmpty());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The returned set is an unmodifiable snapshot for which all lazy values have been resolved.
+     */
+    @Override
+    public Set<Entry<String, Object>> entrySet()
+    {
+        final Map<String, Object> snapshot = new LinkedHashMap<>();
+        for (final String key : this.keySet())
+        {
+            snapshot.put(key, this.get(key));
+        }
+        return Collections.unmodifiableMap(snapshot).entrySet();
+    }
+
+    protected void checkWritable()
+    {
+        if (this.readOnly)
+        {
+            throw new UnsupportedOperationException("Template model is read-only");
+        }
+    }
+}
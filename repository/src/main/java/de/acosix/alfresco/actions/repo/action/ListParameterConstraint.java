@@ -15,17 +15,22 @@
  */
 package de.acosix.alfresco.actions.repo.action;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.alfresco.repo.action.constraint.BaseParameterConstraint;
 import org.alfresco.util.PropertyCheck;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.extensions.surf.util.I18NUtil;
 
 /**
  *
- * Instances of this class provide allowed values with localisation based on a configured list of values.
+ * Instances of this class provide allowed values with localisation based on a configured list of values. The localised values are
+ * cached per locale, as the list of values is static and constraints are queried whenever actions are validated or rules are edited.
  *
  * @author Axel Faust
  */
@@ -34,6 +39,8 @@ public class ListParameterConstraint extends BaseParameterConstraint implements
 
     protected List<String> allowedValues;
 
+    protected final Map<Locale, Map<String, String>> allowableValuesByLocale = new ConcurrentHashMap<>();
+
     /**
      *
      * {@inheritDoc}
@@ -51,6 +58,24 @@ public class ListParameterConstraint extends BaseParameterConstraint implements
     public void setAllowedValues(final List<String> allowedValues)
     {
         this.allowedValues = allowedValues;
+        this.allowableValuesByLocale.clear();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, String> getAllowableValues()
+    {
+        final Locale locale = I18NUtil.getLocale();
+        Map<String, String> allowableValues = this.allowableValuesByLocale.get(locale);
+        if (allowableValues == null)
+        {
+            allowableValues = Collections.unmodifiableMap(this.getAllowableValuesImpl());
+            this.allowableValuesByLocale.put(locale, allowableValues);
+        }
+        return allowableValues;
     }
 
     /**
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Instances of this class provide a simple, size-bounded map which evicts its least-recently accessed entries. Instances are not thread
+ * safe and require external synchronisation when used concurrently.
+ *
+ * @author Axel Faust
+ */
+public class LruMap<K, V> extends LinkedHashMap<K, V>
+{
+
+    private static final long serialVersionUID = 7213450962367036735L;
+
+    protected final int maxSize;
+
+    protected final AtomicLong evictionCounter;
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param maxSize
+     *            the maximum number of entries to retain
+     */
+    public LruMap(final int maxSize)
+    {
+        this(maxSize, null);
+    }
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param maxSize
+     *            the maximum number of entries to retain
+     * @param evictionCounter
+     *            the counter to increment whenever an entry is evicted
+     */
+    public LruMap(final int maxSize, final AtomicLong evictionCounter)
+    {
+        super(16, 0.75f, true);
+        this.maxSize = maxSize;
+        this.evictionCounter = evictionCounter;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<K, V> eldest)
+    {
+        final boolean evict = this.size() > this.maxSize;
+        if (evict && this.evictionCounter != null)
+        {
+            this.evictionCounter.incrementAndGet();
+        }
+        return evict;
+    }
+}
@@ -0,0 +1,932 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Instances of this class limit the rate of webhook requests delivered via a delegate transport using token buckets, so that quotas
+ * enforced by webhook endpoints are not exceeded. Calls which would exceed a rate limit are delayed until a token becomes available instead
+ * of failing, and only rejected with a {@link WebhookCallRejectedException} if they could not be made within a configured maximum wait
+ * time. Blocking calls are delayed in the calling thread, while {@link #sendAsync(WebhookRequest) asynchronous calls} reserve their token
+ * immediately and are handed to the delegate by a scheduler once the delay has elapsed, so that the calling thread is never blocked.
+ *
+ * Rate limits are configured in the global properties via a common prefix and a limit name, either for a specific host
+ * ({@code <prefix><name>.host}) or for all URLs matching a regular expression ({@code <prefix><name>.urlPattern}), with the sustained
+ * rate specified as {@code <prefix><name>.permitsPerSecond} and the maximum burst as {@code <prefix><name>.burst}. All calls matching a
+ * limit share its token bucket. If multiple limits match a call, the limit with the alphabetically first name applies. Calls not matching
+ * any limit are subject to an optional default limit per endpoint route.
+ *
+ * When an endpoint throttles a call ({@code 429 Too Many Requests} / {@code 503 Service Unavailable}), all calls sharing the same token
+ * bucket are paused for the duration specified by its {@code Retry-After} header, or a default pause if the header is missing.
+ *
+ * In a clustered repository, the configured rates are shared among all servers which recently made webhook calls, and pauses are
+ * propagated to all servers, using a cluster-wide cache. Since the membership is only refreshed periodically, the combined rate may
+ * briefly exceed a limit when additional servers start making webhook calls.
+ *
+ * @author Axel Faust
+ */
+public class RateLimitingWebhookTransport implements WebhookTransport, InitializingBean, DisposableBean, RateLimitingWebhookTransportMBean
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateLimitingWebhookTransport.class);
+
+    private static final String MEMBER_KEY_PREFIX = "member:";
+
+    private static final String PAUSE_KEY_PREFIX = "pause:";
+
+    protected final String memberId = UUID.randomUUID().toString();
+
+    protected final List<Limit> limits = new ArrayList<>();
+
+    protected final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    protected final AtomicLong delayedCallCount = new AtomicLong();
+
+    protected final AtomicLong totalDelay = new AtomicLong();
+
+    protected final AtomicLong rejectedCallCount = new AtomicLong();
+
+    protected final AtomicLong throttledResponseCount = new AtomicLong();
+
+    protected WebhookTransport delegate;
+
+    protected boolean enabled = true;
+
+    protected Properties globalProperties;
+
+    protected String limitPropertyPrefix;
+
+    protected double defaultPermitsPerSecond = 0;
+
+    protected int defaultBurst = 1;
+
+    protected long maxWait = 30000;
+
+    protected long throttlePause = 5000;
+
+    protected SimpleCache<String, Long> clusterCache;
+
+    protected long heartbeatInterval = 15000;
+
+    protected volatile int clusterMemberCount = 1;
+
+    protected volatile long lastHeartbeat;
+
+    protected ScheduledExecutorService delayScheduler;
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "delegate", this.delegate);
+        PropertyCheck.mandatory(this, "globalProperties", this.globalProperties);
+        PropertyCheck.mandatory(this, "limitPropertyPrefix", this.limitPropertyPrefix);
+
+        if (this.defaultPermitsPerSecond > 0 && this.defaultBurst <= 0)
+        {
+            throw new IllegalStateException("defaultBurst must be a positive integer");
+        }
+        if (this.heartbeatInterval <= 0)
+        {
+            throw new IllegalStateException("heartbeatInterval must be a positive integer");
+        }
+
+        final SortedSet<String> limitNames = new TreeSet<>();
+        for (final String propertyName : this.globalProperties.stringPropertyNames())
+        {
+            if (propertyName.startsWith(this.limitPropertyPrefix))
+            {
+                final String remainder = propertyName.substring(this.limitPropertyPrefix.length());
+                final int dotIdx = remainder.indexOf('.');
+                if (dotIdx > 0)
+                {
+                    limitNames.add(remainder.substring(0, dotIdx));
+                }
+            }
+        }
+
+        this.limits.clear();
+        for (final String limitName : limitNames)
+        {
+            final Limit limit = this.loadLimit(limitName);
+            if (limit != null)
+            {
+                LOGGER.info("Configured webhook rate limit {}", limit);
+                this.limits.add(limit);
+            }
+        }
+
+        final TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("webhookCallRateLimit-delay");
+        this.delayScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy()
+    {
+        if (this.clusterCache != null)
+        {
+            // other servers may immediately claim our share of the rate limits
+            this.clusterCache.remove(MEMBER_KEY_PREFIX + this.memberId);
+        }
+
+        if (this.delayScheduler != null)
+        {
+            // calls which are already delayed are still handed to the delegate - their delay is bounded by maxWait
+            this.delayScheduler.shutdown();
+        }
+    }
+
+    /**
+     * @param delegate
+     *            the delegate to set
+     */
+    public void setDelegate(final WebhookTransport delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param enabled
+     *            {@code true} if calls should be subject to rate limits, {@code false} if they should be passed through to the delegate
+     *            without any checks
+     */
+    public void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param globalProperties
+     *            the global properties from which to load the configured rate limits
+     */
+    public void setGlobalProperties(final Properties globalProperties)
+    {
+        this.globalProperties = globalProperties;
+    }
+
+    /**
+     * @param limitPropertyPrefix
+     *            the common prefix of all global properties configuring rate limits
+     */
+    public void setLimitPropertyPrefix(final String limitPropertyPrefix)
+    {
+        this.limitPropertyPrefix = limitPropertyPrefix;
+    }
+
+    /**
+     * @param defaultPermitsPerSecond
+     *            the number of calls per second permitted for each endpoint route not matching any configured rate limit - a non-positive
+     *            value disables the default limit
+     */
+    public void setDefaultPermitsPerSecond(final double defaultPermitsPerSecond)
+    {
+        this.defaultPermitsPerSecond = defaultPermitsPerSecond;
+    }
+
+    /**
+     * @param defaultBurst
+     *            the maximum number of calls permitted in a burst for each endpoint route not matching any configured rate limit
+     */
+    public void setDefaultBurst(final int defaultBurst)
+    {
+        this.defaultBurst = defaultBurst;
+    }
+
+    /**
+     * @param maxWait
+     *            the maximum time (in milliseconds) a call is delayed to comply with a rate limit or pause before being rejected
+     */
+    public void setMaxWait(final long maxWait)
+    {
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * @param throttlePause
+     *            the duration (in milliseconds) to pause calls after an endpoint throttled a call without specifying a
+     *            {@code Retry-After} delay
+     */
+    public void setThrottlePause(final long throttlePause)
+    {
+        this.throttlePause = throttlePause;
+    }
+
+    /**
+     * @param clusterCache
+     *            the cluster-wide cache used to share rate limits and pauses between repository servers
+     */
+    public void setClusterCache(final SimpleCache<String, Long> clusterCache)
+    {
+        this.clusterCache = clusterCache;
+    }
+
+    /**
+     * @param heartbeatInterval
+     *            the interval (in milliseconds) at which a repository server making webhook calls refreshes its membership in the group
+     *            of servers sharing the rate limits
+     */
+    public void setHeartbeatInterval(final long heartbeatInterval)
+    {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public WebhookResponse send(final WebhookRequest request)
+    {
+        ParameterCheck.mandatory("request", request);
+
+        if (!this.enabled)
+        {
+            return this.delegate.send(request);
+        }
+
+        final TokenBucket bucket = this.acquire(request);
+        try
+        {
+            return this.delegate.send(request);
+        }
+        catch (final RuntimeException ex)
+        {
+            this.onFailure(bucket, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<WebhookResponse> sendAsync(final WebhookRequest request)
+    {
+        ParameterCheck.mandatory("request", request);
+
+        final CompletableFuture<WebhookResponse> result;
+        if (!this.enabled)
+        {
+            result = this.delegate.sendAsync(request);
+        }
+        else
+        {
+            final TokenBucket bucket = this.getBucket(request);
+            final long delay;
+            try
+            {
+                delay = this.reserve(bucket, request);
+            }
+            catch (final WebhookCallRejectedException ex)
+            {
+                final CompletableFuture<WebhookResponse> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(ex);
+                return rejected;
+            }
+
+            final CompletableFuture<WebhookResponse> future;
+            if (delay > 0)
+            {
+                future = new CompletableFuture<>();
+                try
+                {
+                    // asynchronous calls are only made via non-blocking delegates, which merely start the call in the scheduler thread
+                    final ScheduledFuture<?> delayedCall = this.delayScheduler.schedule(() -> {
+                        if (!future.isDone())
+                        {
+                            final CompletableFuture<WebhookResponse> delegateFuture = this.sendDelegateAsync(request);
+                            delegateFuture.whenComplete((r, ex) -> {
+                                if (ex != null)
+                                {
+                                    future.completeExceptionally(
+                                            ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                                }
+                                else
+                                {
+                                    future.complete(r);
+                                }
+                            });
+                            future.whenComplete((r, ex) -> {
+                                if (future.isCancelled())
+                                {
+                                    delegateFuture.cancel(true);
+                                }
+                            });
+                        }
+                    }, delay, TimeUnit.NANOSECONDS);
+                    future.whenComplete((r, ex) -> {
+                        if (future.isCancelled())
+                        {
+                            delayedCall.cancel(false);
+                        }
+                    });
+                }
+                catch (final RejectedExecutionException reex)
+                {
+                    future.completeExceptionally(new WebhookCallRejectedException("Rate limiting has been shut down",
+                            TimeUnit.NANOSECONDS.toMillis(delay)));
+                }
+            }
+            else
+            {
+                future = this.sendDelegateAsync(request);
+            }
+
+            // the future itself is returned so that cancelling it aborts the (delayed) call
+            future.whenComplete((r, ex) -> {
+                if (ex != null)
+                {
+                    this.onFailure(bucket, ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                }
+            });
+            result = future;
+        }
+        return result;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isNonBlocking()
+    {
+        return this.delegate.isNonBlocking();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> listLimits()
+    {
+        final List<String> result = new ArrayList<>(this.limits.size() + 1);
+        for (final Limit limit : this.limits)
+        {
+            result.add(limit.toString());
+        }
+        if (this.defaultPermitsPerSecond > 0)
+        {
+            result.add("Default limit per route: " + this.defaultPermitsPerSecond + "/s, burst " + this.defaultBurst);
+        }
+        return result;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> listBuckets()
+    {
+        final List<String> result = new ArrayList<>(this.buckets.size());
+        for (final TokenBucket bucket : this.buckets.values())
+        {
+            result.add(bucket.toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int getClusterMemberCount()
+    {
+        return this.clusterMemberCount;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDelayedCallCount()
+    {
+        return this.delayedCallCount.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTotalDelay()
+    {
+        return this.totalDelay.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRejectedCallCount()
+    {
+        return this.rejectedCallCount.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getThrottledResponseCount()
+    {
+        return this.throttledResponseCount.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearPauses()
+    {
+        for (final TokenBucket bucket : this.buckets.values())
+        {
+            bucket.pausedUntil = 0;
+            if (this.clusterCache != null)
+            {
+                this.clusterCache.remove(PAUSE_KEY_PREFIX + bucket.key);
+            }
+        }
+    }
+
+    protected Limit loadLimit(final String limitName)
+    {
+        final String host = this.getLimitProperty(limitName, "host");
+        final String urlPattern = this.getLimitProperty(limitName, "urlPattern");
+        final String permitsPerSecond = this.getLimitProperty(limitName, "permitsPerSecond");
+        final String burst = this.getLimitProperty(limitName, "burst");
+
+        if (host == null && urlPattern == null)
+        {
+            LOGGER.warn("Webhook rate limit {} specifies neither a host nor a URL pattern - ignoring limit", limitName);
+            return null;
+        }
+        if (permitsPerSecond == null)
+        {
+            LOGGER.warn("Webhook rate limit {} does not specify the number of permits per second - ignoring limit", limitName);
+            return null;
+        }
+
+        final Limit limit;
+        try
+        {
+            final double permits = Double.parseDouble(permitsPerSecond);
+            final int burstSize = burst != null ? Integer.parseInt(burst) : (int) Math.max(1, Math.ceil(permits));
+            if (permits <= 0 || burstSize <= 0)
+            {
+                throw new IllegalStateException("Webhook rate limit " + limitName + " must specify positive values for permits and burst");
+            }
+
+            limit = new Limit(limitName, host != null ? host.toLowerCase(Locale.ENGLISH) : null,
+                    urlPattern != null ? Pattern.compile(urlPattern) : null, permits, burstSize);
+        }
+        catch (final IllegalArgumentException ex)
+        {
+            // also covers NumberFormatException and PatternSyntaxException
+            throw new IllegalStateException("Webhook rate limit " + limitName + " is invalid", ex);
+        }
+        return limit;
+    }
+
+    protected String getLimitProperty(final String limitName, final String propertyName)
+    {
+        final String value = this.globalProperties.getProperty(this.limitPropertyPrefix + limitName + "." + propertyName);
+        return value != null && !value.trim().isEmpty() ? value.trim() : null;
+    }
+
+    /**
+     * Waits until a webhook request may be made according to the rate limit and any pause applicable to it.
+     *
+     * @param request
+     *            the request to send
+     * @return the token bucket from which the request was permitted
+     * @throws WebhookCallRejectedException
+     *             if the request cannot be made within the maximum wait time
+     */
+    protected TokenBucket acquire(final WebhookRequest request)
+    {
+        final TokenBucket bucket = this.getBucket(request);
+        final long delay = this.reserve(bucket, request);
+        if (delay > 0)
+        {
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+            catch (final InterruptedException iex)
+            {
+                Thread.currentThread().interrupt();
+                throw new WebhookCallRejectedException("Interrupted while waiting for rate limit " + bucket.key,
+                        TimeUnit.NANOSECONDS.toMillis(delay));
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Reserves a token for a webhook request according to the rate limit and any pause applicable to it without waiting for it to become
+     * available.
+     *
+     * @param bucket
+     *            the token bucket applicable to the request
+     * @param request
+     *            the request to send
+     * @return the time (in nanoseconds) the request needs to be delayed
+     * @throws WebhookCallRejectedException
+     *             if the request cannot be made within the maximum wait time
+     */
+    protected long reserve(final TokenBucket bucket, final WebhookRequest request)
+    {
+        final int members = this.refreshClusterMembership();
+
+        final long nowNanos = System.nanoTime();
+        final long pauseRemaining = Math.max(0, this.getPausedUntil(bucket) - System.currentTimeMillis());
+        final long earliest = nowNanos + TimeUnit.MILLISECONDS.toNanos(pauseRemaining);
+        final long latest = nowNanos + TimeUnit.MILLISECONDS.toNanos(this.maxWait);
+
+        final long proceedAt = bucket.reserve(earliest, latest, members);
+        if (proceedAt > latest)
+        {
+            this.rejectedCallCount.incrementAndGet();
+            final long retryAfter = TimeUnit.NANOSECONDS.toMillis(proceedAt - nowNanos);
+            LOGGER.debug("Rate limit {} would delay {} by {} ms - rejecting call", bucket.key, request, retryAfter);
+            throw new WebhookCallRejectedException("Rate limit " + bucket.key + " exceeded", retryAfter);
+        }
+
+        final long delay = proceedAt - System.nanoTime();
+        if (delay > 0)
+        {
+            this.delayedCallCount.incrementAndGet();
+            this.totalDelay.addAndGet(TimeUnit.NANOSECONDS.toMillis(delay));
+            LOGGER.debug("Delaying {} by {} ms to comply with rate limit {}", request, TimeUnit.NANOSECONDS.toMillis(delay), bucket.key);
+        }
+
+        return delay;
+    }
+
+    protected CompletableFuture<WebhookResponse> sendDelegateAsync(final WebhookRequest request)
+    {
+        CompletableFuture<WebhookResponse> future;
+        try
+        {
+            future = this.delegate.sendAsync(request);
+        }
+        catch (final RuntimeException ex)
+        {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    protected void onFailure(final TokenBucket bucket, final Throwable failure)
+    {
+        if (failure instanceof WebhookCallException && ((WebhookCallException) failure).isThrottled())
+        {
+            this.throttledResponseCount.incrementAndGet();
+
+            final long retryAfter = ((WebhookCallException) failure).getRetryAfter();
+            final long pause = retryAfter != WebhookCallException.NO_RETRY_AFTER ? retryAfter : this.throttlePause;
+            if (pause > 0)
+            {
+                final long pausedUntil = System.currentTimeMillis() + pause;
+                LOGGER.info("Endpoint throttled webhook call - pausing calls for rate limit {} for {} ms", bucket.key, pause);
+
+                if (pausedUntil > bucket.pausedUntil)
+                {
+                    bucket.pausedUntil = pausedUntil;
+                }
+                if (this.clusterCache != null)
+                {
+                    final Long sharedPausedUntil = this.clusterCache.get(PAUSE_KEY_PREFIX + bucket.key);
+                    if (sharedPausedUntil == null || sharedPausedUntil.longValue() < pausedUntil)
+                    {
+                        this.clusterCache.put(PAUSE_KEY_PREFIX + bucket.key, Long.valueOf(pausedUntil));
+                    }
+                }
+            }
+        }
+    }
+
+    protected TokenBucket getBucket(final WebhookRequest request)
+    {
+        Limit matchingLimit = null;
+        for (final Limit limit : this.limits)
+        {
+            if (limit.matches(request))
+            {
+                matchingLimit = limit;
+                break;
+            }
+        }
+
+        final TokenBucket bucket;
+        if (matchingLimit != null)
+        {
+            final Limit limit = matchingLimit;
+            bucket = this.buckets.computeIfAbsent(limit.name, key -> new TokenBucket(key, limit.permitsPerSecond, limit.burst));
+        }
+        else
+        {
+            // buckets for routes without a limit still track pauses due to throttling
+            bucket = this.buckets.computeIfAbsent(request.getRoute(),
+                    key -> new TokenBucket(key, this.defaultPermitsPerSecond, this.defaultBurst));
+        }
+        return bucket;
+    }
+
+    protected long getPausedUntil(final TokenBucket bucket)
+    {
+        long pausedUntil = bucket.pausedUntil;
+        if (this.clusterCache != null)
+        {
+            final Long sharedPausedUntil = this.clusterCache.get(PAUSE_KEY_PREFIX + bucket.key);
+            if (sharedPausedUntil != null && sharedPausedUntil.longValue() > pausedUntil)
+            {
+                pausedUntil = sharedPausedUntil.longValue();
+                bucket.pausedUntil = pausedUntil;
+            }
+        }
+        return pausedUntil;
+    }
+
+    /**
+     * Refreshes the membership of this server in the group of servers sharing the rate limits, and determines the number of active
+     * members, if the heartbeat interval has elapsed since the last refresh.
+     *
+     * @return the number of active members
+     */
+    protected int refreshClusterMembership()
+    {
+        if (this.clusterCache != null && System.currentTimeMillis() - this.lastHeartbeat >= this.heartbeatInterval)
+        {
+            synchronized (this)
+            {
+                final long now = System.currentTimeMillis();
+                if (now - this.lastHeartbeat >= this.heartbeatInterval)
+                {
+                    this.clusterCache.put(MEMBER_KEY_PREFIX + this.memberId, Long.valueOf(now));
+
+                    // members which have not made any calls for some time no longer claim a share of the rate limits
+                    final long expiry = now - 3 * this.heartbeatInterval;
+                    int members = 0;
+                    for (final String key : this.clusterCache.getKeys())
+                    {
+                        if (key.startsWith(MEMBER_KEY_PREFIX))
+                        {
+                            final Long heartbeat = this.clusterCache.get(key);
+                            if (heartbeat != null && heartbeat.longValue() >= expiry)
+                            {
+                                members++;
+                            }
+                            else
+                            {
+                                this.clusterCache.remove(key);
+                            }
+                        }
+                    }
+
+                    final int memberCount = Math.max(1, members);
+                    if (memberCount != this.clusterMemberCount)
+                    {
+                        LOGGER.info("Webhook rate limits are now shared by {} repository server(s)", memberCount);
+                        this.clusterMemberCount = memberCount;
+                    }
+                    this.lastHeartbeat = now;
+                }
+            }
+        }
+        return this.clusterMemberCount;
+    }
+
+    /**
+     * Instances of this class represent a configured rate limit.
+     *
+     * @author Axel Faust
+     */
+    protected static class Limit
+    {
+
+        protected final String name;
+
+        protected final String host;
+
+        protected final Pattern urlPattern;
+
+        protected final double permitsPerSecond;
+
+        protected final int burst;
+
+        protected Limit(final String name, final String host, final Pattern urlPattern, final double permitsPerSecond, final int burst)
+        {
+            this.name = name;
+            this.host = host;
+            this.urlPattern = urlPattern;
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+
+        protected boolean matches(final WebhookRequest request)
+        {
+            boolean matches;
+            if (this.host != null)
+            {
+                final String route = request.getRoute();
+                final int hostStart = route.indexOf("://") + 3;
+                final int portStart = route.lastIndexOf(':');
+                matches = hostStart > 2 && portStart > hostStart && this.host.equals(route.substring(hostStart, portStart));
+            }
+            else
+            {
+                matches = true;
+            }
+
+            if (matches && this.urlPattern != null)
+            {
+                matches = this.urlPattern.matcher(request.getUrl()).matches();
+            }
+            return matches;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            final StringBuilder builder = new StringBuilder();
+            builder.append(this.name);
+            builder.append(": ");
+            builder.append(this.permitsPerSecond);
+            builder.append("/s, burst ");
+            builder.append(this.burst);
+            if (this.host != null)
+            {
+                builder.append(", host ");
+                builder.append(this.host);
+            }
+            if (this.urlPattern != null)
+            {
+                builder.append(", URL pattern ");
+                builder.append(this.urlPattern.pattern());
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Instances of this class track the available tokens for calls subject to the same rate limit. Calls reserve tokens in advance, so
+     * that delayed calls proceed in the order of their arrival at the configured rate.
+     *
+     * @author Axel Faust
+     */
+    protected static class TokenBucket
+    {
+
+        protected final String key;
+
+        protected final double permitsPerSecond;
+
+        protected final int burst;
+
+        protected double tokens;
+
+        protected long lastRefill;
+
+        protected volatile long pausedUntil;
+
+        protected TokenBucket(final String key, final double permitsPerSecond, final int burst)
+        {
+            this.key = key;
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+            this.tokens = burst;
+            this.lastRefill = System.nanoTime();
+        }
+
+        /**
+         * Reserves a token for a call.
+         *
+         * @param earliest
+         *            the earliest time (as per {@link System#nanoTime()}) at which the call may be made
+         * @param latest
+         *            the latest time (as per {@link System#nanoTime()}) at which the call may be made
+         * @param members
+         *            the number of servers sharing the rate limit
+         * @return the time (as per {@link System#nanoTime()}) at which the call may be made - if this is after the latest time, no token
+         *         has been reserved
+         */
+        protected synchronized long reserve(final long earliest, final long latest, final int members)
+        {
+            if (this.permitsPerSecond <= 0)
+            {
+                return earliest;
+            }
+
+            final double rate = this.permitsPerSecond / members;
+            final double capacity = Math.max(1, (double) this.burst / members);
+            final long now = System.nanoTime();
+
+            this.tokens = Math.min(capacity, this.tokens + (now - this.lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+            this.lastRefill = now;
+
+            // tokens may already be negative due to reservations of waiting calls
+            final long tokenAvailableAt = this.tokens >= 1 ? now
+                    : now + (long) Math.ceil((1 - this.tokens) * TimeUnit.SECONDS.toNanos(1) / rate);
+            final long proceedAt = Math.max(earliest, tokenAvailableAt);
+            if (proceedAt <= latest)
+            {
+                this.tokens -= 1;
+            }
+            return proceedAt;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized String toString()
+        {
+            final StringBuilder builder = new StringBuilder();
+            builder.append(this.key);
+            builder.append(": ");
+            if (this.permitsPerSecond > 0)
+            {
+                builder.append(String.format(Locale.ENGLISH, "%.2f", Double.valueOf(this.tokens)));
+                builder.append(" tokens");
+            }
+            else
+            {
+                builder.append("unlimited");
+            }
+            final long pauseRemaining = this.pausedUntil - System.currentTimeMillis();
+            if (pauseRemaining > 0)
+            {
+                builder.append(", paused for ");
+                builder.append(pauseRemaining);
+                builder.append(" ms");
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link RateLimitingWebhookTransport rate limiting webhook transport} allowing administrators to inspect the
+ * configured rate limits and lift pauses imposed by throttling endpoints.
+ *
+ * @author Axel Faust
+ */
+public interface RateLimitingWebhookTransportMBean
+{
+
+    /**
+     * Lists the configured rate limits.
+     *
+     * @return textual descriptions of the rate limits
+     */
+    List<String> listLimits();
+
+    /**
+     * Lists the token buckets of all rate limits / endpoints for which webhook calls have been made, including their current state.
+     *
+     * @return textual descriptions of the token buckets
+     */
+    List<String> listBuckets();
+
+    /**
+     * @return the number of repository servers currently sharing the configured rate limits
+     */
+    int getClusterMemberCount();
+
+    /**
+     * @return the total number of calls delayed to comply with a rate limit or pause
+     */
+    long getDelayedCallCount();
+
+    /**
+     * @return the total time (in milliseconds) calls have been delayed
+     */
+    long getTotalDelay();
+
+    /**
+     * @return the total number of calls rejected because they could not be made within the maximum wait time
+     */
+    long getRejectedCallCount();
+
+    /**
+     * @return the total number of calls throttled by the endpoint ({@code 429 Too Many Requests} / {@code 503 Service Unavailable})
+     */
+    long getThrottledResponseCount();
+
+    /**
+     * Lifts all pauses imposed due to throttling responses of endpoints on this and all other repository servers.
+     */
+    void clearPauses();
+}
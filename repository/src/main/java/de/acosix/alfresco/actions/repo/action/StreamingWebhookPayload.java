@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.alfresco.util.ParameterCheck;
+
+/**
+ * Instances of this class render a webhook payload directly into the output stream of the HTTP connection without holding the payload in
+ * memory. Since rendering typically requires access to the repository, instances may only be used within the thread and transaction in
+ * which they were created, and can only be written once. As rendering happens while the request is being sent, any resources of the
+ * transport (e.g. connection, concurrency slot) are held for the duration of rendering, and a template error surfaces as a failure of the
+ * call - the action executers therefore only use instances of this class as the source for {@link BufferedWebhookPayload buffered} and
+ * {@link ByteArrayWebhookPayload in-memory} payloads.
+ *
+ * @author Axel Faust
+ */
+public class StreamingWebhookPayload implements WebhookPayload
+{
+
+    /**
+     * Instances of this interface render the textual payload of a webhook request.
+     *
+     * @author Axel Faust
+     */
+    @FunctionalInterface
+    public static interface PayloadRenderer
+    {
+
+        /**
+         * Renders the payload.
+         *
+         * @param writer
+         *            the writer to render into
+         */
+        void render(Writer writer);
+    }
+
+    protected final PayloadRenderer renderer;
+
+    protected final Charset charset;
+
+    protected boolean written;
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param renderer
+     *            the renderer of the textual payload
+     * @param charset
+     *            the charset with which to encode the textual payload
+     */
+    public StreamingWebhookPayload(final PayloadRenderer renderer, final Charset charset)
+    {
+        ParameterCheck.mandatory("renderer", renderer);
+        ParameterCheck.mandatory("charset", charset);
+        this.renderer = renderer;
+        this.charset = charset;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(final OutputStream out) throws IOException
+    {
+        if (this.written)
+        {
+            throw new IllegalStateException("Streaming payload has already been written");
+        }
+        this.written = true;
+
+        final Writer writer = new OutputStreamWriter(out, this.charset);
+        this.renderer.render(writer);
+        writer.flush();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream openStream()
+    {
+        throw new UnsupportedOperationException("Streaming payload cannot be read");
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getContentLength()
+    {
+        return -1;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRepeatable()
+    {
+        return false;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void release()
+    {
+        // NO-OP
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.action.constraint.BaseParameterConstraint;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.model.Repository;
+import org.alfresco.repo.node.NodeServicePolicies.BeforeDeleteNodePolicy;
+import org.alfresco.repo.node.NodeServicePolicies.OnCreateNodePolicy;
+import org.alfresco.repo.node.NodeServicePolicies.OnMoveNodePolicy;
+import org.alfresco.repo.node.NodeServicePolicies.OnUpdatePropertiesPolicy;
+import org.alfresco.repo.policy.Behaviour.NotificationFrequency;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.search.SearchService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.namespace.RegexQNamePattern;
+import org.alfresco.util.EqualsHelper;
+import org.alfresco.util.PropertyCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Instances of this class provide the templates contained in a folder (and its sub-folders) as allowed values. In contrast to the default
+ * {@link org.alfresco.repo.action.constraint.FolderContentsParameterConstraint folder contents constraint}, the folder is not searched
+ * whenever the allowable values are requested - the values are kept in a (potentially cluster-wide) {@link SimpleCache cache} which is
+ * invalidated by node policies whenever templates are added to, renamed in, moved out of or deleted from the folder.
+ *
+ * @author Axel Faust
+ */
+public class TemplatesParameterConstraint extends BaseParameterConstraint implements InitializingBean, OnCreateNodePolicy,
+        OnUpdatePropertiesPolicy, OnMoveNodePolicy, BeforeDeleteNodePolicy
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TemplatesParameterConstraint.class);
+
+    private static final String TXN_KEY_INVALIDATED = TemplatesParameterConstraint.class.getName() + "-invalidated";
+
+    protected NodeService nodeService;
+
+    protected DictionaryService dictionaryService;
+
+    protected SearchService searchService;
+
+    protected NamespaceService namespaceService;
+
+    protected Repository repository;
+
+    protected PolicyComponent policyComponent;
+
+    protected SimpleCache<String, TemplateListing> listingCache;
+
+    protected String searchPath;
+
+    protected List<String> fileExtensions = Collections.emptyList();
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "nodeService", this.nodeService);
+        PropertyCheck.mandatory(this, "dictionaryService", this.dictionaryService);
+        PropertyCheck.mandatory(this, "searchService", this.searchService);
+        PropertyCheck.mandatory(this, "namespaceService", this.namespaceService);
+        PropertyCheck.mandatory(this, "repository", this.repository);
+        PropertyCheck.mandatory(this, "policyComponent", this.policyComponent);
+        PropertyCheck.mandatory(this, "listingCache", this.listingCache);
+        PropertyCheck.mandatory(this, "searchPath", this.searchPath);
+
+        this.policyComponent.bindClassBehaviour(OnCreateNodePolicy.QNAME, ContentModel.TYPE_CMOBJECT,
+                new JavaBehaviour(this, "onCreateNode", NotificationFrequency.EVERY_EVENT));
+        this.policyComponent.bindClassBehaviour(OnUpdatePropertiesPolicy.QNAME, ContentModel.TYPE_CMOBJECT,
+                new JavaBehaviour(this, "onUpdateProperties", NotificationFrequency.EVERY_EVENT));
+        this.policyComponent.bindClassBehaviour(OnMoveNodePolicy.QNAME, ContentModel.TYPE_CMOBJECT,
+                new JavaBehaviour(this, "onMoveNode", NotificationFrequency.EVERY_EVENT));
+        this.policyComponent.bindClassBehaviour(BeforeDeleteNodePolicy.QNAME, ContentModel.TYPE_CMOBJECT,
+                new JavaBehaviour(this, "beforeDeleteNode", NotificationFrequency.EVERY_EVENT));
+    }
+
+    /**
+     * @param nodeService
+     *            the nodeService to set
+     */
+    public void setNodeService(final NodeService nodeService)
+    {
+        this.nodeService = nodeService;
+    }
+
+    /**
+     * @param dictionaryService
+     *            the dictionaryService to set
+     */
+    public void setDictionaryService(final DictionaryService dictionaryService)
+    {
+        this.dictionaryService = dictionaryService;
+    }
+
+    /**
+     * @param searchService
+     *            the searchService to set
+     */
+    public void setSearchService(final SearchService searchService)
+    {
+        this.searchService = searchService;
+    }
+
+    /**
+     * @param namespaceService
+     *            the namespaceService to set
+     */
+    public void setNamespaceService(final NamespaceService namespaceService)
+    {
+        this.namespaceService = namespaceService;
+    }
+
+    /**
+     * @param repository
+     *            the repository to set
+     */
+    public void setRepository(final Repository repository)
+    {
+        this.repository = repository;
+    }
+
+    /**
+     * @param policyComponent
+     *            the policyComponent to set
+     */
+    public void setPolicyComponent(final PolicyComponent policyComponent)
+    {
+        this.policyComponent = policyComponent;
+    }
+
+    /**
+     * @param listingCache
+     *            the listingCache to set
+     */
+    public void setListingCache(final SimpleCache<String, TemplateListing> listingCache)
+    {
+        this.listingCache = listingCache;
+    }
+
+    /**
+     * @param searchPath
+     *            the XPath of the folder containing the templates
+     */
+    public void setSearchPath(final String searchPath)
+    {
+        this.searchPath = searchPath;
+    }
+
+    /**
+     * @param fileExtensions
+     *            the file extensions of templates to include - an empty list includes all content
+     */
+    public void setFileExtensions(final List<String> fileExtensions)
+    {
+        this.fileExtensions = fileExtensions != null ? fileExtensions : Collections.<String> emptyList();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, String> getAllowableValues()
+    {
+        // the base class would keep the first result for good
+        return this.getAllowableValuesImpl();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCreateNode(final ChildAssociationRef childAssocRef)
+    {
+        this.invalidateIfListed(childAssocRef.getParentRef());
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void onUpdateProperties(final NodeRef nodeRef, final Map<QName, Serializable> before, final Map<QName, Serializable> after)
+    {
+        if (!EqualsHelper.nullSafeEquals(before.get(ContentModel.PROP_NAME), after.get(ContentModel.PROP_NAME))
+                && this.listingCache.get(this.getName()) != null)
+        {
+            this.invalidateIfListed(this.nodeService.getPrimaryParent(nodeRef).getParentRef());
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void onMoveNode(final ChildAssociationRef oldChildAssocRef, final ChildAssociationRef newChildAssocRef)
+    {
+        this.invalidateIfListed(oldChildAssocRef.getParentRef());
+        this.invalidateIfListed(newChildAssocRef.getParentRef());
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeDeleteNode(final NodeRef nodeRef)
+    {
+        if (this.listingCache.get(this.getName()) != null)
+        {
+            this.invalidateIfListed(this.nodeService.getPrimaryParent(nodeRef).getParentRef());
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected Map<String, String> getAllowableValuesImpl()
+    {
+        final String cacheKey = this.getName();
+        TemplateListing listing = this.listingCache.get(cacheKey);
+        if (listing == null)
+        {
+            // listing is shared by all users, so must not depend on the permissions of the first user to request it
+            listing = AuthenticationUtil.runAsSystem(this::loadListing);
+            if (listing != null)
+            {
+                this.listingCache.put(cacheKey, listing);
+            }
+        }
+        return listing != null ? listing.getValues() : Collections.<String, String> emptyMap();
+    }
+
+    protected TemplateListing loadListing()
+    {
+        final NodeRef rootNode = this.nodeService.getRootNode(this.repository.getCompanyHome().getStoreRef());
+        final List<NodeRef> folders = this.searchService.selectNodes(rootNode, this.searchPath, null, this.namespaceService, false);
+
+        TemplateListing listing = null;
+        if (!folders.isEmpty())
+        {
+            LOGGER.debug("Loading templates from {}", this.searchPath);
+            final Map<String, String> values = new LinkedHashMap<>();
+            final Set<NodeRef> listedFolders = new HashSet<>();
+            this.collectTemplates(folders.get(0), values, listedFolders);
+            listing = new TemplateListing(values, listedFolders);
+        }
+        else
+        {
+            // folder may yet be bootstrapped, so don't cache
+            LOGGER.debug("Template folder {} does not exist", this.searchPath);
+        }
+        return listing;
+    }
+
+    protected void collectTemplates(final NodeRef folder, final Map<String, String> values, final Set<NodeRef> listedFolders)
+    {
+        listedFolders.add(folder);
+
+        final List<ChildAssociationRef> childAssocs = this.nodeService.getChildAssocs(folder, ContentModel.ASSOC_CONTAINS,
+                RegexQNamePattern.MATCH_ALL);
+        final List<NodeRef> subFolders = new ArrayList<>();
+        for (final ChildAssociationRef childAssoc : childAssocs)
+        {
+            final NodeRef child = childAssoc.getChildRef();
+            final QName type = this.nodeService.getType(child);
+            if (this.dictionaryService.isSubClass(type, ContentModel.TYPE_FOLDER))
+            {
+                subFolders.add(child);
+            }
+            else if (this.dictionaryService.isSubClass(type, ContentModel.TYPE_CONTENT))
+            {
+                final String name = (String) this.nodeService.getProperty(child, ContentModel.PROP_NAME);
+                if (this.isIncluded(name))
+                {
+                    values.put(child.toString(), name);
+                }
+            }
+        }
+
+        for (final NodeRef subFolder : subFolders)
+        {
+            this.collectTemplates(subFolder, values, listedFolders);
+        }
+    }
+
+    protected boolean isIncluded(final String name)
+    {
+        boolean included = this.fileExtensions.isEmpty();
+        final int extensionStart = name.lastIndexOf('.');
+        if (!included && extensionStart != -1)
+        {
+            final String extension = name.substring(extensionStart + 1).toLowerCase(Locale.ENGLISH);
+            for (final String fileExtension : this.fileExtensions)
+            {
+                included = included || fileExtension.equalsIgnoreCase(extension);
+            }
+        }
+        return included;
+    }
+
+    protected void invalidateIfListed(final NodeRef folder)
+    {
+        final String cacheKey = this.getName();
+        final TemplateListing listing = this.listingCache.get(cacheKey);
+        if (listing != null && listing.getFolders().contains(folder))
+        {
+            LOGGER.debug("Invalidating cached templates from {} due to change in {}", this.searchPath, folder);
+            this.listingCache.remove(cacheKey);
+
+            // another thread may reload the listing before the change is committed, so invalidate again afterwards
+            if (TransactionalResourceHelper.incrementCount(TXN_KEY_INVALIDATED + cacheKey) == 1)
+            {
+                AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                {
+
+                    /**
+                     *
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    public void afterCommit()
+                    {
+                        TemplatesParameterConstraint.this.listingCache.remove(cacheKey);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Instances of this class hold the templates loaded for a constraint and the folders from which they were loaded.
+     *
+     * @author Axel Faust
+     */
+    public static class TemplateListing implements Serializable
+    {
+
+        private static final long serialVersionUID = -4437164373580226358L;
+
+        protected final Map<String, String> values;
+
+        protected final Set<NodeRef> folders;
+
+        protected TemplateListing(final Map<String, String> values, final Set<NodeRef> folders)
+        {
+            this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+            this.folders = Collections.unmodifiableSet(new HashSet<>(folders));
+        }
+
+        /**
+         * @return the template node references mapped to their names
+         */
+        public Map<String, String> getValues()
+        {
+            return this.values;
+        }
+
+        /**
+         * @return the folders from which the templates were loaded
+         */
+        public Set<NodeRef> getFolders()
+        {
+            return this.folders;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.repo.action.ActionModel;
+import org.alfresco.repo.node.NodeServicePolicies.BeforeDeleteNodePolicy;
+import org.alfresco.repo.node.NodeServicePolicies.OnCreateNodePolicy;
+import org.alfresco.repo.node.NodeServicePolicies.OnUpdatePropertiesPolicy;
+import org.alfresco.repo.policy.Behaviour.NotificationFrequency;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.namespace.RegexQNamePattern;
+import org.alfresco.util.PropertyCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Instances of this class validate the parameters of webhook call actions when they are saved, e.g. as part of a rule, so that invalid
+ * configurations are rejected when an administrator saves them instead of failing whenever the action is executed. Validation is performed
+ * at the end of the transaction in which the action or any of its parameters have been created / updated, as actions are persisted in
+ * multiple steps. Any cached {@link WebhookCallActionExecuter#invalidatePlan(String) plans} of changed or deleted actions are discarded.
+ *
+ * @author Axel Faust
+ */
+public class WebhookActionValidator implements InitializingBean, OnCreateNodePolicy, OnUpdatePropertiesPolicy, BeforeDeleteNodePolicy
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebhookActionValidator.class);
+
+    private static final String TXN_KEY_CHANGED_ACTIONS = WebhookActionValidator.class.getName() + "-changedActions";
+
+    protected PolicyComponent policyComponent;
+
+    protected NodeService nodeService;
+
+    protected WebhookCallActionExecuter webhookCallActionExecuter;
+
+    protected boolean enabled = true;
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "policyComponent", this.policyComponent);
+        PropertyCheck.mandatory(this, "nodeService", this.nodeService);
+        PropertyCheck.mandatory(this, "webhookCallActionExecuter", this.webhookCallActionExecuter);
+
+        for (final QName type : new QName[] { ActionModel.TYPE_ACTION, ActionModel.TYPE_ACTION_PARAMETER })
+        {
+            this.policyComponent.bindClassBehaviour(OnCreateNodePolicy.QNAME, type,
+                    new JavaBehaviour(this, "onCreateNode", NotificationFrequency.EVERY_EVENT));
+            this.policyComponent.bindClassBehaviour(OnUpdatePropertiesPolicy.QNAME, type,
+                    new JavaBehaviour(this, "onUpdateProperties", NotificationFrequency.EVERY_EVENT));
+        }
+        this.policyComponent.bindClassBehaviour(BeforeDeleteNodePolicy.QNAME, ActionModel.TYPE_ACTION,
+                new JavaBehaviour(this, "beforeDeleteNode", NotificationFrequency.EVERY_EVENT));
+    }
+
+    /**
+     * @param policyComponent
+     *            the policyComponent to set
+     */
+    public void setPolicyComponent(final PolicyComponent policyComponent)
+    {
+        this.policyComponent = policyComponent;
+    }
+
+    /**
+     * @param nodeService
+     *            the nodeService to set
+     */
+    public void setNodeService(final NodeService nodeService)
+    {
+        this.nodeService = nodeService;
+    }
+
+    /**
+     * @param webhookCallActionExecuter
+     *            the webhookCallActionExecuter to set
+     */
+    public void setWebhookCallActionExecuter(final WebhookCallActionExecuter webhookCallActionExecuter)
+    {
+        this.webhookCallActionExecuter = webhookCallActionExecuter;
+    }
+
+    /**
+     * @param enabled
+     *            {@code true} if saved actions should be validated, {@code false} if only cached plans should be discarded
+     */
+    public void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCreateNode(final ChildAssociationRef childAssocRef)
+    {
+        final NodeRef nodeRef = childAssocRef.getChildRef();
+        if (ActionModel.TYPE_ACTION_PARAMETER.equals(this.nodeService.getType(nodeRef)))
+        {
+            this.registerChangedAction(childAssocRef.getParentRef());
+        }
+        else
+        {
+            this.registerChangedAction(nodeRef);
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void onUpdateProperties(final NodeRef nodeRef, final Map<QName, Serializable> before, final Map<QName, Serializable> after)
+    {
+        if (ActionModel.TYPE_ACTION_PARAMETER.equals(this.nodeService.getType(nodeRef)))
+        {
+            this.registerChangedAction(this.nodeService.getPrimaryParent(nodeRef).getParentRef());
+        }
+        else
+        {
+            this.registerChangedAction(nodeRef);
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeDeleteNode(final NodeRef nodeRef)
+    {
+        // actions are persisted with their ID as the node UUID
+        this.webhookCallActionExecuter.invalidatePlan(nodeRef.getId());
+    }
+
+    protected void registerChangedAction(final NodeRef actionNode)
+    {
+        final Set<NodeRef> changedActions = TransactionalResourceHelper.getSet(TXN_KEY_CHANGED_ACTIONS);
+        if (TransactionalResourceHelper.incrementCount(TXN_KEY_CHANGED_ACTIONS) == 1)
+        {
+            AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+            {
+
+                /**
+                 *
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void beforeCommit(final boolean readOnly)
+                {
+                    for (final NodeRef changedAction : changedActions)
+                    {
+                        WebhookActionValidator.this.validateAction(changedAction);
+                    }
+                }
+            });
+        }
+        changedActions.add(actionNode);
+    }
+
+    protected void validateAction(final NodeRef actionNode)
+    {
+        // validator may be used with any variant of the webhook call action
+        final String actionName = this.webhookCallActionExecuter.getActionDefinition().getName();
+        if (this.nodeService.exists(actionNode)
+                && actionName.equals(this.nodeService.getProperty(actionNode, ActionModel.PROP_DEFINITION_NAME)))
+        {
+            this.webhookCallActionExecuter.invalidatePlan(actionNode.getId());
+
+            if (this.enabled)
+            {
+                final Map<String, Serializable> parameterValues = new HashMap<>();
+                for (final ChildAssociationRef parameterAssoc : this.nodeService.getChildAssocs(actionNode, ActionModel.ASSOC_PARAMETERS,
+                        RegexQNamePattern.MATCH_ALL))
+                {
+                    final NodeRef parameter = parameterAssoc.getChildRef();
+                    final String name = (String) this.nodeService.getProperty(parameter, ActionModel.PROP_PARAMETER_NAME);
+                    parameterValues.put(name, this.nodeService.getProperty(parameter, ActionModel.PROP_PARAMETER_VALUE));
+                }
+
+                LOGGER.debug("Validating parameters {} of saved webhook call action {}", parameterValues, actionNode);
+                try
+                {
+                    this.webhookCallActionExecuter.validateParameters(parameterValues);
+                }
+                catch (final RuntimeException ex)
+                {
+                    throw new IllegalArgumentException("Invalid " + actionName + " action: " + ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.ParameterCheck;
+
+/**
+ * Instances of this class represent the persisted state of a {@link WebhookBackfillService backfill} of webhook calls for a set of existing
+ * nodes, including the checkpoint from which an interrupted or stopped backfill can be resumed.
+ *
+ * @author Axel Faust
+ */
+public class WebhookBackfill implements Serializable
+{
+
+    /**
+     * The states of a backfill.
+     *
+     * @author Axel Faust
+     */
+    public static enum Status
+    {
+        /**
+         * The backfill is currently being processed.
+         */
+        RUNNING,
+        /**
+         * The backfill has been stopped (or interrupted by a shutdown) and can be resumed.
+         */
+        STOPPED,
+        /**
+         * The backfill has processed all nodes matching its query.
+         */
+        COMPLETED,
+        /**
+         * The backfill has been aborted due to an error and can be resumed.
+         */
+        FAILED;
+    }
+
+    private static final long serialVersionUID = 5185429335722432870L;
+
+    protected final String id;
+
+    protected final String query;
+
+    protected final NodeRef rule;
+
+    protected final String runAsUser;
+
+    protected final long createdAt;
+
+    protected Status status = Status.STOPPED;
+
+    protected long checkpoint;
+
+    protected long estimatedTotal = -1;
+
+    protected long processed;
+
+    protected long failed;
+
+    protected long processingTime;
+
+    protected String lastError;
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param id
+     *            the unique ID of the backfill
+     * @param query
+     *            the FTS query selecting the nodes to process
+     * @param rule
+     *            the rule for which to execute the webhook call actions
+     * @param runAsUser
+     *            the user as which to process the nodes
+     * @param createdAt
+     *            the creation timestamp of the backfill
+     */
+    public WebhookBackfill(final String id, final String query, final NodeRef rule, final String runAsUser, final long createdAt)
+    {
+        ParameterCheck.mandatoryString("id", id);
+        ParameterCheck.mandatoryString("query", query);
+        ParameterCheck.mandatory("rule", rule);
+        ParameterCheck.mandatoryString("runAsUser", runAsUser);
+
+        this.id = id;
+        this.query = query;
+        this.rule = rule;
+        this.runAsUser = runAsUser;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * @return the id
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * @return the FTS query selecting the nodes to process
+     */
+    public String getQuery()
+    {
+        return this.query;
+    }
+
+    /**
+     * @return the rule for which to execute the webhook call actions
+     */
+    public NodeRef getRule()
+    {
+        return this.rule;
+    }
+
+    /**
+     * @return the user as which to process the nodes
+     */
+    public String getRunAsUser()
+    {
+        return this.runAsUser;
+    }
+
+    /**
+     * @return the creation timestamp of the backfill
+     */
+    public long getCreatedAt()
+    {
+        return this.createdAt;
+    }
+
+    /**
+     * @return the status
+     */
+    public Status getStatus()
+    {
+        return this.status;
+    }
+
+    /**
+     * @return the database ID of the node from which (inclusively) processing continues when the backfill is resumed
+     */
+    public long getCheckpoint()
+    {
+        return this.checkpoint;
+    }
+
+    /**
+     * @return the estimated total number of nodes to process, or {@code -1} if not yet known
+     */
+    public long getEstimatedTotal()
+    {
+        return this.estimatedTotal;
+    }
+
+    /**
+     * @return the number of processed nodes
+     */
+    public long getProcessed()
+    {
+        return this.processed;
+    }
+
+    /**
+     * @return the number of nodes for which processing failed
+     */
+    public long getFailed()
+    {
+        return this.failed;
+    }
+
+    /**
+     * @return the accumulated processing time (in milliseconds) of all runs of the backfill
+     */
+    public long getProcessingTime()
+    {
+        return this.processingTime;
+    }
+
+    /**
+     * @return the last error
+     */
+    public String getLastError()
+    {
+        return this.lastError;
+    }
+
+    /**
+     * Calculates the average throughput of the backfill.
+     *
+     * @return the number of processed nodes per second
+     */
+    public double getThroughput()
+    {
+        return this.processingTime > 0 ? this.processed * 1000d / this.processingTime : 0;
+    }
+
+    /**
+     * Updates the progress of this backfill.
+     *
+     * @param status
+     *            the current status
+     * @param checkpoint
+     *            the database ID of the node from which processing continues when the backfill is resumed
+     * @param processed
+     *            the total number of processed nodes
+     * @param failed
+     *            the total number of nodes for which processing failed
+     * @param processingTime
+     *            the accumulated processing time (in milliseconds)
+     * @param lastError
+     *            the last error - {@code null} retains any previously recorded error
+     */
+    public void updateProgress(final Status status, final long checkpoint, final long processed, final long failed,
+            final long processingTime, final String lastError)
+    {
+        ParameterCheck.mandatory("status", status);
+
+        this.status = status;
+        this.checkpoint = checkpoint;
+        this.processed = processed;
+        this.failed = failed;
+        this.processingTime = processingTime;
+        if (lastError != null)
+        {
+            this.lastError = lastError;
+        }
+    }
+
+    /**
+     * @param estimatedTotal
+     *            the estimated total number of nodes to process
+     */
+    public void setEstimatedTotal(final long estimatedTotal)
+    {
+        this.estimatedTotal = estimatedTotal;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("WebhookBackfill [");
+        builder.append("id=");
+        builder.append(this.id);
+        builder.append(", status=");
+        builder.append(this.status);
+        builder.append(", query=");
+        builder.append(this.query);
+        builder.append(", rule=");
+        builder.append(this.rule);
+        builder.append(", runAsUser=");
+        builder.append(this.runAsUser);
+        builder.append(", createdAt=");
+        builder.append(this.createdAt);
+        builder.append(", checkpoint=");
+        builder.append(this.checkpoint);
+        builder.append(", processed=");
+        builder.append(this.processed);
+        builder.append(", failed=");
+        builder.append(this.failed);
+        builder.append(", estimatedTotal=");
+        builder.append(this.estimatedTotal);
+        builder.append(", throughput=");
+        builder.append(String.format(Locale.ENGLISH, "%.1f/s", Double.valueOf(this.getThroughput())));
+        builder.append(", lastError=");
+        builder.append(this.lastError);
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,909 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.batch.BatchProcessWorkProvider;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.cmr.action.Action;
+import org.alfresco.service.cmr.action.ActionService;
+import org.alfresco.service.cmr.action.CompositeAction;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.rule.Rule;
+import org.alfresco.service.cmr.rule.RuleService;
+import org.alfresco.service.cmr.search.QueryConsistency;
+import org.alfresco.service.cmr.search.ResultSet;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.cmr.search.SearchService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.LogFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+
+/**
+ * Instances of this class send webhook calls for large sets of existing nodes, e.g. when a new downstream system needs to be provided with
+ * the current state of the repository. A backfill executes the webhook call actions of an existing rule (subject to the conditions of the
+ * rule) for all nodes matching an FTS query or contained in a folder tree, so that the same configuration used for ongoing changes
+ * applies.
+ *
+ * Nodes are retrieved page by page in the order of their database ID (keyset pagination), so that memory usage does not depend on the
+ * number of matching nodes and a query never needs to skip over previously processed results. Pages are processed via a
+ * {@link BatchProcessor batch processor} with a bounded number of worker threads, each batch in its own transaction. The checkpoint of a
+ * backfill is the start of the oldest page which has not been fully processed, and is persisted regularly so that a stopped or interrupted
+ * backfill can be resumed. Nodes which failed to be processed count as processed for the checkpoint and are not retried on resume. Nodes
+ * of partially processed pages may be processed again when a backfill is resumed.
+ *
+ * Only a single backfill can run in the cluster at any time. Since queries rely on the search index, nodes which have not yet been indexed
+ * when their page is retrieved are not included.
+ *
+ * @author Axel Faust
+ */
+public class WebhookBackfillService implements InitializingBean, DisposableBean, ApplicationEventPublisherAware, WebhookBackfillServiceMBean
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebhookBackfillService.class);
+
+    private static final String BACKFILL_KEY = WebhookCallActionExecuter.NAME + ".backfill";
+
+    private static final QName LOCK_QNAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, BACKFILL_KEY);
+
+    private static final String TXN_KEY_RULE_ACTION = WebhookBackfillService.class.getName() + "-ruleAction";
+
+    private static final String TXN_KEY_ITEMS = WebhookBackfillService.class.getName() + "-items";
+
+    private static final String DBID_FIELD = "@sys\\:node\\-dbid";
+
+    protected TransactionService transactionService;
+
+    protected AttributeService attributeService;
+
+    protected JobLockService jobLockService;
+
+    protected SearchService searchService;
+
+    protected NodeService nodeService;
+
+    protected RuleService ruleService;
+
+    protected ActionService actionService;
+
+    protected ApplicationEventPublisher applicationEventPublisher;
+
+    protected int workerThreads = 4;
+
+    protected int batchSize = 20;
+
+    protected int pageSize = 1000;
+
+    protected int loggingInterval = 1000;
+
+    protected long lockTimeToLive = 300000;
+
+    protected ExecutorService executor;
+
+    protected volatile BackfillRun activeRun;
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "transactionService", this.transactionService);
+        PropertyCheck.mandatory(this, "attributeService", this.attributeService);
+        PropertyCheck.mandatory(this, "jobLockService", this.jobLockService);
+        PropertyCheck.mandatory(this, "searchService", this.searchService);
+        PropertyCheck.mandatory(this, "nodeService", this.nodeService);
+        PropertyCheck.mandatory(this, "ruleService", this.ruleService);
+        PropertyCheck.mandatory(this, "actionService", this.actionService);
+        PropertyCheck.mandatory(this, "applicationEventPublisher", this.applicationEventPublisher);
+
+        if (this.workerThreads <= 0)
+        {
+            throw new IllegalStateException("workerThreads must be a positive integer");
+        }
+        if (this.batchSize <= 0)
+        {
+            throw new IllegalStateException("batchSize must be a positive integer");
+        }
+        if (this.pageSize <= 0)
+        {
+            throw new IllegalStateException("pageSize must be a positive integer");
+        }
+
+        final TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix(BACKFILL_KEY);
+        this.executor = Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() throws InterruptedException
+    {
+        final BackfillRun run = this.activeRun;
+        if (run != null)
+        {
+            LOGGER.info("Stopping backfill {} due to shutdown", run.backfill.getId());
+            run.stopRequested = true;
+        }
+        this.executor.shutdown();
+        this.executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param transactionService
+     *            the transactionService to set
+     */
+    public void setTransactionService(final TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param attributeService
+     *            the attributeService to set
+     */
+    public void setAttributeService(final AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param jobLockService
+     *            the jobLockService to set
+     */
+    public void setJobLockService(final JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+
+    /**
+     * @param searchService
+     *            the searchService to set
+     */
+    public void setSearchService(final SearchService searchService)
+    {
+        this.searchService = searchService;
+    }
+
+    /**
+     * @param nodeService
+     *            the nodeService to set
+     */
+    public void setNodeService(final NodeService nodeService)
+    {
+        this.nodeService = nodeService;
+    }
+
+    /**
+     * @param ruleService
+     *            the ruleService to set
+     */
+    public void setRuleService(final RuleService ruleService)
+    {
+        this.ruleService = ruleService;
+    }
+
+    /**
+     * @param actionService
+     *            the actionService to set
+     */
+    public void setActionService(final ActionService actionService)
+    {
+        this.actionService = actionService;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void setApplicationEventPublisher(final ApplicationEventPublisher applicationEventPublisher)
+    {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    /**
+     * @param workerThreads
+     *            the number of threads processing batches of nodes concurrently
+     */
+    public void setWorkerThreads(final int workerThreads)
+    {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * @param batchSize
+     *            the number of nodes processed in a single transaction
+     */
+    public void setBatchSize(final int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param pageSize
+     *            the number of nodes retrieved with a single query
+     */
+    public void setPageSize(final int pageSize)
+    {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @param loggingInterval
+     *            the number of processed nodes after which progress is logged
+     */
+    public void setLoggingInterval(final int loggingInterval)
+    {
+        this.loggingInterval = loggingInterval;
+    }
+
+    /**
+     * @param lockTimeToLive
+     *            the time to live (in milliseconds) of the cluster-wide lock held while a backfill is running
+     */
+    public void setLockTimeToLive(final long lockTimeToLive)
+    {
+        this.lockTimeToLive = lockTimeToLive;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public String startQueryBackfill(final String query, final String rule)
+    {
+        ParameterCheck.mandatoryString("query", query);
+        ParameterCheck.mandatoryString("rule", rule);
+
+        return this.start("(" + query + ")", new NodeRef(rule));
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public String startFolderBackfill(final String folder, final String rule)
+    {
+        ParameterCheck.mandatoryString("folder", folder);
+        ParameterCheck.mandatoryString("rule", rule);
+
+        final NodeRef folderRef = new NodeRef(folder);
+        final String runAsUser = this.determineRunAsUser();
+        final boolean exists = AuthenticationUtil.runAs(() -> this.doInTransaction(() -> this.nodeService.exists(folderRef), true),
+                runAsUser);
+        if (!exists)
+        {
+            throw new IllegalArgumentException("Folder " + folder + " does not exist");
+        }
+
+        return this.start("ANCESTOR:\"" + folderRef + "\"", new NodeRef(rule));
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean resumeBackfill(final String id)
+    {
+        ParameterCheck.mandatoryString("id", id);
+
+        final WebhookBackfill backfill = this.doInTransaction(() -> (WebhookBackfill) this.attributeService.getAttribute(BACKFILL_KEY, id),
+                true);
+        final boolean resumable = backfill != null && backfill.getStatus() != WebhookBackfill.Status.COMPLETED;
+        if (resumable)
+        {
+            LOGGER.info("Resuming {}", backfill);
+            this.run(backfill);
+        }
+        return resumable;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean stopBackfill()
+    {
+        final BackfillRun run = this.activeRun;
+        if (run != null)
+        {
+            LOGGER.info("Stopping backfill {}", run.backfill.getId());
+            run.stopRequested = true;
+        }
+        return run != null;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public String getRunningBackfill()
+    {
+        final BackfillRun run = this.activeRun;
+        return run != null ? run.describeProgress() : null;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> listBackfills()
+    {
+        final List<String> result = new ArrayList<>();
+        this.doInTransaction(() -> {
+            this.attributeService.getAttributes((id, value, keys) -> {
+                if (value instanceof WebhookBackfill)
+                {
+                    result.add(value.toString());
+                }
+                return true;
+            }, BACKFILL_KEY);
+            return null;
+        }, true);
+        return result;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean purgeBackfill(final String id)
+    {
+        ParameterCheck.mandatoryString("id", id);
+
+        final BackfillRun run = this.activeRun;
+        if (run != null && run.backfill.getId().equals(id))
+        {
+            throw new IllegalStateException("Backfill " + id + " is currently running");
+        }
+
+        return this.doInTransaction(() -> {
+            final boolean exists = this.attributeService.exists(BACKFILL_KEY, id);
+            if (exists)
+            {
+                this.attributeService.removeAttribute(BACKFILL_KEY, id);
+            }
+            return exists;
+        }, false);
+    }
+
+    protected String start(final String query, final NodeRef rule)
+    {
+        final String runAsUser = this.determineRunAsUser();
+        AuthenticationUtil.runAs(() -> this.doInTransaction(() -> {
+            // fail early instead of in the background
+            this.loadWebhookAction(rule);
+            return null;
+        }, true), runAsUser);
+
+        final WebhookBackfill backfill = new WebhookBackfill(UUID.randomUUID().toString(), query, rule, runAsUser,
+                System.currentTimeMillis());
+        LOGGER.info("Starting {}", backfill);
+        this.run(backfill);
+        return backfill.getId();
+    }
+
+    protected void run(final WebhookBackfill backfill)
+    {
+        final String lockToken;
+        try
+        {
+            lockToken = this.jobLockService.getLock(LOCK_QNAME, this.lockTimeToLive);
+        }
+        catch (final LockAcquisitionException laex)
+        {
+            throw new IllegalStateException("Another backfill is already running", laex);
+        }
+
+        final BackfillRun run;
+        synchronized (this)
+        {
+            if (this.activeRun != null)
+            {
+                this.jobLockService.releaseLock(lockToken, LOCK_QNAME);
+                throw new IllegalStateException("Another backfill is already running");
+            }
+            run = new BackfillRun(backfill, lockToken);
+            this.activeRun = run;
+        }
+
+        try
+        {
+            this.persist(backfill, WebhookBackfill.Status.RUNNING, run);
+            this.executor.submit(() -> AuthenticationUtil.runAs(() -> {
+                run.execute();
+                return null;
+            }, backfill.getRunAsUser()));
+        }
+        catch (final RuntimeException ex)
+        {
+            this.activeRun = null;
+            this.jobLockService.releaseLock(lockToken, LOCK_QNAME);
+            throw ex;
+        }
+    }
+
+    protected String determineRunAsUser()
+    {
+        final String user = AuthenticationUtil.getFullyAuthenticatedUser();
+        // JMX operations are not authenticated
+        return user != null ? user : AuthenticationUtil.getSystemUserName();
+    }
+
+    protected Action loadWebhookAction(final NodeRef ruleRef)
+    {
+        final Rule rule = this.ruleService.getRule(ruleRef);
+        if (rule == null)
+        {
+            throw new IllegalArgumentException("Rule " + ruleRef + " does not exist");
+        }
+
+        final Action action = rule.getAction();
+        if (!this.containsWebhookAction(action))
+        {
+            throw new IllegalArgumentException("Rule " + ruleRef + " does not contain any webhook call actions");
+        }
+        return action;
+    }
+
+    protected boolean containsWebhookAction(final Action action)
+    {
+        boolean contained = WebhookCallActionExecuter.NAME.equals(action.getActionDefinitionName());
+        if (!contained && action instanceof CompositeAction)
+        {
+            for (final Action subAction : ((CompositeAction) action).getActions())
+            {
+                contained = contained || this.containsWebhookAction(subAction);
+            }
+        }
+        return contained;
+    }
+
+    protected void executeWebhookActions(final Action action, final NodeRef node)
+    {
+        if (WebhookCallActionExecuter.NAME.equals(action.getActionDefinitionName()))
+        {
+            this.actionService.executeAction(action, node, true, false);
+        }
+        else if (action instanceof CompositeAction && this.actionService.evaluateAction(action, node))
+        {
+            // any other actions of the rule are not executed
+            for (final Action subAction : ((CompositeAction) action).getActions())
+            {
+                this.executeWebhookActions(subAction, node);
+            }
+        }
+    }
+
+    protected void persist(final WebhookBackfill backfill, final WebhookBackfill.Status status, final BackfillRun run)
+    {
+        backfill.updateProgress(status, run.getCheckpoint(), run.processed.get(), run.failed.get(), run.getProcessingTime(),
+                run.lastError);
+        this.doInTransaction(() -> {
+            this.attributeService.setAttribute(backfill, BACKFILL_KEY, backfill.getId());
+            return null;
+        }, false);
+    }
+
+    protected <R> R doInTransaction(final RetryingTransactionHelper.RetryingTransactionCallback<R> callback, final boolean readOnly)
+    {
+        return this.transactionService.getRetryingTransactionHelper().doInTransaction(callback, readOnly, true);
+    }
+
+    /**
+     * Instances of this class represent a node to be processed by a backfill.
+     *
+     * @author Axel Faust
+     */
+    protected static class BackfillItem
+    {
+
+        protected final long dbId;
+
+        protected final NodeRef nodeRef;
+
+        protected final long pageStart;
+
+        protected BackfillItem(final long dbId, final NodeRef nodeRef, final long pageStart)
+        {
+            this.dbId = dbId;
+            this.nodeRef = nodeRef;
+            this.pageStart = pageStart;
+        }
+    }
+
+    /**
+     * Instances of this class track the items of a page which have not yet been processed by a backfill, as well as the items of the page
+     * which failed and may still succeed when retried individually by the batch processor.
+     *
+     * @author Axel Faust
+     */
+    protected static class PendingPage
+    {
+
+        protected final AtomicInteger remaining;
+
+        protected final Set<Long> failedItems = ConcurrentHashMap.newKeySet();
+
+        protected PendingPage(final int size)
+        {
+            this.remaining = new AtomicInteger(size);
+        }
+    }
+
+    /**
+     * Instances of this class represent a single run of a backfill on this server, providing the pages of nodes to the batch processor and
+     * tracking the completion of pages to determine the checkpoint.
+     *
+     * @author Axel Faust
+     */
+    protected class BackfillRun implements BatchProcessWorkProvider<BackfillItem>
+    {
+
+        protected final WebhookBackfill backfill;
+
+        protected final String lockToken;
+
+        protected final long initialProcessingTime;
+
+        protected final long startedAt = System.currentTimeMillis();
+
+        protected final ConcurrentNavigableMap<Long, PendingPage> pendingPages = new ConcurrentSkipListMap<>();
+
+        protected final AtomicLong processed;
+
+        protected final AtomicLong failed;
+
+        protected volatile long nextPageStart;
+
+        protected volatile String lastError;
+
+        protected volatile boolean stopRequested;
+
+        protected BackfillRun(final WebhookBackfill backfill, final String lockToken)
+        {
+            this.backfill = backfill;
+            this.lockToken = lockToken;
+            this.initialProcessingTime = backfill.getProcessingTime();
+            this.processed = new AtomicLong(backfill.getProcessed());
+            this.failed = new AtomicLong(backfill.getFailed());
+            this.nextPageStart = backfill.getCheckpoint();
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public int getTotalEstimatedWorkSize()
+        {
+            final long estimatedTotal = this.backfill.getEstimatedTotal();
+            return estimatedTotal >= 0 ? (int) Math.min(Integer.MAX_VALUE, estimatedTotal) : -1;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public Collection<BackfillItem> getNextWork()
+        {
+            if (this.stopRequested)
+            {
+                return Collections.emptyList();
+            }
+
+            WebhookBackfillService.this.jobLockService.refreshLock(this.lockToken, LOCK_QNAME, WebhookBackfillService.this.lockTimeToLive);
+            WebhookBackfillService.this.persist(this.backfill, WebhookBackfill.Status.RUNNING, this);
+
+            final long pageStart = this.nextPageStart;
+            final List<BackfillItem> page = WebhookBackfillService.this.doInTransaction(() -> this.loadPage(pageStart), true);
+            if (!page.isEmpty())
+            {
+                this.pendingPages.put(Long.valueOf(pageStart), new PendingPage(page.size()));
+                this.nextPageStart = page.get(page.size() - 1).dbId + 1;
+            }
+            return page;
+        }
+
+        protected List<BackfillItem> loadPage(final long pageStart)
+        {
+            final SearchParameters sp = new SearchParameters();
+            sp.setLanguage(SearchService.LANGUAGE_FTS_ALFRESCO);
+            sp.addStore(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE);
+            sp.setQuery(this.backfill.getQuery() + " AND " + DBID_FIELD + ":[" + pageStart + " TO MAX]");
+            sp.addSort("@" + ContentModel.PROP_NODE_DBID, true);
+            sp.setMaxItems(WebhookBackfillService.this.pageSize);
+            // range queries on the database ID are only supported by the index
+            sp.setQueryConsistency(QueryConsistency.EVENTUAL);
+
+            final List<BackfillItem> page = new ArrayList<>(WebhookBackfillService.this.pageSize);
+            final ResultSet results = WebhookBackfillService.this.searchService.query(sp);
+            try
+            {
+                if (this.backfill.getEstimatedTotal() < 0)
+                {
+                    this.backfill.setEstimatedTotal(results.getNumberFound());
+                }
+
+                for (final NodeRef nodeRef : results.getNodeRefs())
+                {
+                    final Serializable dbId = WebhookBackfillService.this.nodeService.exists(nodeRef)
+                            ? WebhookBackfillService.this.nodeService.getProperty(nodeRef, ContentModel.PROP_NODE_DBID)
+                            : null;
+                    if (dbId instanceof Long)
+                    {
+                        page.add(new BackfillItem(((Long) dbId).longValue(), nodeRef, pageStart));
+                    }
+                }
+            }
+            finally
+            {
+                results.close();
+            }
+            return page;
+        }
+
+        protected void execute()
+        {
+            WebhookBackfill.Status status = WebhookBackfill.Status.FAILED;
+            try
+            {
+                final BatchProcessor<BackfillItem> batchProcessor = new BatchProcessor<>(BACKFILL_KEY + "-" + this.backfill.getId(),
+                        WebhookBackfillService.this.transactionService.getRetryingTransactionHelper(), this,
+                        WebhookBackfillService.this.workerThreads, WebhookBackfillService.this.batchSize,
+                        WebhookBackfillService.this.applicationEventPublisher, LogFactory.getLog(WebhookBackfillService.class),
+                        WebhookBackfillService.this.loggingInterval);
+                batchProcessor.process(new BackfillWorker(this), true);
+
+                status = this.stopRequested ? WebhookBackfill.Status.STOPPED : WebhookBackfill.Status.COMPLETED;
+            }
+            catch (final RuntimeException ex)
+            {
+                LOGGER.error("Backfill {} failed", this.backfill.getId(), ex);
+                this.lastError = ex.getMessage();
+            }
+            finally
+            {
+                try
+                {
+                    WebhookBackfillService.this.persist(this.backfill, status, this);
+                    LOGGER.info("Finished run of {}", this.backfill);
+                }
+                finally
+                {
+                    WebhookBackfillService.this.activeRun = null;
+                    WebhookBackfillService.this.jobLockService.releaseLock(this.lockToken, LOCK_QNAME);
+                }
+            }
+        }
+
+        protected void completed(final Collection<BackfillItem> items)
+        {
+            for (final BackfillItem item : items)
+            {
+                final PendingPage page = this.pendingPages.get(Long.valueOf(item.pageStart));
+                // a page only completes once all its items have completed or failed, so an item of a completed page has failed before
+                if (page == null || page.failedItems.remove(Long.valueOf(item.dbId)))
+                {
+                    // item failed in a batch but succeeded when retried on its own - its page has already been updated
+                    this.failed.decrementAndGet();
+                }
+                else
+                {
+                    this.pageItemDone(item, page);
+                }
+            }
+            this.processed.addAndGet(items.size());
+        }
+
+        protected void failed(final BackfillItem item, final Throwable error)
+        {
+            LOGGER.debug("Backfill {} failed to process {}", this.backfill.getId(), item.nodeRef, error);
+            this.lastError = item.nodeRef + ": " + error.getMessage();
+
+            // the batch processor retries the entries of a failed batch one by one, so the same item may fail twice - if its page has
+            // completed in the meantime, the first failure has already been counted
+            final PendingPage page = this.pendingPages.get(Long.valueOf(item.pageStart));
+            if (page != null && page.failedItems.add(Long.valueOf(item.dbId)))
+            {
+                this.failed.incrementAndGet();
+                // a failed item must not hold back the checkpoint
+                this.pageItemDone(item, page);
+            }
+        }
+
+        protected void pageItemDone(final BackfillItem item, final PendingPage page)
+        {
+            if (page.remaining.decrementAndGet() == 0)
+            {
+                // drops the failed items tracked for the page as well
+                this.pendingPages.remove(Long.valueOf(item.pageStart));
+            }
+        }
+
+        protected long getCheckpoint()
+        {
+            // all nodes before the oldest page still pending have been processed
+            final Map.Entry<Long, PendingPage> oldestPendingPage = this.pendingPages.firstEntry();
+            return oldestPendingPage != null ? oldestPendingPage.getKey().longValue() : this.nextPageStart;
+        }
+
+        protected long getProcessingTime()
+        {
+            return this.initialProcessingTime + (System.currentTimeMillis() - this.startedAt);
+        }
+
+        protected String describeProgress()
+        {
+            final long processingTime = this.getProcessingTime();
+            final long processedCount = this.processed.get();
+            return String.format(Locale.ENGLISH, "%s: processed %d (failed %d) of ~%d nodes, checkpoint %d, %.1f nodes/s",
+                    this.backfill.getId(), Long.valueOf(processedCount), Long.valueOf(this.failed.get()),
+                    Long.valueOf(this.backfill.getEstimatedTotal()), Long.valueOf(this.getCheckpoint()),
+                    Double.valueOf(processingTime > 0 ? processedCount * 1000d / processingTime : 0));
+        }
+    }
+
+    /**
+     * Instances of this class process the nodes of a backfill within the transactions of the batch processor.
+     *
+     * @author Axel Faust
+     */
+    protected class BackfillWorker extends BatchProcessWorkerAdaptor<BackfillItem>
+    {
+
+        protected final BackfillRun run;
+
+        protected BackfillWorker(final BackfillRun run)
+        {
+            this.run = run;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public String getIdentifier(final BackfillItem entry)
+        {
+            return entry.nodeRef.toString();
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void beforeProcess()
+        {
+            AuthenticationUtil.setRunAsUser(this.run.backfill.getRunAsUser());
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void afterProcess()
+        {
+            AuthenticationUtil.clearCurrentSecurityContext();
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void process(final BackfillItem entry) throws Throwable
+        {
+            // nodes only count as processed once their transaction has been committed (failed nodes are skipped by the batch processor)
+            final Set<BackfillItem> txnItems = TransactionalResourceHelper.getSet(TXN_KEY_ITEMS);
+            if (txnItems.isEmpty())
+            {
+                AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                {
+
+                    /**
+                     *
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    public void afterCommit()
+                    {
+                        BackfillWorker.this.run.completed(txnItems);
+                    }
+                });
+            }
+            txnItems.add(entry);
+
+            try
+            {
+                if (WebhookBackfillService.this.nodeService.exists(entry.nodeRef))
+                {
+                    Action action = AlfrescoTransactionSupport.getResource(TXN_KEY_RULE_ACTION);
+                    if (action == null)
+                    {
+                        // actions are modified during execution and must not be shared between concurrent transactions
+                        action = WebhookBackfillService.this.loadWebhookAction(this.run.backfill.getRule());
+                        AlfrescoTransactionSupport.bindResource(TXN_KEY_RULE_ACTION, action);
+                    }
+                    WebhookBackfillService.this.executeWebhookActions(action, entry.nodeRef);
+                }
+            }
+            catch (final Throwable ex)
+            {
+                if (RetryingTransactionHelper.extractRetryCause(ex) == null)
+                {
+                    this.run.failed(entry, ex);
+                }
+                throw ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link WebhookBackfillService webhook backfill service} allowing administrators to send webhook calls for
+ * existing nodes and monitor the progress of such backfills.
+ *
+ * @author Axel Faust
+ */
+public interface WebhookBackfillServiceMBean
+{
+
+    /**
+     * Starts a backfill for all nodes matching a query, executing the webhook call actions of a rule for each node for which the
+     * conditions of the rule are met.
+     *
+     * @param query
+     *            the FTS query selecting the nodes to process
+     * @param rule
+     *            the node reference of the rule
+     * @return the ID of the backfill
+     */
+    String startQueryBackfill(String query, String rule);
+
+    /**
+     * Starts a backfill for all nodes contained (at any depth) in a folder, executing the webhook call actions of a rule for each node for
+     * which the conditions of the rule are met.
+     *
+     * @param folder
+     *            the node reference of the folder
+     * @param rule
+     *            the node reference of the rule
+     * @return the ID of the backfill
+     */
+    String startFolderBackfill(String folder, String rule);
+
+    /**
+     * Resumes a stopped or failed backfill from its last checkpoint.
+     *
+     * @param id
+     *            the ID of the backfill
+     * @return {@code true} if the backfill has been resumed, {@code false} if it does not exist or has already completed
+     */
+    boolean resumeBackfill(String id);
+
+    /**
+     * Stops the backfill currently running on this server after the batches already in progress have been processed.
+     *
+     * @return {@code true} if a running backfill is being stopped, {@code false} if no backfill is running on this server
+     */
+    boolean stopBackfill();
+
+    /**
+     * @return the progress of the backfill currently running on this server, or {@code null} if no backfill is running
+     */
+    String getRunningBackfill();
+
+    /**
+     * Lists all backfills which have not been purged.
+     *
+     * @return textual descriptions of the backfills
+     */
+    List<String> listBackfills();
+
+    /**
+     * Removes the persisted state of a backfill which is not currently running.
+     *
+     * @param id
+     *            the ID of the backfill
+     * @return {@code true} if the backfill was found and purged, {@code false} otherwise
+     */
+    boolean purgeBackfill(String id);
+}
@@ -15,15 +15,20 @@
  */
 package de.acosix.alfresco.actions.repo.action;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.action.ParameterDefinitionImpl;
@@ -31,8 +36,12 @@ import org.alfresco.repo.action.executer.ActionExecuterAbstractBase;
 import org.alfresco.repo.admin.SysAdminParams;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.model.Repository;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
 import org.alfresco.service.cmr.action.Action;
-import org.alfresco.service.cmr.action.ActionServiceException;
 import org.alfresco.service.cmr.action.ParameterDefinition;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.repository.MimetypeService;
@@ -40,16 +49,13 @@ import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.repository.TemplateService;
 import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
+import org.alfresco.service.cmr.rule.RuleService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.alfresco.util.ParameterCheck;
 import org.alfresco.util.PropertyCheck;
-import org.apache.http.Header;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.StatusLine;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -64,6 +70,30 @@ import org.springframework.extensions.webscripts.json.JSONUtils;
 public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implements InitializingBean
 {
 
+    /**
+     * The modes in which rendered webhook calls can be dispatched.
+     *
+     * @author Axel Faust
+     */
+    public static enum DispatchMode
+    {
+        /**
+         * Webhook calls are performed immediately within the transaction in which the action is executed, failing the action on any
+         * error.
+         */
+        SYNCHRONOUS,
+        /**
+         * Webhook calls are handed off to an {@link AsyncWebhookDispatcher asynchronous dispatcher} and performed after the transaction
+         * in which the action is executed has been committed.
+         */
+        ASYNCHRONOUS,
+        /**
+         * Webhook calls are persisted in a {@link WebhookOutbox durable outbox} within the transaction in which the action is executed
+         * and delivered by a background process with retries on failure.
+         */
+        OUTBOX;
+    }
+
     public static final String NAME = "acosix-actions.webhookCall";
 
     public static final String PARAM_URL_TEMPLATE = "urlTemplate";
@@ -78,10 +108,29 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
 
     public static final String PARAM_HEADERS = "headers";
 
+    public static final String PARAM_BATCH = "batch";
+
+    public static final String PARAM_RESPONSE_MAPPINGS = "responseMappings";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(WebhookCallActionExecuter.class);
 
     private static final String TEMPLATE_TYPE_FREEMARKER = "freemarker";
 
+    private static final String TXN_KEY_DEFAULT_MODELS = WebhookCallActionExecuter.class.getName() + "-defaultModels";
+
+    private static final String TXN_KEY_BATCHES = WebhookCallActionExecuter.class.getName() + "-batches";
+
+    private static final Pattern TEMPLATE_NAME_WITH_MIMETYPE_EXTENSION = Pattern.compile("^[^\\.]+\\.[^\\.]+\\.[fF][tT][lL]$");
+
+    // the following template model helpers are stateless and can be shared
+    private static final UrlEncodeMethod URL_ENCODE_METHOD = new UrlEncodeMethod();
+
+    private static final ISO8601DateFormatMethod ISO8601_DATE_FORMAT_METHOD = new ISO8601DateFormatMethod();
+
+    private static final JSONUtils JSON_UTILS = new JSONUtils();
+
+    private static final ScriptableUtils SCRIPTABLE_UTILS = new ScriptableUtils();
+
     private static final Map<String, ContentType> DEFAULT_CONTENT_TYPES;
 
     static
@@ -96,6 +145,10 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
 
     protected NodeService nodeService;
 
+    protected NamespaceService namespaceService;
+
+    protected RuleService ruleService;
+
     protected TemplateService templateService;
 
     protected MimetypeService mimetypeService;
@@ -104,7 +157,37 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
 
     protected Repository repository;
 
-    protected String userAgent;
+    protected DispatchMode dispatchMode = DispatchMode.SYNCHRONOUS;
+
+    protected AsyncWebhookDispatcher asyncWebhookDispatcher;
+
+    protected WebhookOutbox webhookOutbox;
+
+    protected WebhookTransport webhookTransport;
+
+    protected WebhookTemplateCache templateCache;
+
+    protected int parameterCacheSize = 250;
+
+    protected int maxBatchSize = 500;
+
+    protected int payloadSpillThreshold = 65536;
+
+    protected WebhookCallMetrics metrics;
+
+    protected String correlationHeaderName;
+
+    protected WebhookDeduplicator deduplicator;
+
+    protected String idempotencyHeaderName = "Idempotency-Key";
+
+    protected boolean deferThrottledCalls = true;
+
+    protected Map<String, List<Pair<String, String>>> parsedParameters;
+
+    protected Map<NodeRef, Pair<String, ContentType>> templateContentTypes;
+
+    protected Map<String, WebhookPlan> plans;
 
     /**
      *
@@ -114,11 +197,26 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
     public void afterPropertiesSet()
     {
         PropertyCheck.mandatory(this, "nodeService", this.nodeService);
+        PropertyCheck.mandatory(this, "namespaceService", this.namespaceService);
+        PropertyCheck.mandatory(this, "ruleService", this.ruleService);
         PropertyCheck.mandatory(this, "templateService", this.templateService);
         PropertyCheck.mandatory(this, "mimetypeService", this.mimetypeService);
         PropertyCheck.mandatory(this, "repository", this.repository);
         PropertyCheck.mandatory(this, "sysAdminParams", this.sysAdminParams);
-        PropertyCheck.mandatory(this, "userAgent", this.userAgent);
+        PropertyCheck.mandatory(this, "webhookTransport", this.webhookTransport);
+        PropertyCheck.mandatory(this, "dispatchMode", this.dispatchMode);
+        if (this.dispatchMode == DispatchMode.ASYNCHRONOUS)
+        {
+            PropertyCheck.mandatory(this, "asyncWebhookDispatcher", this.asyncWebhookDispatcher);
+        }
+        if (this.dispatchMode == DispatchMode.OUTBOX)
+        {
+            PropertyCheck.mandatory(this, "webhookOutbox", this.webhookOutbox);
+        }
+
+        this.parsedParameters = new LruMap<>(this.parameterCacheSize);
+        this.templateContentTypes = new LruMap<>(this.parameterCacheSize);
+        this.plans = new LruMap<>(this.parameterCacheSize);
     }
 
     /**
@@ -130,6 +228,24 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
         this.nodeService = nodeService;
     }
 
+    /**
+     * @param namespaceService
+     *            the namespaceService to set
+     */
+    public void setNamespaceService(final NamespaceService namespaceService)
+    {
+        this.namespaceService = namespaceService;
+    }
+
+    /**
+     * @param ruleService
+     *            the ruleService to set
+     */
+    public void setRuleService(final RuleService ruleService)
+    {
+        this.ruleService = ruleService;
+    }
+
     /**
      * @param templateService
      *            the templateService to set
@@ -167,12 +283,125 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
     }
 
     /**
-     * @param userAgent
-     *            the userAgent to set
+     * @param dispatchMode
+     *            the dispatchMode to set
      */
-    public void setUserAgent(final String userAgent)
+    public void setDispatchMode(final String dispatchMode)
     {
-        this.userAgent = userAgent;
+        ParameterCheck.mandatoryString("dispatchMode", dispatchMode);
+        this.dispatchMode = DispatchMode.valueOf(dispatchMode.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * @param asyncWebhookDispatcher
+     *            the asyncWebhookDispatcher to set
+     */
+    public void setAsyncWebhookDispatcher(final AsyncWebhookDispatcher asyncWebhookDispatcher)
+    {
+        this.asyncWebhookDispatcher = asyncWebhookDispatcher;
+    }
+
+    /**
+     * @param webhookOutbox
+     *            the webhookOutbox to set
+     */
+    public void setWebhookOutbox(final WebhookOutbox webhookOutbox)
+    {
+        this.webhookOutbox = webhookOutbox;
+    }
+
+    /**
+     * @param webhookTransport
+     *            the webhookTransport to set
+     */
+    public void setWebhookTransport(final WebhookTransport webhookTransport)
+    {
+        this.webhookTransport = webhookTransport;
+    }
+
+    /**
+     * @param templateCache
+     *            the templateCache to set
+     */
+    public void setTemplateCache(final WebhookTemplateCache templateCache)
+    {
+        this.templateCache = templateCache;
+    }
+
+    /**
+     * @param parameterCacheSize
+     *            the maximum number of parsed parameter values and payload template content types to keep in memory
+     */
+    public void setParameterCacheSize(final int parameterCacheSize)
+    {
+        this.parameterCacheSize = parameterCacheSize;
+    }
+
+    /**
+     * @param maxBatchSize
+     *            the maximum number of nodes to combine into a single webhook call when batching is enabled for an action
+     */
+    public void setMaxBatchSize(final int maxBatchSize)
+    {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @param payloadSpillThreshold
+     *            the size in bytes beyond which payloads of asynchronously dispatched webhook calls are buffered in temporary files instead
+     *            of in memory
+     */
+    public void setPayloadSpillThreshold(final int payloadSpillThreshold)
+    {
+        this.payloadSpillThreshold = payloadSpillThreshold;
+    }
+
+    /**
+     * @param metrics
+     *            the metrics to set
+     */
+    public void setMetrics(final WebhookCallMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param correlationHeaderName
+     *            the name of the header in which to send a unique correlation ID for each webhook call, unless explicitly set via the
+     *            headers parameter of an action - an empty value disables the correlation header
+     */
+    public void setCorrelationHeaderName(final String correlationHeaderName)
+    {
+        this.correlationHeaderName = correlationHeaderName;
+    }
+
+    /**
+     * @param deduplicator
+     *            the deduplicator to set - if set and enabled, duplicate webhook calls are suppressed
+     */
+    public void setDeduplicator(final WebhookDeduplicator deduplicator)
+    {
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * @param idempotencyHeaderName
+     *            the name of the header in which to send the idempotency key of a webhook call if a
+     *            {@link #setDeduplicator(WebhookDeduplicator) deduplicator} is set - an empty value disables the header
+     */
+    public void setIdempotencyHeaderName(final String idempotencyHeaderName)
+    {
+        this.idempotencyHeaderName = idempotencyHeaderName;
+    }
+
+    /**
+     * @param deferThrottledCalls
+     *            {@code true} if calls which were throttled by the endpoint or rejected due to a local rate limit / circuit breaker should
+     *            be deferred to the outbox (if enabled) instead of failing, {@code false} otherwise
+     */
+    public void setDeferThrottledCalls(final boolean deferThrottledCalls)
+    {
+        this.deferThrottledCalls = deferThrottledCalls;
     }
 
     /**
@@ -180,9 +409,128 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
      */
     @Override
     protected void executeImpl(final Action action, final NodeRef actionedUponNodeRef)
+    {
+        final WebhookPlan plan = this.getPlan(action);
+
+        final long modelStart = System.nanoTime();
+        final Map<String, Object> defaultModel = this.buildDefaultModel();
+        this.recordPhase(WebhookCallMetrics.Phase.MODEL_BUILDING, modelStart);
+
+        final String url = this.generateURL(actionedUponNodeRef, plan, defaultModel);
+
+        if (!plan.responseMappings.isEmpty() && (plan.batch || this.dispatchMode != DispatchMode.SYNCHRONOUS))
+        {
+            LOGGER.warn("Response values can only be written back for synchronous, non-batched webhook calls - ignoring {} for URL {}",
+                    PARAM_RESPONSE_MAPPINGS, url);
+        }
+
+        if (plan.batch && actionedUponNodeRef != null)
+        {
+            final BatchKey batchKey = new BatchKey(url, plan.payloadTemplate, plan.rawPayloadTemplateArguments, plan.payloadMimetype,
+                    plan.rawHeaders);
+            this.addToBatch(batchKey, actionedUponNodeRef);
+        }
+        else
+        {
+            LOGGER.debug("Preparing call to webhook at URL {}", url);
+
+            final ContentType contentType = plan.payloadContentType != null ? plan.payloadContentType
+                    : this.determineTemplateContentType(plan.payloadTemplate);
+            final WebhookPayload payload = this.generatePayload(actionedUponNodeRef, plan.payloadTemplate, plan.payloadTemplateArguments,
+                    contentType, defaultModel);
+            WebhookRequest request = this.buildRequest(url, contentType, plan.headers, payload);
+            if (!plan.responseMappings.isEmpty() && actionedUponNodeRef != null && this.dispatchMode == DispatchMode.SYNCHRONOUS)
+            {
+                request = request.withResponsePointers(plan.responsePointers);
+            }
+
+            final WebhookResponse response = this.dispatchWebhook(request);
+            if (response != null && !request.getResponsePointers().isEmpty())
+            {
+                this.applyResponseMappings(actionedUponNodeRef, plan.responseMappings, response);
+            }
+        }
+    }
+
+    /**
+     * Validates the parameters of a webhook call action, e.g. when an action is saved as part of a rule, by compiling them into a
+     * {@link WebhookPlan plan}. This includes checking that mandatory parameters have been provided, that multi-line key-value parameters
+     * and response mappings are well-formed, and that the URL and payload templates exist and can be parsed.
+     *
+     * @param parameterValues
+     *            the parameter values to validate
+     * @throws IllegalArgumentException
+     *             if the parameters are invalid
+     */
+    public void validateParameters(final Map<String, Serializable> parameterValues)
+    {
+        ParameterCheck.mandatory("parameterValues", parameterValues);
+        this.compilePlan(parameterValues, true);
+    }
+
+    /**
+     * Removes the cached {@link WebhookPlan plan} of an action, e.g. when the action has been changed or deleted.
+     *
+     * @param actionId
+     *            the ID of the action
+     */
+    public void invalidatePlan(final String actionId)
+    {
+        synchronized (this.plans)
+        {
+            this.plans.remove(actionId);
+        }
+    }
+
+    /**
+     * Retrieves the {@link WebhookPlan plan} for executing an action, compiling it if no plan has been cached for the action or the
+     * parameters of the action have changed since the cached plan was compiled.
+     *
+     * @param action
+     *            the action to execute
+     * @return the plan
+     */
+    protected WebhookPlan getPlan(final Action action)
     {
         final Map<String, Serializable> parameterValues = action.getParameterValues();
+        final String actionId = action.getId();
 
+        WebhookPlan plan = null;
+        if (actionId != null)
+        {
+            synchronized (this.plans)
+            {
+                plan = this.plans.get(actionId);
+            }
+        }
+
+        // comparing the parameters covers changes of actions in other transactions / on other servers
+        if (plan == null || !plan.parameterValues.equals(parameterValues))
+        {
+            plan = this.compilePlan(parameterValues, false);
+            if (actionId != null)
+            {
+                synchronized (this.plans)
+                {
+                    this.plans.put(actionId, plan);
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Compiles the parameters of an action into a {@link WebhookPlan plan}, converting and validating all parameters once.
+     *
+     * @param parameterValues
+     *            the parameter values of the action
+     * @param validateTemplates
+     *            {@code true} if the URL and payload templates should be parsed to validate their syntax, {@code false} if they
+     *            will be validated by processing them anyway
+     * @return the plan
+     */
+    protected WebhookPlan compilePlan(final Map<String, Serializable> parameterValues, final boolean validateTemplates)
+    {
         final String urlTemplate = DefaultTypeConverter.INSTANCE.convert(String.class, parameterValues.get(PARAM_URL_TEMPLATE));
         final String urlTemplateArguments = DefaultTypeConverter.INSTANCE.convert(String.class,
                 parameterValues.get(PARAM_URL_TEMPLATE_ARGUMENTS));
@@ -193,6 +541,9 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
         final String payloadMimetype = DefaultTypeConverter.INSTANCE.convert(String.class, parameterValues.get(PARAM_PAYLOAD_MIMETYPE));
 
         final String headers = DefaultTypeConverter.INSTANCE.convert(String.class, parameterValues.get(PARAM_HEADERS));
+        final boolean batch = Boolean.TRUE.equals(DefaultTypeConverter.INSTANCE.convert(Boolean.class, parameterValues.get(PARAM_BATCH)));
+        final String responseMappings = DefaultTypeConverter.INSTANCE.convert(String.class,
+                parameterValues.get(PARAM_RESPONSE_MAPPINGS));
 
         if (payloadTemplate == null)
         {
@@ -203,15 +554,32 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
         {
             throw new IllegalArgumentException(PARAM_URL_TEMPLATE + " must be provided as an action parameter");
         }
-        final Map<String, Object> defaultModel = this.buildDefaultModel();
 
-        final String url = this.generateURL(actionedUponNodeRef, urlTemplate, urlTemplateArguments, defaultModel);
+        if (validateTemplates)
+        {
+            if (!this.nodeService.exists(payloadTemplate))
+            {
+                throw new IllegalArgumentException(PARAM_PAYLOAD_TEMPLATE + " " + payloadTemplate + " does not exist");
+            }
 
-        LOGGER.debug("Preparing call to webhook at URL {}", url);
+            if (this.templateCache != null)
+            {
+                this.templateCache.validateTemplateString(urlTemplate);
+                this.templateCache.validateTemplate(payloadTemplate);
+            }
+        }
 
-        final String payload = this.generatePayload(actionedUponNodeRef, payloadTemplate, payloadTemplateArguments, defaultModel);
+        ContentType payloadContentType = null;
+        if (payloadMimetype != null && !payloadMimetype.isEmpty())
+        {
+            payloadContentType = DEFAULT_CONTENT_TYPES.get(payloadMimetype);
+        }
 
-        this.callWebhook(payloadTemplate, payloadMimetype, headers, url, payload);
+        return new WebhookPlan(parameterValues, urlTemplate,
+                this.parseKeyValueParameter(PARAM_URL_TEMPLATE_ARGUMENTS, urlTemplateArguments), payloadTemplate, payloadTemplateArguments,
+                this.parseKeyValueParameter(PARAM_PAYLOAD_TEMPLATE_ARGUMENTS, payloadTemplateArguments), payloadMimetype,
+                payloadContentType, headers, this.parseKeyValueParameter(PARAM_HEADERS, headers), batch,
+                this.resolveResponseMappings(responseMappings));
     }
 
     /**
@@ -231,52 +599,290 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
         paramList.add(new ParameterDefinitionImpl(PARAM_PAYLOAD_MIMETYPE, DataTypeDefinition.TEXT, false,
                 this.getParamDisplayLabel(PARAM_PAYLOAD_MIMETYPE), false, NAME + ".allowedMimetypes"));
         paramList.add(new ParameterDefinitionImpl(PARAM_HEADERS, DataTypeDefinition.TEXT, false, this.getParamDisplayLabel(PARAM_HEADERS)));
+        paramList.add(new ParameterDefinitionImpl(PARAM_BATCH, DataTypeDefinition.BOOLEAN, false, this.getParamDisplayLabel(PARAM_BATCH)));
+        paramList.add(new ParameterDefinitionImpl(PARAM_RESPONSE_MAPPINGS, DataTypeDefinition.TEXT, false,
+                this.getParamDisplayLabel(PARAM_RESPONSE_MAPPINGS)));
     }
 
+    /**
+     * Retrieves the default model for templates. The default model is only built once per user and transaction, so that actions
+     * executed for many nodes in the same transaction (e.g. a rule during a bulk import) share the same instance. Values requiring node
+     * lookups (person, home folders) are only resolved when a template actually accesses them.
+     *
+     * @return the read-only default model
+     */
     protected Map<String, Object> buildDefaultModel()
     {
-        final NodeRef person = this.repository.getPerson();
-        final Map<String, Object> defaultModel = this.templateService.buildDefaultModel(person, this.repository.getCompanyHome(),
-                person != null ? this.repository.getUserHome(person) : null, null, null);
-        defaultModel.put("sysAdminParams", this.sysAdminParams);
-        defaultModel.put("encodeuri", new UrlEncodeMethod());
-        defaultModel.put("xmldate", new ISO8601DateFormatMethod());
-        defaultModel.put("jsonUtils", new JSONUtils());
-        defaultModel.put("stringUtils", new ScriptableUtils());
+        final Map<String, Object> defaultModel;
+        if (AlfrescoTransactionSupport.getTransactionReadState() != TxnReadState.TXN_NONE)
+        {
+            final Map<String, Map<String, Object>> defaultModels = TransactionalResourceHelper.getMap(TXN_KEY_DEFAULT_MODELS);
+            final String runAsUser = AuthenticationUtil.getRunAsUser();
+            Map<String, Object> userDefaultModel = defaultModels.get(runAsUser);
+            if (userDefaultModel == null)
+            {
+                userDefaultModel = this.createDefaultModel();
+                defaultModels.put(runAsUser, userDefaultModel);
+            }
+            defaultModel = userDefaultModel;
+        }
+        else
+        {
+            defaultModel = this.createDefaultModel();
+        }
         return defaultModel;
     }
 
-    protected String generateURL(final NodeRef actionedUponNodeRef, final String urlTemplate, final String urlTemplateArguments,
-            final Map<String, Object> defaultModel)
+    protected Map<String, Object> createDefaultModel()
     {
+        final LazyTemplateModel defaultModel = new LazyTemplateModel();
+        // template service only adds node entries if nodes are provided, so its remaining (cheap) entries can be obtained without lookups
+        defaultModel.putAll(this.templateService.buildDefaultModel(null, null, null, null, null));
+        defaultModel.putLazy("person", this.repository::getPerson);
+        defaultModel.putLazy("companyhome", this.repository::getCompanyHome);
+        defaultModel.putLazy("userhome", () -> {
+            final Object person = defaultModel.get("person");
+            return person instanceof NodeRef ? this.repository.getUserHome((NodeRef) person) : null;
+        });
+        defaultModel.put("sysAdminParams", this.sysAdminParams);
+        defaultModel.put("encodeuri", URL_ENCODE_METHOD);
+        defaultModel.put("xmldate", ISO8601_DATE_FORMAT_METHOD);
+        defaultModel.put("jsonUtils", JSON_UTILS);
+        defaultModel.put("stringUtils", SCRIPTABLE_UTILS);
+        return defaultModel.readOnly();
+    }
+
+    protected String generateURL(final NodeRef actionedUponNodeRef, final WebhookPlan plan, final Map<String, Object> defaultModel)
+    {
+        final String urlTemplate = plan.urlTemplate;
         LOGGER.debug("Processing URL template {}", urlTemplate);
-        final Map<String, Object> urlTemplateModel = new HashMap<>(defaultModel);
-        if (actionedUponNodeRef != null)
+        final long start = System.nanoTime();
+        final String url;
+        if (plan.constantUrl)
+        {
+            // nothing to render, so neither model nor arguments need to be processed
+            url = urlTemplate;
+        }
+        else
         {
-            urlTemplateModel.put("document", actionedUponNodeRef);
+            final Map<String, Object> urlTemplateModel = new LazyTemplateModel(defaultModel);
+            if (actionedUponNodeRef != null)
+            {
+                urlTemplateModel.put("document", actionedUponNodeRef);
+            }
+            this.processTemplateModelArguments(plan.urlTemplateArguments, urlTemplateModel);
+            if (this.templateCache != null)
+            {
+                url = this.templateCache.processTemplateString(urlTemplate, urlTemplateModel);
+            }
+            else
+            {
+                url = this.templateService.processTemplateString(TEMPLATE_TYPE_FREEMARKER, urlTemplate, urlTemplateModel);
+            }
         }
-        processTemplateModelArguments(PARAM_URL_TEMPLATE_ARGUMENTS, urlTemplateArguments, urlTemplateModel);
-        final String url = this.templateService.processTemplateString(TEMPLATE_TYPE_FREEMARKER, urlTemplate, urlTemplateModel);
+        this.recordPhase(WebhookCallMetrics.Phase.URL_RENDERING, start);
         return url;
     }
 
-    protected String generatePayload(final NodeRef actionedUponNodeRef, final NodeRef payloadTemplate,
-            final String payloadTemplateArguments, final Map<String, Object> defaultModel)
+    protected WebhookPayload generatePayload(final NodeRef actionedUponNodeRef, final NodeRef payloadTemplate,
+            final List<Pair<String, String>> payloadTemplateArguments, final ContentType contentType,
+            final Map<String, Object> defaultModel)
     {
         LOGGER.debug("Processing payload template {}", payloadTemplate);
-        final Map<String, Object> payloadTemplateModel = new HashMap<>(defaultModel);
+        final Map<String, Object> payloadTemplateModel = new LazyTemplateModel(defaultModel);
         if (actionedUponNodeRef != null)
         {
             payloadTemplateModel.put("document", actionedUponNodeRef);
         }
-        processTemplateModelArguments(PARAM_PAYLOAD_TEMPLATE_ARGUMENTS, payloadTemplateArguments, payloadTemplateModel);
-        final String payload = this.templateService.processTemplate(TEMPLATE_TYPE_FREEMARKER, payloadTemplate.toString(),
-                payloadTemplateModel);
-        LOGGER.trace("Generated webhook payload: {}", payload);
+        this.processTemplateModelArguments(payloadTemplateArguments, payloadTemplateModel);
+        return this.createPayload(writer -> this.processPayloadTemplate(payloadTemplate, payloadTemplateModel, writer), contentType);
+    }
+
+    protected WebhookPayload generateBatchPayload(final List<NodeRef> documents, final NodeRef payloadTemplate,
+            final String payloadTemplateArguments, final ContentType contentType, final Map<String, Object> defaultModel)
+    {
+        LOGGER.debug("Processing payload template {} for batch of {} documents", payloadTemplate, documents.size());
+        final Map<String, Object> payloadTemplateModel = new LazyTemplateModel(defaultModel);
+        payloadTemplateModel.put("documents", documents);
+        this.processTemplateModelArguments(PARAM_PAYLOAD_TEMPLATE_ARGUMENTS, payloadTemplateArguments, payloadTemplateModel);
+        return this.createPayload(writer -> this.processPayloadTemplate(payloadTemplate, payloadTemplateModel, writer), contentType);
+    }
+
+    /**
+     * Creates the payload for a webhook call in the form most suitable for the configured dispatch mode. Synchronous and asynchronous
+     * calls buffer the payload (spilling large payloads to temporary files), as the template can only be processed within the current
+     * transaction and should be rendered before any connection, concurrency slot or rate limit token is acquired for the call - this way,
+     * template errors are never counted as failures of the endpoint and rendering time is not included in the HTTP request time. Outbox
+     * calls render the payload into memory as it needs to be persisted.
+     *
+     * @param renderer
+     *            the renderer of the payload template
+     * @param contentType
+     *            the content type of the payload
+     * @return the payload
+     */
+    protected WebhookPayload createPayload(final StreamingWebhookPayload.PayloadRenderer renderer, final ContentType contentType)
+    {
+        final Charset charset = contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+        final WebhookPayload payload;
+        switch (this.dispatchMode)
+        {
+            case ASYNCHRONOUS:
+            case SYNCHRONOUS:
+                payload = BufferedWebhookPayload.render(renderer, charset, this.payloadSpillThreshold);
+                break;
+            case OUTBOX:
+            default:
+                payload = ByteArrayWebhookPayload.copyOf(new StreamingWebhookPayload(renderer, charset));
+        }
         return payload;
     }
 
-    protected void setPostPayload(final NodeRef payloadTemplate, final String payloadMimetype, final String payload, final HttpPost post)
+    protected void processPayloadTemplate(final NodeRef payloadTemplate, final Map<String, Object> payloadTemplateModel, final Writer out)
+    {
+        final long start = System.nanoTime();
+        if (this.templateCache != null)
+        {
+            this.templateCache.processTemplate(payloadTemplate, payloadTemplateModel, out);
+        }
+        else
+        {
+            this.templateService.processTemplate(TEMPLATE_TYPE_FREEMARKER, payloadTemplate.toString(), payloadTemplateModel, out);
+        }
+        this.recordPhase(WebhookCallMetrics.Phase.PAYLOAD_RENDERING, start);
+    }
+
+    protected WebhookRequest buildRequest(final String url, final ContentType contentType, final List<Pair<String, String>> headers,
+            final WebhookPayload payload)
+    {
+        final List<Pair<String, String>> requestHeaders = new ArrayList<>(headers);
+
+        // key must be computed before any per-call headers are added
+        String idempotencyKey = null;
+        if (this.isDeduplicationEnabled())
+        {
+            idempotencyKey = this.deduplicator.computeKey(url, contentType, requestHeaders, payload);
+            this.addHeaderIfAbsent(requestHeaders, this.idempotencyHeaderName, idempotencyKey);
+        }
+
+        if (this.correlationHeaderName != null && !this.correlationHeaderName.trim().isEmpty())
+        {
+            final String correlationId = UUID.randomUUID().toString();
+            if (this.addHeaderIfAbsent(requestHeaders, this.correlationHeaderName, correlationId))
+            {
+                LOGGER.debug("Using correlation ID {} for call to webhook at URL {}", correlationId, url);
+            }
+        }
+
+        final WebhookRequest request = new WebhookRequest(url, contentType, payload, requestHeaders, idempotencyKey);
+        return request;
+    }
+
+    /**
+     * Adds a header to a list of headers unless the header name is empty or a header of the same name has already been explicitly set.
+     *
+     * @param headers
+     *            the headers to add to
+     * @param headerName
+     *            the name of the header
+     * @param headerValue
+     *            the value of the header
+     * @return {@code true} if the header was added, {@code false} otherwise
+     */
+    protected boolean addHeaderIfAbsent(final List<Pair<String, String>> headers, final String headerName, final String headerValue)
+    {
+        boolean added = false;
+        if (headerName != null && !headerName.trim().isEmpty())
+        {
+            final String effectiveHeaderName = headerName.trim();
+            if (!headers.stream().anyMatch(header -> header.getFirst().equalsIgnoreCase(effectiveHeaderName)))
+            {
+                headers.add(new Pair<>(effectiveHeaderName, headerValue));
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Adds a node to the batch of nodes to be sent in a single webhook call at the end of the current transaction. If the batch reaches
+     * the configured maximum size, it is sent immediately.
+     *
+     * @param batchKey
+     *            the key identifying the batch via the common parameters of the webhook call
+     * @param actionedUponNodeRef
+     *            the node to add to the batch
+     */
+    protected void addToBatch(final BatchKey batchKey, final NodeRef actionedUponNodeRef)
+    {
+        if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE)
+        {
+            LOGGER.debug("No active transaction - sending batch for {} immediately", actionedUponNodeRef);
+            this.sendBatch(batchKey, Collections.singletonList(actionedUponNodeRef));
+        }
+        else
+        {
+            final Map<BatchKey, List<NodeRef>> batches = TransactionalResourceHelper.getMap(TXN_KEY_BATCHES);
+            if (TransactionalResourceHelper.incrementCount(TXN_KEY_BATCHES) == 1)
+            {
+                AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                {
+
+                    /**
+                     *
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    public void beforeCommit(final boolean readOnly)
+                    {
+                        // webhook calls may generate further transactional state (e.g. outbox entries), so copy to allow for modification
+                        final List<Entry<BatchKey, List<NodeRef>>> pendingBatches = new ArrayList<>(batches.entrySet());
+                        batches.clear();
+                        for (final Entry<BatchKey, List<NodeRef>> pendingBatch : pendingBatches)
+                        {
+                            WebhookCallActionExecuter.this.sendBatch(pendingBatch.getKey(), pendingBatch.getValue());
+                        }
+                    }
+                });
+            }
+
+            List<NodeRef> documents = batches.get(batchKey);
+            if (documents == null)
+            {
+                documents = new ArrayList<>();
+                batches.put(batchKey, documents);
+            }
+
+            if (!documents.contains(actionedUponNodeRef))
+            {
+                documents.add(actionedUponNodeRef);
+                LOGGER.debug("Added {} to batch for webhook call to URL {}", actionedUponNodeRef, batchKey.url);
+
+                if (documents.size() >= this.maxBatchSize)
+                {
+                    batches.remove(batchKey);
+                    this.sendBatch(batchKey, documents);
+                }
+            }
+        }
+    }
+
+    protected void sendBatch(final BatchKey batchKey, final List<NodeRef> documents)
+    {
+        LOGGER.debug("Preparing call to webhook at URL {} for batch of {} documents", batchKey.url, documents.size());
+
+        final long modelStart = System.nanoTime();
+        final Map<String, Object> defaultModel = this.buildDefaultModel();
+        this.recordPhase(WebhookCallMetrics.Phase.MODEL_BUILDING, modelStart);
+        final ContentType contentType = this.determinePayloadContentType(batchKey.payloadTemplate, batchKey.payloadMimetype);
+        final WebhookPayload payload = this.generateBatchPayload(documents, batchKey.payloadTemplate, batchKey.payloadTemplateArguments,
+                contentType, defaultModel);
+        final WebhookRequest request = this.buildRequest(batchKey.url, contentType,
+                this.parseKeyValueParameter(PARAM_HEADERS, batchKey.headers), payload);
+        this.dispatchWebhook(request);
+    }
+
+    protected ContentType determinePayloadContentType(final NodeRef payloadTemplate, final String payloadMimetype)
     {
         ContentType contentType = null;
         if (payloadMimetype != null && !payloadMimetype.isEmpty())
@@ -285,10 +891,28 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
         }
         if (contentType == null)
         {
-            final String templateName = DefaultTypeConverter.INSTANCE.convert(String.class,
-                    this.nodeService.getProperty(payloadTemplate, ContentModel.PROP_NAME));
+            contentType = this.determineTemplateContentType(payloadTemplate);
+        }
+        return contentType;
+    }
+
+    protected ContentType determineTemplateContentType(final NodeRef payloadTemplate)
+    {
+        final String templateName = DefaultTypeConverter.INSTANCE.convert(String.class,
+                this.nodeService.getProperty(payloadTemplate, ContentModel.PROP_NAME));
+
+        Pair<String, ContentType> cachedContentType;
+        synchronized (this.templateContentTypes)
+        {
+            cachedContentType = this.templateContentTypes.get(payloadTemplate);
+        }
+
+        // template may have been renamed since it was cached
+        if (cachedContentType == null || !cachedContentType.getFirst().equals(templateName))
+        {
+            ContentType contentType = null;
             // can only determine mimetype from template name if it contains a secondary file extension before .ftl
-            if (templateName.matches("^[^\\.]+\\.[^\\.]+\\.[fF][tT][lL]$"))
+            if (TEMPLATE_NAME_WITH_MIMETYPE_EXTENSION.matcher(templateName).matches())
             {
                 final String baseTemplateName = templateName.substring(0, templateName.length() - 4);
                 final String guessedMimetype = this.mimetypeService.guessMimetype(baseTemplateName);
@@ -298,71 +922,196 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
                     contentType = ContentType.create(guessedMimetype, StandardCharsets.UTF_8);
                 }
             }
+            if (contentType == null)
+            {
+                contentType = ContentType.APPLICATION_OCTET_STREAM;
+            }
+
+            cachedContentType = new Pair<>(templateName, contentType);
+            synchronized (this.templateContentTypes)
+            {
+                this.templateContentTypes.put(payloadTemplate, cachedContentType);
+            }
         }
-        if (contentType == null)
+
+        return cachedContentType.getSecond();
+    }
+
+    /**
+     * Dispatches a webhook call according to the configured dispatch mode.
+     *
+     * @param request
+     *            the request to dispatch
+     * @return the response of the endpoint if the call was performed synchronously, or {@code null} if the call was dispatched for
+     *         later delivery, deferred or skipped as a duplicate
+     */
+    protected WebhookResponse dispatchWebhook(final WebhookRequest request)
+    {
+        if (this.isDeduplicationEnabled() && request.getIdempotencyKey() != null
+                && !this.deduplicator.register(request.getIdempotencyKey()))
         {
-            contentType = ContentType.APPLICATION_OCTET_STREAM;
+            LOGGER.debug("Skipping duplicate call to webhook at URL {}", request.getUrl());
+            request.getPayload().release();
+            return null;
         }
-        post.setEntity(new StringEntity(payload, ContentType.APPLICATION_JSON));
+
+        WebhookResponse response = null;
+        switch (this.dispatchMode)
+        {
+            case ASYNCHRONOUS:
+                this.asyncWebhookDispatcher.dispatchAfterCommit(request, this::callWebhook);
+                break;
+            case OUTBOX:
+                this.webhookOutbox.enqueue(request);
+                break;
+            case SYNCHRONOUS:
+            default:
+                try
+                {
+                    response = this.callWebhook(request);
+                }
+                finally
+                {
+                    request.getPayload().release();
+                }
+        }
+        return response;
     }
 
-    protected void callWebhook(final NodeRef payloadTemplate, final String payloadMimetype, final String headers, final String url,
-            final String payload)
+    protected WebhookResponse callWebhook(final WebhookRequest request)
     {
-        final HttpClient client = HttpClientBuilder.create().build();
-        final HttpPost post = new HttpPost(url);
+        WebhookResponse response = null;
+        try
+        {
+            response = this.webhookTransport.send(request);
+        }
+        catch (final WebhookCallException ex)
+        {
+            if (!this.canDefer(request, ex))
+            {
+                this.unregisterFailedCall(request);
+                throw ex;
+            }
 
-        post.addHeader("User-Agent", this.userAgent);
-        this.setPostPayload(payloadTemplate, payloadMimetype, payload, post);
-        processPostHeaders(PARAM_HEADERS, headers, post);
+            final long delay = Math.max(0, ex.getRetryAfter());
+            LOGGER.info("Webhook call to URL {} was throttled / rejected - deferring it to the outbox with a delay of {} ms",
+                    request.getUrl(), delay);
+            this.webhookOutbox.enqueue(request, delay, ex.getMessage());
+        }
+        catch (final RuntimeException ex)
+        {
+            this.unregisterFailedCall(request);
+            throw ex;
+        }
+        return response;
+    }
 
-        try
+    /**
+     * Unregisters a call which failed to be delivered from the deduplicator so that it does not suppress an identical call retrying it.
+     *
+     * @param request
+     *            the request which failed
+     */
+    protected void unregisterFailedCall(final WebhookRequest request)
+    {
+        if (this.isDeduplicationEnabled() && request.getIdempotencyKey() != null)
         {
-            LOGGER.debug("Performing webhook call to URL {}", url);
-            final HttpResponse response = client.execute(post);
-            final StatusLine statusLine = response.getStatusLine();
-            LOGGER.debug("Webhook call to URL {} responded with status {}", url, statusLine);
+            this.deduplicator.unregister(request.getIdempotencyKey());
+        }
+    }
 
-            if (LOGGER.isTraceEnabled())
+    /**
+     * Resolves the mappings of response values to node properties from a provided, potential multi-line parameter containing key-value
+     * pairs of prefixed property names and JSON pointers.
+     *
+     * @param responseMappings
+     *            the mappings parameter value
+     * @return the list of mappings of property names to JSON pointers
+     */
+    protected List<Pair<QName, String>> resolveResponseMappings(final String responseMappings)
+    {
+        final List<Pair<String, String>> keyValues = this.parseKeyValueParameter(PARAM_RESPONSE_MAPPINGS, responseMappings);
+        final List<Pair<QName, String>> mappings = new ArrayList<>(keyValues.size());
+        for (final Pair<String, String> keyValue : keyValues)
+        {
+            final String pointer = keyValue.getSecond() != null ? keyValue.getSecond() : "";
+            if (!JsonPointerExtractor.isValidPointer(pointer))
             {
-                final HttpEntity entity = response.getEntity();
-                final Header contentType = entity.getContentType();
-                final Header contentEncoding = entity.getContentEncoding();
-                final String contentTypeVal = contentType != null ? contentType.getValue() : MimetypeMap.MIMETYPE_BINARY;
-                final String contentEncodingVal = contentEncoding != null ? contentEncoding.getValue() : StandardCharsets.UTF_8.name();
-
-                if (contentTypeVal.startsWith(MimetypeMap.PREFIX_TEXT) || contentTypeVal.startsWith(MimetypeMap.MIMETYPE_JSON))
-                {
-                    final StringBuilder responseBodyBuilder = new StringBuilder((int) entity.getContentLength());
-                    try (BufferedReader r = new BufferedReader(new InputStreamReader(entity.getContent(), contentEncodingVal)))
-                    {
-                        String line;
-                        while ((line = r.readLine()) != null)
-                        {
-                            if (responseBodyBuilder.length() > 0)
-                            {
-                                responseBodyBuilder.append('\n');
-                            }
-                            responseBodyBuilder.append(line);
-                        }
-                    }
-                    LOGGER.trace("Webhook call to URL {} responded with response messsage: {}", url, responseBodyBuilder);
-                }
+                throw new IllegalArgumentException(PARAM_RESPONSE_MAPPINGS + " contains an invalid JSON pointer: " + pointer);
             }
+            mappings.add(new Pair<>(QName.resolveToQName(this.namespaceService, keyValue.getFirst()), pointer));
+        }
+        return mappings;
+    }
 
-            final int statusCode = statusLine.getStatusCode();
+    /**
+     * Writes values extracted from a webhook response back onto the node for which the webhook was called. Values are converted to the
+     * data type of the target properties, and JSON pointers not found in the response leave the corresponding property unchanged. Rules
+     * are not triggered by the update so that the webhook call does not trigger itself.
+     *
+     * @param node
+     *            the node to update
+     * @param responseMappings
+     *            the mappings of property names to JSON pointers
+     * @param response
+     *            the webhook response
+     */
+    protected void applyResponseMappings(final NodeRef node, final List<Pair<QName, String>> responseMappings,
+            final WebhookResponse response)
+    {
+        final Map<QName, Serializable> properties = new HashMap<>();
+        for (final Pair<QName, String> mapping : responseMappings)
+        {
+            if (response.getValues().containsKey(mapping.getSecond()))
+            {
+                properties.put(mapping.getFirst(), response.getValues().get(mapping.getSecond()));
+            }
+            else
+            {
+                LOGGER.debug("Webhook response does not contain a value for {} mapped to property {}", mapping.getSecond(),
+                        mapping.getFirst());
+            }
+        }
 
-            if (statusCode >= 400)
+        if (!properties.isEmpty() && this.nodeService.exists(node))
+        {
+            LOGGER.debug("Writing webhook response values {} back to {}", properties, node);
+            final boolean rulesEnabled = this.ruleService.isEnabled();
+            if (rulesEnabled)
+            {
+                this.ruleService.disableRules();
+            }
+            try
             {
-                LOGGER.warn("Webhook call failed with HTTP error {} and status message {}", statusCode, statusLine.getReasonPhrase());
-                throw new ActionServiceException(
-                        "Webhook responded with HTTP error code " + statusCode + ", status message: " + statusLine.getReasonPhrase());
+                this.nodeService.addProperties(node, properties);
+            }
+            finally
+            {
+                if (rulesEnabled)
+                {
+                    this.ruleService.enableRules();
+                }
             }
         }
-        catch (final IOException ex)
+    }
+
+    protected boolean canDefer(final WebhookRequest request, final WebhookCallException failure)
+    {
+        // a rejected call has not consumed its payload, a throttled call can only be deferred if its payload can be sent again
+        return this.deferThrottledCalls && this.webhookOutbox != null && this.webhookOutbox.isEnabled()
+                && (failure instanceof WebhookCallRejectedException || (failure.isThrottled() && request.getPayload().isRepeatable()));
+    }
+
+    protected boolean isDeduplicationEnabled()
+    {
+        return this.deduplicator != null && this.deduplicator.isEnabled();
+    }
+
+    protected void recordPhase(final WebhookCallMetrics.Phase phase, final long startNanos)
+    {
+        if (this.metrics != null)
         {
-            LOGGER.warn("Webhook call failed", ex);
-            throw new ActionServiceException("Error executing webhook call", ex);
+            this.metrics.recordPhase(phase, startNanos);
         }
     }
 
@@ -376,28 +1125,24 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
      * @param model
      *            the template model to fill
      */
-    protected static void processTemplateModelArguments(final String parameterName, final String parameterValue,
-            final Map<String, Object> model)
+    protected void processTemplateModelArguments(final String parameterName, final String parameterValue, final Map<String, Object> model)
     {
-        if (parameterValue != null && !parameterValue.trim().isEmpty())
+        this.processTemplateModelArguments(this.parseKeyValueParameter(parameterName, parameterValue), model);
+    }
+
+    /**
+     * Processes already parsed arguments for a specific template model.
+     *
+     * @param arguments
+     *            the arguments
+     * @param model
+     *            the template model to fill
+     */
+    protected void processTemplateModelArguments(final List<Pair<String, String>> arguments, final Map<String, Object> model)
+    {
+        for (final Pair<String, String> keyValue : arguments)
         {
-            final String[] lines = parameterValue.split("\\n");
-            for (final String line : lines)
-            {
-                LOGGER.debug("Processing template argument line {}", line);
-                final String[] keyVals = line.split("=");
-                if (keyVals.length >= 2)
-                {
-                    final String key = keyVals[0].trim();
-                    final String value = line.substring(line.indexOf('=', key.length()) + 1).trim();
-                    model.put(key, value);
-                }
-                else
-                {
-                    throw new IllegalArgumentException(
-                            parameterName + " must be provided as multiple text lines of =-separated keys + values");
-                }
-            }
+            model.put(keyValue.getFirst(), keyValue.getSecond());
         }
     }
 
@@ -408,30 +1153,188 @@ public class WebhookCallActionExecuter extends ActionExecuterAbstractBase implem
      *            the arguments parameter name
      * @param parameterValue
      *            the arguments parameter value
-     * @param post
-     *            the post operation to parameterise with headers
+     * @param headers
+     *            the list of headers to fill
      */
-    protected static void processPostHeaders(final String parameterName, final String parameterValue, final HttpPost post)
+    protected void processPostHeaders(final String parameterName, final String parameterValue, final List<Pair<String, String>> headers)
     {
+        headers.addAll(this.parseKeyValueParameter(parameterName, parameterValue));
+    }
+
+    /**
+     * Parses a potential multi-line parameter containing key-value pairs, re-using the result of any previous parse of the same parameter
+     * value. See {@link KeyValueParameterParser} for the supported syntax.
+     *
+     * @param parameterName
+     *            the parameter name
+     * @param parameterValue
+     *            the parameter value
+     * @return the read-only list of parsed key-value pairs
+     */
+    protected List<Pair<String, String>> parseKeyValueParameter(final String parameterName, final String parameterValue)
+    {
+        List<Pair<String, String>> keyValues;
         if (parameterValue != null && !parameterValue.trim().isEmpty())
         {
-            final String[] lines = parameterValue.split("\\n");
-            for (final String line : lines)
+            synchronized (this.parsedParameters)
             {
-                LOGGER.debug("Processing headers line {}", line);
-                final String[] keyVals = line.split("=");
-                if (keyVals.length >= 2)
-                {
-                    final String key = keyVals[0].trim();
-                    final String value = line.substring(line.indexOf('=', key.length()) + 1).trim();
-                    post.addHeader(key, value);
-                }
-                else
+                keyValues = this.parsedParameters.get(parameterValue);
+            }
+
+            if (keyValues == null)
+            {
+                keyValues = KeyValueParameterParser.parse(parameterName, parameterValue);
+                synchronized (this.parsedParameters)
                 {
-                    throw new IllegalArgumentException(
-                            parameterName + " must be provided as multiple text lines of =-separated keys + values");
+                    this.parsedParameters.put(parameterValue, keyValues);
                 }
             }
         }
+        else
+        {
+            keyValues = Collections.emptyList();
+        }
+        return keyValues;
+    }
+
+    /**
+     * Instances of this class identify a batch of nodes which can be combined into a single webhook call.
+     *
+     * @author Axel Faust
+     */
+    protected static class BatchKey
+    {
+
+        protected final String url;
+
+        protected final NodeRef payloadTemplate;
+
+        protected final String payloadTemplateArguments;
+
+        protected final String payloadMimetype;
+
+        protected final String headers;
+
+        protected BatchKey(final String url, final NodeRef payloadTemplate, final String payloadTemplateArguments,
+                final String payloadMimetype, final String headers)
+        {
+            this.url = url;
+            this.payloadTemplate = payloadTemplate;
+            this.payloadTemplateArguments = payloadTemplateArguments;
+            this.payloadMimetype = payloadMimetype;
+            this.headers = headers;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.url, this.payloadTemplate, this.payloadTemplateArguments, this.payloadMimetype, this.headers);
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (obj == null || this.getClass() != obj.getClass())
+            {
+                return false;
+            }
+            final BatchKey other = (BatchKey) obj;
+            return Objects.equals(this.url, other.url) && Objects.equals(this.payloadTemplate, other.payloadTemplate)
+                    && Objects.equals(this.payloadTemplateArguments, other.payloadTemplateArguments)
+                    && Objects.equals(this.payloadMimetype, other.payloadMimetype) && Objects.equals(this.headers, other.headers);
+        }
+    }
+
+    /**
+     * Instances of this class represent the compiled parameters of a webhook call action, converted and validated once so that executions
+     * of the action only need to bind the actioned upon node and render the templates.
+     *
+     * @author Axel Faust
+     */
+    protected static class WebhookPlan
+    {
+
+        protected final Map<String, Serializable> parameterValues;
+
+        protected final String urlTemplate;
+
+        protected final boolean constantUrl;
+
+        protected final List<Pair<String, String>> urlTemplateArguments;
+
+        protected final NodeRef payloadTemplate;
+
+        protected final String rawPayloadTemplateArguments;
+
+        protected final List<Pair<String, String>> payloadTemplateArguments;
+
+        protected final String payloadMimetype;
+
+        protected final ContentType payloadContentType;
+
+        protected final String rawHeaders;
+
+        protected final List<Pair<String, String>> headers;
+
+        protected final boolean batch;
+
+        protected final List<Pair<QName, String>> responseMappings;
+
+        protected final List<String> responsePointers;
+
+        protected WebhookPlan(final Map<String, Serializable> parameterValues, final String urlTemplate,
+                final List<Pair<String, String>> urlTemplateArguments, final NodeRef payloadTemplate,
+                final String rawPayloadTemplateArguments, final List<Pair<String, String>> payloadTemplateArguments,
+                final String payloadMimetype, final ContentType payloadContentType, final String rawHeaders,
+                final List<Pair<String, String>> headers, final boolean batch, final List<Pair<QName, String>> responseMappings)
+        {
+            this.parameterValues = new HashMap<>(parameterValues);
+            this.urlTemplate = urlTemplate;
+            this.constantUrl = WebhookTemplateCache.isConstant(urlTemplate);
+            this.urlTemplateArguments = urlTemplateArguments;
+            this.payloadTemplate = payloadTemplate;
+            this.rawPayloadTemplateArguments = rawPayloadTemplateArguments;
+            this.payloadTemplateArguments = payloadTemplateArguments;
+            this.payloadMimetype = payloadMimetype;
+            this.payloadContentType = payloadContentType;
+            this.rawHeaders = rawHeaders;
+            this.headers = headers;
+            this.batch = batch;
+            this.responseMappings = Collections.unmodifiableList(new ArrayList<>(responseMappings));
+
+            final List<String> responsePointers = new ArrayList<>(responseMappings.size());
+            responseMappings.forEach(mapping -> responsePointers.add(mapping.getSecond()));
+            this.responsePointers = Collections.unmodifiableList(responsePointers);
+        }
+
+        protected WebhookPlan(final Map<String, Serializable> parameterValues, final WebhookPlan plan)
+        {
+            this.parameterValues = new HashMap<>(parameterValues);
+            this.urlTemplate = plan.urlTemplate;
+            this.constantUrl = plan.constantUrl;
+            this.urlTemplateArguments = plan.urlTemplateArguments;
+            this.payloadTemplate = plan.payloadTemplate;
+            this.rawPayloadTemplateArguments = plan.rawPayloadTemplateArguments;
+            this.payloadTemplateArguments = plan.payloadTemplateArguments;
+            this.payloadMimetype = plan.payloadMimetype;
+            this.payloadContentType = plan.payloadContentType;
+            this.rawHeaders = plan.rawHeaders;
+            this.headers = plan.headers;
+            this.batch = plan.batch;
+            this.responseMappings = plan.responseMappings;
+            this.responsePointers = plan.responsePointers;
+        }
     }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.Date;
+
+import org.alfresco.service.cmr.action.ActionServiceException;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * Instances of this exception signal the failure of a webhook call, either due to an I/O error or an HTTP error status returned by the
+ * target endpoint.
+ *
+ * @author Axel Faust
+ */
+public class WebhookCallException extends ActionServiceException
+{
+
+    /**
+     * The pseudo status code used when a webhook call failed without receiving a response from the endpoint.
+     */
+    public static final int NO_RESPONSE = -1;
+
+    /**
+     * The pseudo delay used when an endpoint did not specify after which delay a failed webhook call may be retried.
+     */
+    public static final long NO_RETRY_AFTER = -1;
+
+    private static final long serialVersionUID = -1758385950302405735L;
+
+    protected final int statusCode;
+
+    protected final long retryAfter;
+
+    /**
+     * Creates a new instance of this exception for an HTTP error status.
+     *
+     * @param msgId
+     *            the message
+     * @param statusCode
+     *            the HTTP status code returned by the endpoint
+     */
+    public WebhookCallException(final String msgId, final int statusCode)
+    {
+        this(msgId, statusCode, NO_RETRY_AFTER);
+    }
+
+    /**
+     * Creates a new instance of this exception for an HTTP error status with a known delay for retries.
+     *
+     * @param msgId
+     *            the message
+     * @param statusCode
+     *            the HTTP status code returned by the endpoint
+     * @param retryAfter
+     *            the delay (in milliseconds) after which the call may be attempted again, or {@link #NO_RETRY_AFTER} if not known
+     */
+    public WebhookCallException(final String msgId, final int statusCode, final long retryAfter)
+    {
+        super(msgId);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Creates a new instance of this exception for a call which failed without receiving a response.
+     *
+     * @param msgId
+     *            the message
+     * @param cause
+     *            the cause of the failure
+     */
+    public WebhookCallException(final String msgId, final Throwable cause)
+    {
+        super(msgId, cause);
+        this.statusCode = NO_RESPONSE;
+        this.retryAfter = NO_RETRY_AFTER;
+    }
+
+    /**
+     * Parses the value of a {@code Retry-After} response header, which may either specify a delay in seconds or an HTTP date.
+     *
+     * @param headerValue
+     *            the value of the header - may be {@code null}
+     * @return the delay (in milliseconds) after which a call may be attempted again, or {@link #NO_RETRY_AFTER} if the value is missing
+     *         or invalid
+     */
+    public static long parseRetryAfter(final String headerValue)
+    {
+        long retryAfter = NO_RETRY_AFTER;
+        if (headerValue != null && !headerValue.trim().isEmpty())
+        {
+            final String value = headerValue.trim();
+            if (value.chars().allMatch(Character::isDigit))
+            {
+                try
+                {
+                    retryAfter = Long.parseLong(value) * 1000;
+                }
+                catch (final NumberFormatException nfe)
+                {
+                    // absurdly large value - treat as missing
+                }
+            }
+            else
+            {
+                final Date date = DateUtils.parseDate(value);
+                if (date != null)
+                {
+                    retryAfter = Math.max(0, date.getTime() - System.currentTimeMillis());
+                }
+            }
+        }
+        return retryAfter;
+    }
+
+    /**
+     * @return the HTTP status code returned by the endpoint or {@link #NO_RESPONSE} if no response was received
+     */
+    public int getStatusCode()
+    {
+        return this.statusCode;
+    }
+
+    /**
+     * @return the delay (in milliseconds) after which the call may be attempted again, or {@link #NO_RETRY_AFTER} if not known
+     */
+    public long getRetryAfter()
+    {
+        return this.retryAfter;
+    }
+
+    /**
+     * Checks whether the endpoint signalled that it is overloaded or enforcing a rate limit ({@code 429 Too Many Requests} or
+     * {@code 503 Service Unavailable}).
+     *
+     * @return {@code true} if the endpoint throttled the call, {@code false} otherwise
+     */
+    public boolean isThrottled()
+    {
+        return this.statusCode == 429 || this.statusCode == 503;
+    }
+
+    /**
+     * Checks whether the failure may be transient, so that a later retry of the same call may succeed.
+     *
+     * @return {@code true} if the call may be retried, {@code false} if the endpoint permanently rejected the call
+     */
+    public boolean isRetryable()
+    {
+        // client errors are permanent, except for timeouts / throttling
+        return this.statusCode < 400 || this.statusCode >= 500 || this.statusCode == 408 || this.statusCode == 429;
+    }
+}
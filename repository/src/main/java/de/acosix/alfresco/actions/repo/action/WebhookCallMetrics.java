@@ -0,0 +1,390 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instances of this class collect metrics about webhook calls, i.e. the timings of the individual phases of calls, the responses of
+ * endpoints, the sizes of payloads and the number of calls in progress. All metrics are kept in memory and can optionally be forwarded to
+ * {@link WebhookMetricsSink sinks} for integration with external metrics registries.
+ *
+ * @author Axel Faust
+ */
+public class WebhookCallMetrics implements WebhookCallMetricsMBean
+{
+
+    /**
+     * The phases of a webhook call for which timings are recorded.
+     *
+     * @author Axel Faust
+     */
+    public static enum Phase
+    {
+        /**
+         * Building the default template model.
+         */
+        MODEL_BUILDING,
+        /**
+         * Rendering the URL template.
+         */
+        URL_RENDERING,
+        /**
+         * Rendering the payload template - payloads are fully rendered into a buffer before the HTTP request is sent.
+         */
+        PAYLOAD_RENDERING,
+        /**
+         * Leasing a connection from the connection pool.
+         */
+        CONNECTION_LEASE,
+        /**
+         * Performing the HTTP request, including leasing a connection and receiving the response.
+         */
+        HTTP_REQUEST;
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebhookCallMetrics.class);
+
+    private static final long[] PAYLOAD_SIZE_BUCKETS = { 1024, 4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024 };
+
+    protected final Map<Phase, PhaseTimer> phaseTimers;
+
+    protected final ConcurrentMap<String, ConcurrentMap<Integer, AtomicLong>> endpointStatusCounts = new ConcurrentHashMap<>();
+
+    protected final AtomicLongArray payloadSizeCounts = new AtomicLongArray(PAYLOAD_SIZE_BUCKETS.length + 1);
+
+    protected final AtomicLong totalPayloadBytes = new AtomicLong();
+
+    protected final AtomicInteger inFlightCalls = new AtomicInteger();
+
+    protected final AtomicInteger maxInFlightCalls = new AtomicInteger();
+
+    protected boolean enabled = true;
+
+    protected List<WebhookMetricsSink> sinks = Collections.emptyList();
+
+    /**
+     * Creates a new instance of this class.
+     */
+    public WebhookCallMetrics()
+    {
+        final Map<Phase, PhaseTimer> phaseTimers = new TreeMap<>();
+        for (final Phase phase : Phase.values())
+        {
+            phaseTimers.put(phase, new PhaseTimer());
+        }
+        this.phaseTimers = Collections.unmodifiableMap(phaseTimers);
+    }
+
+    /**
+     * @param enabled
+     *            {@code true} if metrics should be collected, {@code false} otherwise
+     */
+    public void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param sinks
+     *            the sinks to which to forward individual measurements
+     */
+    public void setSinks(final List<WebhookMetricsSink> sinks)
+    {
+        this.sinks = sinks != null ? new ArrayList<>(sinks) : Collections.emptyList();
+    }
+
+    /**
+     * Records the duration of a phase of a webhook call.
+     *
+     * @param phase
+     *            the phase
+     * @param startNanos
+     *            the start of the phase as determined by {@link System#nanoTime()}
+     */
+    public void recordPhase(final Phase phase, final long startNanos)
+    {
+        if (this.enabled)
+        {
+            final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            this.phaseTimers.get(phase).record(durationMillis);
+
+            for (final WebhookMetricsSink sink : this.sinks)
+            {
+                try
+                {
+                    sink.recordPhase(phase, durationMillis);
+                }
+                catch (final RuntimeException ex)
+                {
+                    LOGGER.debug("Metrics sink {} failed to record phase timing", sink, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the response of an endpoint to a webhook call.
+     *
+     * @param route
+     *            the route of the endpoint in the form {@code scheme://host:port}
+     * @param statusCode
+     *            the HTTP status code of the response or {@link WebhookCallException#NO_RESPONSE} if no response was received
+     */
+    public void recordResponse(final String route, final int statusCode)
+    {
+        if (this.enabled)
+        {
+            this.endpointStatusCounts.computeIfAbsent(route, r -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(statusCode, s -> new AtomicLong()).incrementAndGet();
+
+            for (final WebhookMetricsSink sink : this.sinks)
+            {
+                try
+                {
+                    sink.recordResponse(route, statusCode);
+                }
+                catch (final RuntimeException ex)
+                {
+                    LOGGER.debug("Metrics sink {} failed to record response", sink, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the size of the payload of a webhook call.
+     *
+     * @param route
+     *            the route of the endpoint in the form {@code scheme://host:port}
+     * @param bytes
+     *            the size of the (uncompressed) payload in bytes
+     */
+    public void recordPayloadSize(final String route, final long bytes)
+    {
+        if (this.enabled)
+        {
+            int bucket = 0;
+            while (bucket < PAYLOAD_SIZE_BUCKETS.length && bytes > PAYLOAD_SIZE_BUCKETS[bucket])
+            {
+                bucket++;
+            }
+            this.payloadSizeCounts.incrementAndGet(bucket);
+            this.totalPayloadBytes.addAndGet(bytes);
+
+            for (final WebhookMetricsSink sink : this.sinks)
+            {
+                try
+                {
+                    sink.recordPayloadSize(route, bytes);
+                }
+                catch (final RuntimeException ex)
+                {
+                    LOGGER.debug("Metrics sink {} failed to record payload size", sink, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the start of a webhook call. Each invocation must be paired with an invocation of {@link #callFinished()}.
+     */
+    public void callStarted()
+    {
+        final int inFlight = this.inFlightCalls.incrementAndGet();
+        this.maxInFlightCalls.accumulateAndGet(inFlight, Math::max);
+    }
+
+    /**
+     * Records the end of a webhook call.
+     */
+    public void callFinished()
+    {
+        this.inFlightCalls.decrementAndGet();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getPhaseTimings()
+    {
+        final List<String> timings = new ArrayList<>();
+        for (final Entry<Phase, PhaseTimer> phaseTimer : this.phaseTimers.entrySet())
+        {
+            timings.add(phaseTimer.getKey() + ": " + phaseTimer.getValue());
+        }
+        return timings;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getEndpointStatusCounts()
+    {
+        final List<String> statusCounts = new ArrayList<>();
+        for (final Entry<String, ConcurrentMap<Integer, AtomicLong>> endpoint : new TreeMap<>(this.endpointStatusCounts).entrySet())
+        {
+            final StringBuilder builder = new StringBuilder();
+            builder.append(endpoint.getKey());
+            builder.append(':');
+            for (final Entry<Integer, AtomicLong> statusCount : new TreeMap<>(endpoint.getValue()).entrySet())
+            {
+                final int statusCode = statusCount.getKey().intValue();
+                builder.append(' ');
+                builder.append(statusCode == WebhookCallException.NO_RESPONSE ? "noResponse" : String.valueOf(statusCode));
+                builder.append('=');
+                builder.append(statusCount.getValue().get());
+            }
+            statusCounts.add(builder.toString());
+        }
+        return statusCounts;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getPayloadSizeHistogram()
+    {
+        final List<String> histogram = new ArrayList<>();
+        for (int bucket = 0; bucket <= PAYLOAD_SIZE_BUCKETS.length; bucket++)
+        {
+            final String label = bucket < PAYLOAD_SIZE_BUCKETS.length ? "<= " + (PAYLOAD_SIZE_BUCKETS[bucket] / 1024) + " KiB"
+                    : "> " + (PAYLOAD_SIZE_BUCKETS[PAYLOAD_SIZE_BUCKETS.length - 1] / 1024) + " KiB";
+            histogram.add(label + ": " + this.payloadSizeCounts.get(bucket));
+        }
+        return histogram;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTotalPayloadBytes()
+    {
+        return this.totalPayloadBytes.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInFlightCalls()
+    {
+        return this.inFlightCalls.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxInFlightCalls()
+    {
+        return this.maxInFlightCalls.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset()
+    {
+        for (final PhaseTimer phaseTimer : this.phaseTimers.values())
+        {
+            phaseTimer.reset();
+        }
+        this.endpointStatusCounts.clear();
+        for (int bucket = 0; bucket < this.payloadSizeCounts.length(); bucket++)
+        {
+            this.payloadSizeCounts.set(bucket, 0);
+        }
+        this.totalPayloadBytes.set(0);
+        this.maxInFlightCalls.set(this.inFlightCalls.get());
+    }
+
+    /**
+     * Instances of this class aggregate the timings of a single phase.
+     *
+     * @author Axel Faust
+     */
+    protected static class PhaseTimer
+    {
+
+        protected final AtomicLong count = new AtomicLong();
+
+        protected final AtomicLong totalTime = new AtomicLong();
+
+        protected final AtomicLong maxTime = new AtomicLong();
+
+        protected void record(final long durationMillis)
+        {
+            this.count.incrementAndGet();
+            this.totalTime.addAndGet(durationMillis);
+            this.maxTime.accumulateAndGet(durationMillis, Math::max);
+        }
+
+        protected void reset()
+        {
+            this.count.set(0);
+            this.totalTime.set(0);
+            this.maxTime.set(0);
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            final long count = this.count.get();
+            final StringBuilder builder = new StringBuilder();
+            builder.append("count=");
+            builder.append(count);
+            builder.append(", totalTime=");
+            builder.append(this.totalTime.get());
+            builder.append(" ms, averageTime=");
+            builder.append(count > 0 ? this.totalTime.get() / count : 0);
+            builder.append(" ms, maxTime=");
+            builder.append(this.maxTime.get());
+            builder.append(" ms");
+            return builder.toString();
+        }
+    }
+}
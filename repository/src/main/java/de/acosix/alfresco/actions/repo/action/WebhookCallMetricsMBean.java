@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link WebhookCallMetrics webhook call metrics}.
+ *
+ * @author Axel Faust
+ */
+public interface WebhookCallMetricsMBean
+{
+
+    /**
+     * @return textual descriptions of the timings of the individual phases of webhook calls
+     */
+    List<String> getPhaseTimings();
+
+    /**
+     * @return textual descriptions of the number of responses per endpoint and HTTP status code
+     */
+    List<String> getEndpointStatusCounts();
+
+    /**
+     * @return textual descriptions of the number of payloads per size bucket
+     */
+    List<String> getPayloadSizeHistogram();
+
+    /**
+     * @return the total size of all payloads sent in bytes
+     */
+    long getTotalPayloadBytes();
+
+    /**
+     * @return the number of webhook calls currently in progress
+     */
+    int getInFlightCalls();
+
+    /**
+     * @return the highest number of webhook calls in progress at the same time
+     */
+    int getMaxInFlightCalls();
+
+    /**
+     * Resets all metrics, except for the number of webhook calls currently in progress.
+     */
+    void reset();
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+/**
+ * Instances of this exception signal that a webhook call was rejected locally without contacting the target endpoint, e.g. because the
+ * circuit breaker for the endpoint is open, its concurrency limit has been reached or its rate limit would have been exceeded. Such calls
+ * have not been attempted and can be deferred without counting as a failed delivery attempt.
+ *
+ * @author Axel Faust
+ */
+public class WebhookCallRejectedException extends WebhookCallException
+{
+
+    private static final long serialVersionUID = -3102934470613880372L;
+
+    /**
+     * Creates a new instance of this exception.
+     *
+     * @param msgId
+     *            the message
+     * @param retryAfter
+     *            the delay (in milliseconds) after which the call may be attempted again
+     */
+    public WebhookCallRejectedException(final String msgId, final long retryAfter)
+    {
+        super(msgId, NO_RESPONSE, Math.max(0, retryAfter));
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.util.Pair;
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.http.entity.ContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Instances of this class suppress duplicate webhook calls, i.e. calls with identical URL, content type, headers and payload, within a
+ * configurable time window. Calls are identified by a content hash, which also serves as an idempotency key that is sent to the endpoint
+ * so that it may perform its own deduplication.
+ *
+ * Calls are only registered as delivered once the transaction in which they were generated has been committed, so that calls of a
+ * rolled back transaction do not suppress later calls, and calls which fail to be delivered are {@link #unregister(String) unregistered}
+ * so that they do not suppress a retry. Identical calls within the same transaction are coalesced into one. Registered calls are kept in a
+ * (potentially cluster-wide) {@link SimpleCache cache}.
+ *
+ * @author Axel Faust
+ */
+public class WebhookDeduplicator implements InitializingBean, WebhookDeduplicatorMBean
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebhookDeduplicator.class);
+
+    private static final String TXN_KEY_PENDING_KEYS = WebhookDeduplicator.class.getName() + "-pendingKeys";
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    protected final AtomicLong acceptedCount = new AtomicLong();
+
+    protected final AtomicLong suppressedCount = new AtomicLong();
+
+    protected boolean enabled;
+
+    protected SimpleCache<String, Long> deliveryCache;
+
+    protected long window = 60000;
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "deliveryCache", this.deliveryCache);
+
+        try
+        {
+            MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+        catch (final NoSuchAlgorithmException nsaex)
+        {
+            throw new IllegalStateException(HASH_ALGORITHM + " is not supported by this JVM", nsaex);
+        }
+    }
+
+    /**
+     * @param enabled
+     *            {@code true} if duplicate webhook calls should be suppressed, {@code false} otherwise
+     */
+    public void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return {@code true} if duplicate webhook calls should be suppressed, {@code false} otherwise
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * @param deliveryCache
+     *            the cache of recently delivered calls, keyed by their idempotency key and containing the timestamp of their registration
+     */
+    public void setDeliveryCache(final SimpleCache<String, Long> deliveryCache)
+    {
+        this.deliveryCache = deliveryCache;
+    }
+
+    /**
+     * @param window
+     *            the time window (in milliseconds) within which identical calls are suppressed
+     */
+    public void setWindow(final long window)
+    {
+        this.window = window;
+    }
+
+    /**
+     * Computes the idempotency key of a webhook call.
+     *
+     * @param url
+     *            the URL of the call
+     * @param contentType
+     *            the content type of the payload
+     * @param headers
+     *            the custom headers of the call
+     * @param payload
+     *            the payload of the call - must be {@link WebhookPayload#isRepeatable() repeatable}
+     * @return the idempotency key
+     */
+    public String computeKey(final String url, final ContentType contentType, final Iterable<Pair<String, String>> headers,
+            final WebhookPayload payload)
+    {
+        ParameterCheck.mandatoryString("url", url);
+        ParameterCheck.mandatory("contentType", contentType);
+        ParameterCheck.mandatory("headers", headers);
+        ParameterCheck.mandatory("payload", payload);
+
+        if (!payload.isRepeatable())
+        {
+            throw new IllegalStateException("Idempotency key can only be computed for repeatable payloads");
+        }
+
+        try
+        {
+            final MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            update(digest, url);
+            update(digest, contentType.toString());
+            for (final Pair<String, String> header : headers)
+            {
+                update(digest, header.getFirst());
+                update(digest, header.getSecond());
+            }
+
+            try (OutputStream os = new DigestOutputStream(new NullOutputStream(), digest))
+            {
+                payload.writeTo(os);
+            }
+
+            return Hex.encodeHexString(digest.digest());
+        }
+        catch (final NoSuchAlgorithmException | IOException ex)
+        {
+            throw new AlfrescoRuntimeException("Failed to compute idempotency key", ex);
+        }
+    }
+
+    /**
+     * Registers a webhook call for delivery unless an identical call has already been registered within the configured time window.
+     *
+     * @param idempotencyKey
+     *            the idempotency key of the call
+     * @return {@code true} if the call should be delivered, {@code false} if it is a duplicate and should be suppressed
+     */
+    public boolean register(final String idempotencyKey)
+    {
+        ParameterCheck.mandatoryString("idempotencyKey", idempotencyKey);
+
+        final long now = System.currentTimeMillis();
+        final Long registeredAt = this.deliveryCache.get(idempotencyKey);
+        boolean accepted = registeredAt == null || now - registeredAt.longValue() > this.window;
+
+        if (accepted)
+        {
+            if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE)
+            {
+                this.deliveryCache.put(idempotencyKey, Long.valueOf(now));
+            }
+            else
+            {
+                final Set<String> pendingKeys = TransactionalResourceHelper.getSet(TXN_KEY_PENDING_KEYS);
+                if (TransactionalResourceHelper.incrementCount(TXN_KEY_PENDING_KEYS) == 1)
+                {
+                    AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                    {
+
+                        /**
+                         *
+                         * {@inheritDoc}
+                         */
+                        @Override
+                        public void afterCommit()
+                        {
+                            final Long committedAt = Long.valueOf(System.currentTimeMillis());
+                            for (final String pendingKey : pendingKeys)
+                            {
+                                WebhookDeduplicator.this.deliveryCache.put(pendingKey, committedAt);
+                            }
+                        }
+                    });
+                }
+                // coalesce identical calls within the same transaction
+                accepted = pendingKeys.add(idempotencyKey);
+            }
+        }
+
+        if (accepted)
+        {
+            this.acceptedCount.incrementAndGet();
+        }
+        else
+        {
+            this.suppressedCount.incrementAndGet();
+            LOGGER.debug("Suppressing duplicate webhook call with idempotency key {}", idempotencyKey);
+        }
+        return accepted;
+    }
+
+    /**
+     * Unregisters a webhook call which failed to be delivered, so that an identical call is no longer suppressed as a duplicate. If the
+     * call was registered in the current transaction, it is simply not registered as delivered when the transaction is committed.
+     *
+     * @param idempotencyKey
+     *            the idempotency key of the call
+     */
+    public void unregister(final String idempotencyKey)
+    {
+        ParameterCheck.mandatoryString("idempotencyKey", idempotencyKey);
+
+        boolean pending = false;
+        if (AlfrescoTransactionSupport.getTransactionReadState() != TxnReadState.TXN_NONE)
+        {
+            pending = TransactionalResourceHelper.getSet(TXN_KEY_PENDING_KEYS).remove(idempotencyKey);
+        }
+
+        if (!pending)
+        {
+            this.deliveryCache.remove(idempotencyKey);
+        }
+        LOGGER.debug("Unregistered failed webhook call with idempotency key {}", idempotencyKey);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAcceptedCount()
+    {
+        return this.acceptedCount.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSuppressedCount()
+    {
+        return this.suppressedCount.get();
+    }
+
+    private static void update(final MessageDigest digest, final String value)
+    {
+        if (value != null)
+        {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        // separator to avoid ambiguities between adjacent values
+        digest.update((byte) 0);
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+/**
+ * Management interface of the {@link WebhookDeduplicator webhook deduplicator}.
+ *
+ * @author Axel Faust
+ */
+public interface WebhookDeduplicatorMBean
+{
+
+    /**
+     * @return the total number of webhook calls accepted for delivery
+     */
+    long getAcceptedCount();
+
+    /**
+     * @return the total number of webhook calls suppressed as duplicates
+     */
+    long getSuppressedCount();
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.alfresco.repo.action.ParameterDefinitionImpl;
+import org.alfresco.service.cmr.action.Action;
+import org.alfresco.service.cmr.action.ParameterDefinition;
+import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
+import org.alfresco.util.Pair;
+import org.alfresco.util.PropertyCheck;
+import org.apache.http.entity.ContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instances of this class call the same webhook payload on multiple targets. The payload is rendered only once and shared by all targets,
+ * while each target has its own URL template and optional additional headers. When webhook calls are dispatched
+ * {@link DispatchMode#SYNCHRONOUS synchronously}, all targets are called in parallel, each bounded by a timeout, and the action only fails
+ * if the results of the calls do not satisfy the configured {@link SuccessPolicy success policy}. In any other dispatch mode, the calls
+ * are dispatched individually and the success policy does not apply.
+ *
+ * A call which exceeds the timeout counts as failed and is cancelled. With a non-blocking transport, cancelling aborts the HTTP exchange.
+ * With a blocking transport, a call which has not yet been started is skipped, while the thread of a running call is merely interrupted -
+ * this does not abort in-flight socket I/O, which remains bounded by the socket timeout of the transport.
+ *
+ * @author Axel Faust
+ */
+public class WebhookFanOutActionExecuter extends WebhookCallActionExecuter
+{
+
+    /**
+     * The policies determining which results of the individual target calls constitute a successful execution of the action.
+     *
+     * @author Axel Faust
+     */
+    public static enum SuccessPolicy
+    {
+        /**
+         * The calls to all targets must succeed.
+         */
+        ALL,
+        /**
+         * The call to at least one target must succeed.
+         */
+        ANY,
+        /**
+         * The calls to at least a configured number of targets must succeed.
+         */
+        QUORUM;
+    }
+
+    public static final String NAME = "acosix-actions.webhookFanOut";
+
+    public static final String PARAM_TARGETS = "targets";
+
+    public static final String PARAM_TARGET_HEADERS = "targetHeaders";
+
+    public static final String PARAM_SUCCESS_POLICY = "successPolicy";
+
+    public static final String PARAM_QUORUM = "quorum";
+
+    public static final String PARAM_TARGET_TIMEOUT = "targetTimeout";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebhookFanOutActionExecuter.class);
+
+    protected ThreadPoolExecutor threadPoolExecutor;
+
+    protected long defaultTargetTimeout = 30000;
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        super.afterPropertiesSet();
+
+        if (this.dispatchMode == DispatchMode.SYNCHRONOUS && !this.webhookTransport.isNonBlocking())
+        {
+            PropertyCheck.mandatory(this, "threadPoolExecutor", this.threadPoolExecutor);
+        }
+    }
+
+    /**
+     * @param threadPoolExecutor
+     *            the thread pool in which to perform parallel calls if the webhook transport does not support non-blocking calls
+     */
+    public void setThreadPoolExecutor(final ThreadPoolExecutor threadPoolExecutor)
+    {
+        this.threadPoolExecutor = threadPoolExecutor;
+    }
+
+    /**
+     * @param defaultTargetTimeout
+     *            the time (in milliseconds) to wait for the response of each target if an action does not specify a timeout - a
+     *            non-positive value waits indefinitely (the timeout does not abort in-flight I/O of blocking transports)
+     */
+    public void setDefaultTargetTimeout(final long defaultTargetTimeout)
+    {
+        this.defaultTargetTimeout = defaultTargetTimeout;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void executeImpl(final Action action, final NodeRef actionedUponNodeRef)
+    {
+        final FanOutPlan plan = (FanOutPlan) this.getPlan(action);
+
+        final long modelStart = System.nanoTime();
+        final Map<String, Object> defaultModel = this.buildDefaultModel();
+        this.recordPhase(WebhookCallMetrics.Phase.MODEL_BUILDING, modelStart);
+
+        final ContentType contentType = plan.payloadContentType != null ? plan.payloadContentType
+                : this.determineTemplateContentType(plan.payloadTemplate);
+        final WebhookPayload payload = this.generatePayload(actionedUponNodeRef, plan.payloadTemplate, plan.payloadTemplateArguments,
+                contentType, defaultModel);
+
+        final List<WebhookRequest> requests = new ArrayList<>(plan.targets.size());
+        try
+        {
+            for (final FanOutTarget target : plan.targets)
+            {
+                final String url = this.generateURL(actionedUponNodeRef, target.plan, defaultModel);
+                LOGGER.debug("Preparing call to webhook target {} at URL {}", target.name, url);
+                requests.add(this.buildRequest(url, contentType, target.headers, payload));
+            }
+        }
+        catch (final RuntimeException ex)
+        {
+            payload.release();
+            throw ex;
+        }
+
+        if (this.dispatchMode == DispatchMode.SYNCHRONOUS)
+        {
+            final List<RuntimeException> failures = this.callTargets(requests, plan.targetTimeout);
+            this.evaluateResults(plan, requests, failures);
+        }
+        else
+        {
+            LOGGER.debug("Dispatching calls to {} webhook targets in mode {} - success policy {} does not apply", requests.size(),
+                    this.dispatchMode, plan.successPolicy);
+            for (final WebhookRequest request : requests)
+            {
+                this.dispatchWebhook(request);
+            }
+        }
+    }
+
+    /**
+     * Compiles the parameters of a fan-out action into a {@link FanOutPlan plan}, compiling a regular plan for each target which shares
+     * the payload parameters of the action.
+     */
+    @Override
+    protected WebhookPlan compilePlan(final Map<String, Serializable> parameterValues, final boolean validateTemplates)
+    {
+        final String targetsValue = DefaultTypeConverter.INSTANCE.convert(String.class, parameterValues.get(PARAM_TARGETS));
+        final String targetHeadersValue = DefaultTypeConverter.INSTANCE.convert(String.class, parameterValues.get(PARAM_TARGET_HEADERS));
+        final String successPolicyValue = DefaultTypeConverter.INSTANCE.convert(String.class, parameterValues.get(PARAM_SUCCESS_POLICY));
+        final Integer quorum = DefaultTypeConverter.INSTANCE.convert(Integer.class, parameterValues.get(PARAM_QUORUM));
+        final Long targetTimeout = DefaultTypeConverter.INSTANCE.convert(Long.class, parameterValues.get(PARAM_TARGET_TIMEOUT));
+
+        final List<Pair<String, String>> targetUrls = this.parseKeyValueParameter(PARAM_TARGETS, targetsValue);
+        if (targetUrls.isEmpty())
+        {
+            throw new IllegalArgumentException(PARAM_TARGETS + " must be provided as an action parameter");
+        }
+
+        final Map<String, List<Pair<String, String>>> targetHeaders = new LinkedHashMap<>();
+        for (final Pair<String, String> targetUrl : targetUrls)
+        {
+            if (targetHeaders.put(targetUrl.getFirst(), new ArrayList<>()) != null)
+            {
+                throw new IllegalArgumentException(PARAM_TARGETS + " contains duplicate target " + targetUrl.getFirst());
+            }
+        }
+        for (final Pair<String, String> targetHeader : this.parseKeyValueParameter(PARAM_TARGET_HEADERS, targetHeadersValue))
+        {
+            // keys have the form target.Header-Name
+            final String key = targetHeader.getFirst();
+            final int separator = key.indexOf('.');
+            final List<Pair<String, String>> headers = separator > 0 ? targetHeaders.get(key.substring(0, separator)) : null;
+            if (headers == null || separator == key.length() - 1)
+            {
+                throw new IllegalArgumentException(PARAM_TARGET_HEADERS + " contains invalid key " + key
+                        + " - keys must consist of the name of a target and a header name, separated by a dot");
+            }
+            headers.add(new Pair<>(key.substring(separator + 1), targetHeader.getSecond()));
+        }
+
+        final SuccessPolicy successPolicy;
+        try
+        {
+            successPolicy = successPolicyValue != null && !successPolicyValue.trim().isEmpty()
+                    ? SuccessPolicy.valueOf(successPolicyValue.trim().toUpperCase(Locale.ENGLISH))
+                    : SuccessPolicy.ALL;
+        }
+        catch (final IllegalArgumentException iae)
+        {
+            throw new IllegalArgumentException(PARAM_SUCCESS_POLICY + " " + successPolicyValue + " is not supported", iae);
+        }
+
+        final int requiredSuccesses;
+        switch (successPolicy)
+        {
+            case ANY:
+                requiredSuccesses = 1;
+                break;
+            case QUORUM:
+                if (quorum == null || quorum.intValue() < 1 || quorum.intValue() > targetUrls.size())
+                {
+                    throw new IllegalArgumentException(
+                            PARAM_QUORUM + " must be provided as a number between 1 and the number of targets (" + targetUrls.size() + ")");
+                }
+                requiredSuccesses = quorum.intValue();
+                break;
+            case ALL:
+            default:
+                requiredSuccesses = targetUrls.size();
+        }
+
+        final List<FanOutTarget> targets = new ArrayList<>(targetUrls.size());
+        for (final Pair<String, String> targetUrl : targetUrls)
+        {
+            final Map<String, Serializable> targetParameterValues = new HashMap<>(parameterValues);
+            targetParameterValues.put(PARAM_URL_TEMPLATE, targetUrl.getSecond());
+            // parsed / validated templates and parameters are cached, so compiling the shared parts for each target is cheap
+            final WebhookPlan targetPlan = super.compilePlan(targetParameterValues, validateTemplates);
+
+            final List<Pair<String, String>> headers = new ArrayList<>(targetPlan.headers);
+            headers.addAll(targetHeaders.get(targetUrl.getFirst()));
+            targets.add(new FanOutTarget(targetUrl.getFirst(), targetPlan, Collections.unmodifiableList(headers)));
+        }
+
+        return new FanOutPlan(parameterValues, targets, successPolicy, requiredSuccesses,
+                targetTimeout != null ? targetTimeout.longValue() : this.defaultTargetTimeout);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void addParameterDefinitions(final List<ParameterDefinition> paramList)
+    {
+        paramList.add(new ParameterDefinitionImpl(PARAM_TARGETS, DataTypeDefinition.TEXT, true, this.getParamDisplayLabel(PARAM_TARGETS)));
+        paramList.add(new ParameterDefinitionImpl(PARAM_TARGET_HEADERS, DataTypeDefinition.TEXT, false,
+                this.getParamDisplayLabel(PARAM_TARGET_HEADERS)));
+        paramList.add(new ParameterDefinitionImpl(PARAM_URL_TEMPLATE_ARGUMENTS, DataTypeDefinition.TEXT, false,
+                this.getParamDisplayLabel(PARAM_URL_TEMPLATE_ARGUMENTS)));
+        paramList.add(new ParameterDefinitionImpl(PARAM_PAYLOAD_TEMPLATE, DataTypeDefinition.NODE_REF, true,
+                this.getParamDisplayLabel(PARAM_PAYLOAD_TEMPLATE), false, WebhookCallActionExecuter.NAME + ".templates"));
+        paramList.add(new ParameterDefinitionImpl(PARAM_PAYLOAD_TEMPLATE_ARGUMENTS, DataTypeDefinition.TEXT, false,
+                this.getParamDisplayLabel(PARAM_PAYLOAD_TEMPLATE_ARGUMENTS)));
+        paramList.add(new ParameterDefinitionImpl(PARAM_PAYLOAD_MIMETYPE, DataTypeDefinition.TEXT, false,
+                this.getParamDisplayLabel(PARAM_PAYLOAD_MIMETYPE), false, WebhookCallActionExecuter.NAME + ".allowedMimetypes"));
+        paramList.add(new ParameterDefinitionImpl(PARAM_HEADERS, DataTypeDefinition.TEXT, false, this.getParamDisplayLabel(PARAM_HEADERS)));
+        paramList.add(new ParameterDefinitionImpl(PARAM_SUCCESS_POLICY, DataTypeDefinition.TEXT, false,
+                this.getParamDisplayLabel(PARAM_SUCCESS_POLICY), false, NAME + ".successPolicies"));
+        paramList.add(new ParameterDefinitionImpl(PARAM_QUORUM, DataTypeDefinition.INT, false, this.getParamDisplayLabel(PARAM_QUORUM)));
+        paramList.add(new ParameterDefinitionImpl(PARAM_TARGET_TIMEOUT, DataTypeDefinition.LONG, false,
+                this.getParamDisplayLabel(PARAM_TARGET_TIMEOUT)));
+    }
+
+    /**
+     * Creates the payload shared by the calls to all targets. Since the payload is used by multiple concurrent calls, it is always
+     * rendered into a buffer, which is kept in memory unless calls are performed synchronously, as only synchronous calls can determine
+     * when all targets are done with the payload and release any temporary file.
+     */
+    @Override
+    protected WebhookPayload createPayload(final StreamingWebhookPayload.PayloadRenderer renderer, final ContentType contentType)
+    {
+        final Charset charset = contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+        final WebhookPayload payload;
+        if (this.dispatchMode == DispatchMode.SYNCHRONOUS)
+        {
+            payload = BufferedWebhookPayload.render(renderer, charset, this.payloadSpillThreshold);
+        }
+        else
+        {
+            payload = ByteArrayWebhookPayload.copyOf(new StreamingWebhookPayload(renderer, charset));
+        }
+        return payload;
+    }
+
+    /**
+     * Calls all targets in parallel and waits for their results.
+     *
+     * @param requests
+     *            the requests for the individual targets, all sharing the same payload
+     * @param targetTimeout
+     *            the time (in milliseconds) to wait for the response of each target - a non-positive value waits indefinitely; calls
+     *            which time out are cancelled, which does not abort in-flight I/O of blocking transports
+     * @return the failures of the individual calls, containing {@code null} for each call which succeeded, was deferred or skipped as
+     *         a duplicate
+     */
+    protected List<RuntimeException> callTargets(final List<WebhookRequest> requests, final long targetTimeout)
+    {
+        final List<CompletableFuture<WebhookResponse>> futures = new ArrayList<>(requests.size());
+        final List<CompletableFuture<Void>> endedCalls = new ArrayList<>(requests.size());
+        for (final WebhookRequest request : requests)
+        {
+            CompletableFuture<WebhookResponse> future;
+            final CompletableFuture<Void> ended = new CompletableFuture<>();
+            if (this.isDeduplicationEnabled() && request.getIdempotencyKey() != null
+                    && !this.deduplicator.register(request.getIdempotencyKey()))
+            {
+                LOGGER.debug("Skipping duplicate call to webhook at URL {}", request.getUrl());
+                future = CompletableFuture.completedFuture(null);
+                ended.complete(null);
+            }
+            else
+            {
+                try
+                {
+                    if (this.webhookTransport.isNonBlocking())
+                    {
+                        future = this.webhookTransport.sendAsync(request);
+                        future.whenComplete((r, ex) -> ended.complete(null));
+                    }
+                    else
+                    {
+                        future = this.submitBlocking(request, ended);
+                    }
+                }
+                catch (final RuntimeException ex)
+                {
+                    future = new CompletableFuture<>();
+                    future.completeExceptionally(ex);
+                    ended.complete(null);
+                }
+            }
+            futures.add(future);
+            endedCalls.add(ended);
+        }
+
+        // blocking calls which timed out may still be reading the shared payload, and deferred calls copy it after their call ended
+        final WebhookPayload payload = requests.get(0).getPayload();
+        final CompletableFuture<Void> resultsEvaluated = new CompletableFuture<>();
+        endedCalls.add(resultsEvaluated);
+        CompletableFuture.allOf(endedCalls.toArray(new CompletableFuture<?>[0])).whenComplete((result, ex) -> payload.release());
+
+        try
+        {
+            return this.evaluateCalls(requests, futures, targetTimeout);
+        }
+        finally
+        {
+            resultsEvaluated.complete(null);
+        }
+    }
+
+    /**
+     * Waits for the results of the calls to all targets, deferring calls which were throttled / rejected to the outbox.
+     *
+     * @param requests
+     *            the requests for the individual targets
+     * @param futures
+     *            the futures of the calls to the individual targets
+     * @param targetTimeout
+     *            the time (in milliseconds) to wait for the response of each target - a non-positive value waits indefinitely
+     * @return the failures of the individual calls, containing {@code null} for each call which succeeded, was deferred or skipped as
+     *         a duplicate
+     */
+    protected List<RuntimeException> evaluateCalls(final List<WebhookRequest> requests,
+            final List<CompletableFuture<WebhookResponse>> futures, final long targetTimeout)
+    {
+        // all calls have been started at the same time, so all share the same deadline
+        final long deadline = System.currentTimeMillis() + targetTimeout;
+        final List<RuntimeException> failures = new ArrayList<>(requests.size());
+        for (int idx = 0; idx < futures.size(); idx++)
+        {
+            final WebhookRequest request = requests.get(idx);
+            final CompletableFuture<WebhookResponse> future = futures.get(idx);
+            RuntimeException failure = null;
+            try
+            {
+                if (targetTimeout > 0)
+                {
+                    future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+                else
+                {
+                    future.get();
+                }
+            }
+            catch (final TimeoutException tex)
+            {
+                future.cancel(true);
+                failure = new WebhookCallException(
+                        "Call to webhook at URL " + request.getUrl() + " timed out after " + targetTimeout + " ms", tex);
+            }
+            catch (final ExecutionException eex)
+            {
+                final Throwable cause = eex.getCause();
+                failure = cause instanceof RuntimeException ? (RuntimeException) cause
+                        : new WebhookCallException("Unexpected error calling webhook at URL " + request.getUrl(), cause);
+            }
+            catch (final InterruptedException iex)
+            {
+                Thread.currentThread().interrupt();
+                throw new WebhookCallException("Interrupted while waiting for webhook targets", iex);
+            }
+
+            if (failure instanceof WebhookCallException && this.canDefer(request, (WebhookCallException) failure))
+            {
+                final long delay = Math.max(0, ((WebhookCallException) failure).getRetryAfter());
+                LOGGER.info("Webhook call to URL {} was throttled / rejected - deferring it to the outbox with a delay of {} ms",
+                        request.getUrl(), delay);
+                // the outbox releases the payload of enqueued requests, so it needs its own copy
+                this.webhookOutbox.enqueue(request.withPayload(ByteArrayWebhookPayload.copyOf(request.getPayload())), delay,
+                        failure.getMessage());
+                failure = null;
+            }
+            else if (failure != null)
+            {
+                this.unregisterFailedCall(request);
+            }
+            failures.add(failure);
+        }
+        return failures;
+    }
+
+    /**
+     * Performs a blocking call to a target in a thread of the thread pool. Cancelling the returned future skips the call if it has not
+     * been started yet, and interrupts the thread performing it otherwise, which does not abort in-flight socket I/O.
+     *
+     * @param request
+     *            the request to send
+     * @param ended
+     *            the future to complete once the call has actually ended, i.e. its thread no longer uses the payload of the request
+     * @return the future completing with the response of the target
+     */
+    protected CompletableFuture<WebhookResponse> submitBlocking(final WebhookRequest request, final CompletableFuture<Void> ended)
+    {
+        final CompletableFuture<WebhookResponse> future = new CompletableFuture<>();
+        // claimed by either the thread performing the call or a cancellation preceding it
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final Future<?> task = this.threadPoolExecutor.submit(() -> {
+            if (claimed.compareAndSet(false, true))
+            {
+                try
+                {
+                    future.complete(this.webhookTransport.send(request));
+                }
+                catch (final RuntimeException ex)
+                {
+                    future.completeExceptionally(ex);
+                }
+                finally
+                {
+                    ended.complete(null);
+                }
+            }
+        });
+
+        future.whenComplete((r, ex) -> {
+            if (future.isCancelled())
+            {
+                if (claimed.compareAndSet(false, true))
+                {
+                    ended.complete(null);
+                }
+                task.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Evaluates the results of the calls to all targets against the success policy of a plan.
+     *
+     * @param plan
+     *            the plan of the action
+     * @param requests
+     *            the requests for the individual targets
+     * @param failures
+     *            the failures of the individual calls
+     * @throws WebhookCallException
+     *             if the results do not satisfy the success policy
+     */
+    protected void evaluateResults(final FanOutPlan plan, final List<WebhookRequest> requests, final List<RuntimeException> failures)
+    {
+        int successes = 0;
+        RuntimeException firstFailure = null;
+        final StringBuilder failureDetails = new StringBuilder();
+        for (int idx = 0; idx < failures.size(); idx++)
+        {
+            final RuntimeException failure = failures.get(idx);
+            if (failure == null)
+            {
+                successes++;
+            }
+            else
+            {
+                final String targetName = plan.targets.get(idx).name;
+                LOGGER.warn("Call to webhook target {} at URL {} failed: {}", targetName, requests.get(idx).getUrl(), failure.getMessage());
+                firstFailure = firstFailure != null ? firstFailure : failure;
+                failureDetails.append(failureDetails.length() > 0 ? "; " : "").append(targetName).append(": ").append(failure.getMessage());
+            }
+        }
+
+        if (successes < plan.requiredSuccesses)
+        {
+            throw new WebhookCallException("Calls to " + successes + " of " + failures.size() + " webhook targets succeeded, but "
+                    + plan.requiredSuccesses + " are required by success policy " + plan.successPolicy + " - " + failureDetails,
+                    firstFailure);
+        }
+        LOGGER.debug("Calls to {} of {} webhook targets succeeded, satisfying success policy {}", successes, failures.size(),
+                plan.successPolicy);
+    }
+
+    /**
+     * Instances of this class represent an individual target of a fan-out action.
+     *
+     * @author Axel Faust
+     */
+    protected static class FanOutTarget
+    {
+
+        protected final String name;
+
+        protected final WebhookPlan plan;
+
+        protected final List<Pair<String, String>> headers;
+
+        protected FanOutTarget(final String name, final WebhookPlan plan, final List<Pair<String, String>> headers)
+        {
+            this.name = name;
+            this.plan = plan;
+            this.headers = headers;
+        }
+    }
+
+    /**
+     * Instances of this class represent the compiled parameters of a fan-out action. The inherited URL and header values are those of
+     * the first target, while the payload values are shared by all targets.
+     *
+     * @author Axel Faust
+     */
+    protected static class FanOutPlan extends WebhookPlan
+    {
+
+        protected final List<FanOutTarget> targets;
+
+        protected final SuccessPolicy successPolicy;
+
+        protected final int requiredSuccesses;
+
+        protected final long targetTimeout;
+
+        protected FanOutPlan(final Map<String, Serializable> parameterValues, final List<FanOutTarget> targets,
+                final SuccessPolicy successPolicy, final int requiredSuccesses, final long targetTimeout)
+        {
+            super(parameterValues, targets.get(0).plan);
+            this.targets = Collections.unmodifiableList(new ArrayList<>(targets));
+            this.successPolicy = successPolicy;
+            this.requiredSuccesses = requiredSuccesses;
+            this.targetTimeout = targetTimeout;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+/**
+ * Instances of this interface receive the individual measurements of {@link WebhookCallMetrics webhook call metrics} in order to forward
+ * them to an external metrics registry, e.g. a Micrometer {@code MeterRegistry} or a StatsD client.
+ *
+ * @author Axel Faust
+ */
+public interface WebhookMetricsSink
+{
+
+    /**
+     * Records the duration of a phase of a webhook call.
+     *
+     * @param phase
+     *            the phase
+     * @param durationMillis
+     *            the duration in milliseconds
+     */
+    void recordPhase(WebhookCallMetrics.Phase phase, long durationMillis);
+
+    /**
+     * Records the response of an endpoint to a webhook call.
+     *
+     * @param route
+     *            the route of the endpoint in the form {@code scheme://host:port}
+     * @param statusCode
+     *            the HTTP status code of the response or {@link WebhookCallException#NO_RESPONSE} if no response was received
+     */
+    void recordResponse(String route, int statusCode);
+
+    /**
+     * Records the size of the payload of a webhook call.
+     *
+     * @param route
+     *            the route of the endpoint in the form {@code scheme://host:port}
+     * @param bytes
+     *            the size of the (uncompressed) payload in bytes
+     */
+    void recordPayloadSize(String route, long bytes);
+}
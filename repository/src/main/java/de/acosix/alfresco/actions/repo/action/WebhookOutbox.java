@@ -0,0 +1,902 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.extensions.surf.util.AbstractLifecycleBean;
+
+/**
+ * Instances of this class provide a durable outbox for webhook requests. Requests are persisted via the {@link AttributeService attribute
+ * service} within the transaction of the action generating them, so they are only ever delivered if that transaction commits. A
+ * background process drains the outbox in parallel batches, retrying failed deliveries with jittered exponential backoff and parking
+ * requests that permanently fail in a dead-letter store from which administrators may replay them. The time of the next delivery attempt
+ * of each pending request is kept in a separate index, so that due requests can be found without deserialising the payloads of all
+ * requests still waiting for a retry.
+ *
+ * In a clustered repository, the outbox is only drained by one server at a time, coordinated via the {@link JobLockService job lock
+ * service}.
+ *
+ * @author Axel Faust
+ */
+public class WebhookOutbox extends AbstractLifecycleBean implements InitializingBean, WebhookOutboxMBean
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebhookOutbox.class);
+
+    private static final String OUTBOX_KEY = WebhookCallActionExecuter.NAME + ".outbox";
+
+    private static final String OUTBOX_DUE_KEY = WebhookCallActionExecuter.NAME + ".outbox.due";
+
+    private static final String DEAD_LETTER_KEY = WebhookCallActionExecuter.NAME + ".outbox.deadLetter";
+
+    private static final QName LOCK_QNAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, OUTBOX_KEY);
+
+    private static final String TXN_KEY_ENQUEUED = WebhookOutbox.class.getName() + "-enqueued";
+
+    // limits the number of due entry IDs collected by a single scan of the index
+    private static final int MAX_BATCHES_PER_SCAN = 100;
+
+    protected TransactionService transactionService;
+
+    protected AttributeService attributeService;
+
+    protected JobLockService jobLockService;
+
+    protected WebhookTransport webhookTransport;
+
+    protected ThreadPoolExecutor threadPoolExecutor;
+
+    protected boolean enabled = true;
+
+    protected long drainInterval = 10000;
+
+    protected int batchSize = 50;
+
+    protected int maxAttempts = 10;
+
+    protected long initialBackoff = 5000;
+
+    protected long maxBackoff = 3600000;
+
+    protected double backoffMultiplier = 2;
+
+    protected double jitterFactor = 0.5;
+
+    protected long lockTimeToLive = 60000;
+
+    protected ScheduledExecutorService drainScheduler;
+
+    protected final AtomicBoolean draining = new AtomicBoolean(false);
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "transactionService", this.transactionService);
+        PropertyCheck.mandatory(this, "attributeService", this.attributeService);
+        PropertyCheck.mandatory(this, "jobLockService", this.jobLockService);
+        PropertyCheck.mandatory(this, "webhookTransport", this.webhookTransport);
+        PropertyCheck.mandatory(this, "threadPoolExecutor", this.threadPoolExecutor);
+
+        if (this.batchSize <= 0)
+        {
+            throw new IllegalStateException("batchSize must be a positive integer");
+        }
+        if (this.maxAttempts <= 0)
+        {
+            throw new IllegalStateException("maxAttempts must be a positive integer");
+        }
+        if (this.backoffMultiplier < 1)
+        {
+            throw new IllegalStateException("backoffMultiplier must not be less than 1");
+        }
+        if (this.jitterFactor < 0 || this.jitterFactor > 1)
+        {
+            throw new IllegalStateException("jitterFactor must be between 0 and 1");
+        }
+    }
+
+    /**
+     * @param transactionService
+     *            the transactionService to set
+     */
+    public void setTransactionService(final TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param attributeService
+     *            the attributeService to set
+     */
+    public void setAttributeService(final AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param jobLockService
+     *            the jobLockService to set
+     */
+    public void setJobLockService(final JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+
+    /**
+     * @param webhookTransport
+     *            the webhookTransport to set
+     */
+    public void setWebhookTransport(final WebhookTransport webhookTransport)
+    {
+        this.webhookTransport = webhookTransport;
+    }
+
+    /**
+     * @param threadPoolExecutor
+     *            the threadPoolExecutor to set
+     */
+    public void setThreadPoolExecutor(final ThreadPoolExecutor threadPoolExecutor)
+    {
+        this.threadPoolExecutor = threadPoolExecutor;
+    }
+
+    /**
+     * @param enabled
+     *            the enabled to set
+     */
+    public void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param drainInterval
+     *            the interval (in milliseconds) at which to check the outbox for due entries
+     */
+    public void setDrainInterval(final long drainInterval)
+    {
+        this.drainInterval = drainInterval;
+    }
+
+    /**
+     * @param batchSize
+     *            the maximum number of entries to deliver in parallel in a single batch
+     */
+    public void setBatchSize(final int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param maxAttempts
+     *            the maximum number of delivery attempts before an entry is moved to the dead-letter store
+     */
+    public void setMaxAttempts(final int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param initialBackoff
+     *            the delay (in milliseconds) before the first retry of a failed delivery
+     */
+    public void setInitialBackoff(final long initialBackoff)
+    {
+        this.initialBackoff = initialBackoff;
+    }
+
+    /**
+     * @param maxBackoff
+     *            the upper limit (in milliseconds) for the delay before any retry of a failed delivery
+     */
+    public void setMaxBackoff(final long maxBackoff)
+    {
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * @param backoffMultiplier
+     *            the factor by which the delay is increased for each subsequent retry
+     */
+    public void setBackoffMultiplier(final double backoffMultiplier)
+    {
+        this.backoffMultiplier = backoffMultiplier;
+    }
+
+    /**
+     * @param jitterFactor
+     *            the fraction (between 0 and 1) of each retry delay which is randomised to avoid synchronised retry storms
+     */
+    public void setJitterFactor(final double jitterFactor)
+    {
+        this.jitterFactor = jitterFactor;
+    }
+
+    /**
+     * @param lockTimeToLive
+     *            the time to live (in milliseconds) of the cluster lock held while draining the outbox - deliveries of a batch which do
+     *            not complete within half of this time are cancelled
+     */
+    public void setLockTimeToLive(final long lockTimeToLive)
+    {
+        this.lockTimeToLive = lockTimeToLive;
+    }
+
+    /**
+     * Persists a webhook request in the outbox as part of the currently active transaction. The request will be delivered by the
+     * background process after the transaction has been committed.
+     *
+     * @param request
+     *            the request to enqueue
+     */
+    public void enqueue(final WebhookRequest request)
+    {
+        this.enqueue(request, 0, null);
+    }
+
+    /**
+     * Persists a webhook request in the outbox for delivery after a delay, e.g. because the endpoint or a local rate limit currently does
+     * not allow the call. The request is persisted as part of the currently active transaction, or in a new transaction if none is
+     * active.
+     *
+     * @param request
+     *            the request to enqueue
+     * @param delay
+     *            the delay (in milliseconds) before the first delivery attempt
+     * @param reason
+     *            the reason for the delay - may be {@code null}
+     */
+    public void enqueue(final WebhookRequest request, final long delay, final String reason)
+    {
+        ParameterCheck.mandatory("request", request);
+
+        if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE)
+        {
+            this.doInTransaction(() -> {
+                this.enqueueImpl(request, delay, reason);
+                return null;
+            }, false);
+        }
+        else
+        {
+            this.enqueueImpl(request, delay, reason);
+        }
+    }
+
+    /**
+     * @return {@code true} if the outbox is enabled and enqueued requests will be delivered, {@code false} otherwise
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    protected void enqueueImpl(final WebhookRequest request, final long delay, final String reason)
+    {
+        // only in-memory payloads can be persisted
+        final ByteArrayWebhookPayload payload = ByteArrayWebhookPayload.copyOf(request.getPayload());
+        final WebhookRequest persistableRequest = payload == request.getPayload() ? request : request.withPayload(payload);
+        request.getPayload().release();
+
+        final long now = System.currentTimeMillis();
+        final WebhookOutboxEntry entry = new WebhookOutboxEntry(UUID.randomUUID().toString(), persistableRequest, now);
+        if (delay > 0)
+        {
+            entry.defer(reason, now + delay);
+        }
+        LOGGER.debug("Enqueueing {}", entry);
+        this.storePending(entry);
+
+        // trigger a drain right after commit instead of waiting for the next scheduled run
+        if (TransactionalResourceHelper.incrementCount(TXN_KEY_ENQUEUED) == 1)
+        {
+            AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+            {
+
+                /**
+                 *
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void afterCommit()
+                {
+                    WebhookOutbox.this.triggerDrain();
+                }
+            });
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPendingCount()
+    {
+        return this.countEntries(OUTBOX_DUE_KEY);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDeadLetterCount()
+    {
+        return this.countEntries(DEAD_LETTER_KEY);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> listDeadLetters(final int maxItems)
+    {
+        final List<WebhookOutboxEntry> entries = this.doInTransaction(() -> this.loadEntries(DEAD_LETTER_KEY, maxItems), true);
+        final List<String> descriptions = new ArrayList<>(entries.size());
+        for (final WebhookOutboxEntry entry : entries)
+        {
+            descriptions.add(entry.toString());
+        }
+        return descriptions;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean replayDeadLetter(final String id)
+    {
+        ParameterCheck.mandatoryString("id", id);
+
+        final boolean replayed = this.doInTransaction(() -> {
+            final Serializable value = this.attributeService.getAttribute(DEAD_LETTER_KEY, id);
+            if (value instanceof WebhookOutboxEntry)
+            {
+                this.replay((WebhookOutboxEntry) value);
+                return Boolean.TRUE;
+            }
+            return Boolean.FALSE;
+        }, false).booleanValue();
+
+        if (replayed)
+        {
+            this.triggerDrain();
+        }
+        return replayed;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int replayAllDeadLetters()
+    {
+        int replayed = 0;
+        List<WebhookOutboxEntry> entries;
+        do
+        {
+            entries = this.doInTransaction(() -> {
+                final List<WebhookOutboxEntry> deadLetters = this.loadEntries(DEAD_LETTER_KEY, this.batchSize);
+                for (final WebhookOutboxEntry entry : deadLetters)
+                {
+                    this.replay(entry);
+                }
+                return deadLetters;
+            }, false);
+            replayed += entries.size();
+        }
+        while (entries.size() == this.batchSize);
+
+        if (replayed > 0)
+        {
+            this.triggerDrain();
+        }
+        return replayed;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean purgeDeadLetter(final String id)
+    {
+        ParameterCheck.mandatoryString("id", id);
+
+        return this.doInTransaction(() -> {
+            final boolean exists = this.attributeService.exists(DEAD_LETTER_KEY, id);
+            if (exists)
+            {
+                LOGGER.info("Purging dead-letter entry {}", id);
+                this.attributeService.removeAttribute(DEAD_LETTER_KEY, id);
+            }
+            return Boolean.valueOf(exists);
+        }, false).booleanValue();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onBootstrap(final ApplicationEvent event)
+    {
+        if (this.enabled && this.drainInterval > 0)
+        {
+            final TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+            threadFactory.setThreadDaemon(true);
+            threadFactory.setNamePrefix(OUTBOX_KEY + "-drain");
+
+            this.drainScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.drainScheduler.scheduleWithFixedDelay(this::drain, this.drainInterval, this.drainInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onShutdown(final ApplicationEvent event)
+    {
+        if (this.drainScheduler != null)
+        {
+            this.drainScheduler.shutdownNow();
+            this.drainScheduler = null;
+        }
+    }
+
+    protected void triggerDrain()
+    {
+        final ScheduledExecutorService drainScheduler = this.drainScheduler;
+        if (drainScheduler != null && !drainScheduler.isShutdown())
+        {
+            drainScheduler.execute(this::drain);
+        }
+    }
+
+    /**
+     * Drains the outbox by delivering all due entries in batches, provided this server can obtain the cluster-wide lock for the outbox.
+     * The due entries are determined in a single scan of the index of next delivery attempts, and only the entries of the current batch
+     * are loaded.
+     */
+    protected void drain()
+    {
+        if (!this.draining.compareAndSet(false, true))
+        {
+            LOGGER.trace("Outbox is already being drained");
+            return;
+        }
+
+        try
+        {
+            final String lockToken;
+            try
+            {
+                lockToken = this.jobLockService.getLock(LOCK_QNAME, this.lockTimeToLive);
+            }
+            catch (final LockAcquisitionException laex)
+            {
+                LOGGER.debug("Outbox is being drained by another server");
+                return;
+            }
+
+            try
+            {
+                final int maxDueEntries = this.batchSize * MAX_BATCHES_PER_SCAN;
+                List<String> dueIds;
+                do
+                {
+                    dueIds = this.doInTransaction(() -> this.findDueEntryIds(maxDueEntries), true);
+                    for (int offset = 0; offset < dueIds.size() && !Thread.currentThread().isInterrupted(); offset += this.batchSize)
+                    {
+                        final List<String> batchIds = dueIds.subList(offset, Math.min(offset + this.batchSize, dueIds.size()));
+                        final List<WebhookOutboxEntry> dueEntries = this.doInTransaction(() -> this.loadPendingEntries(batchIds), false);
+                        if (!dueEntries.isEmpty())
+                        {
+                            // a fresh lock covers the delivery (bounded to half its time to live) and recording of the results
+                            this.jobLockService.refreshLock(lockToken, LOCK_QNAME, this.lockTimeToLive);
+                            this.deliverBatch(dueEntries);
+                        }
+                    }
+                }
+                // entries beyond the limit of a single scan are still due
+                while (dueIds.size() == maxDueEntries && !Thread.currentThread().isInterrupted());
+            }
+            finally
+            {
+                this.jobLockService.releaseLock(lockToken, LOCK_QNAME);
+            }
+        }
+        catch (final RuntimeException ex)
+        {
+            LOGGER.error("Failed to drain webhook outbox", ex);
+        }
+        finally
+        {
+            this.draining.set(false);
+        }
+    }
+
+    protected void deliverBatch(final List<WebhookOutboxEntry> entries)
+    {
+        LOGGER.debug("Delivering batch of {} outbox entries", entries.size());
+
+        final List<RuntimeException> results = this.webhookTransport.isNonBlocking() ? this.sendNonBlocking(entries)
+                : this.sendBlocking(entries);
+        if (results == null)
+        {
+            LOGGER.warn("Interrupted while delivering outbox entries - remaining entries will be retried");
+            return;
+        }
+
+        // determine new state outside of the transaction so that any transaction retries do not record failures multiple times
+        final long now = System.currentTimeMillis();
+        final List<WebhookOutboxEntry> delivered = new ArrayList<>();
+        final List<WebhookOutboxEntry> retries = new ArrayList<>();
+        final List<WebhookOutboxEntry> deadLetters = new ArrayList<>();
+        for (int idx = 0; idx < entries.size(); idx++)
+        {
+            final WebhookOutboxEntry entry = entries.get(idx);
+            final RuntimeException failure = results.get(idx);
+            if (failure == null)
+            {
+                LOGGER.debug("Delivered {}", entry);
+                delivered.add(entry);
+            }
+            else if (failure instanceof WebhookCallRejectedException)
+            {
+                // call never reached the endpoint, so it does not count as an attempt
+                LOGGER.debug("Delivery of {} was rejected locally - deferring", entry);
+                entry.defer(failure.getMessage(), now + Math.max(((WebhookCallRejectedException) failure).getRetryAfter(),
+                        this.calculateBackoff(1)));
+                retries.add(entry);
+            }
+            else
+            {
+                final boolean retryable = !(failure instanceof WebhookCallException) || ((WebhookCallException) failure).isRetryable();
+                // honour the delay requested by the endpoint (Retry-After) if it exceeds the regular backoff
+                final long retryAfter = failure instanceof WebhookCallException ? ((WebhookCallException) failure).getRetryAfter()
+                        : WebhookCallException.NO_RETRY_AFTER;
+                entry.recordFailure(failure.getMessage(), now + Math.max(this.calculateBackoff(entry.getAttempts() + 1), retryAfter));
+
+                if (!retryable || entry.getAttempts() >= this.maxAttempts)
+                {
+                    LOGGER.warn("Moving {} to dead-letter store after {} failed attempt(s)", entry, entry.getAttempts());
+                    deadLetters.add(entry);
+                }
+                else
+                {
+                    LOGGER.info("Delivery of {} failed - scheduled retry", entry);
+                    retries.add(entry);
+                }
+            }
+        }
+
+        this.doInTransaction(() -> {
+            for (final WebhookOutboxEntry entry : delivered)
+            {
+                this.removePending(entry.getId());
+            }
+            for (final WebhookOutboxEntry entry : retries)
+            {
+                this.storePending(entry);
+            }
+            for (final WebhookOutboxEntry entry : deadLetters)
+            {
+                this.removePending(entry.getId());
+                this.attributeService.setAttribute(entry, DEAD_LETTER_KEY, entry.getId());
+            }
+            return null;
+        }, false);
+    }
+
+    /**
+     * Delivers a batch of outbox entries via a blocking transport, using the threads of the outbox thread pool to perform the calls in
+     * parallel. Since the cluster lock of the outbox is only refreshed before each batch, calls which do not complete within the
+     * {@link #getDeliveryTimeout() delivery timeout} are cancelled and treated as failed attempts.
+     *
+     * @param entries
+     *            the entries to deliver
+     * @return the failures of the individual deliveries, containing {@code null} for each successful delivery, or {@code null} if the
+     *         current thread was interrupted
+     */
+    protected List<RuntimeException> sendBlocking(final List<WebhookOutboxEntry> entries)
+    {
+        final List<Callable<RuntimeException>> deliveries = new ArrayList<>(entries.size());
+        for (final WebhookOutboxEntry entry : entries)
+        {
+            deliveries.add(() -> {
+                try
+                {
+                    this.webhookTransport.send(entry.getRequest());
+                    return null;
+                }
+                catch (final RuntimeException ex)
+                {
+                    return ex;
+                }
+            });
+        }
+
+        final long deliveryTimeout = this.getDeliveryTimeout();
+        final List<RuntimeException> results = new ArrayList<>(entries.size());
+        try
+        {
+            final List<Future<RuntimeException>> futures = this.threadPoolExecutor.invokeAll(deliveries, deliveryTimeout,
+                    TimeUnit.MILLISECONDS);
+            for (final Future<RuntimeException> future : futures)
+            {
+                try
+                {
+                    results.add(future.get());
+                }
+                catch (final CancellationException cex)
+                {
+                    results.add(new WebhookCallException(
+                            "Delivery of webhook request did not complete within " + deliveryTimeout + " ms", cex));
+                }
+                catch (final ExecutionException eex)
+                {
+                    results.add(new WebhookCallException("Unexpected error delivering webhook request", eex.getCause()));
+                }
+            }
+        }
+        catch (final InterruptedException iex)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return results;
+    }
+
+    /**
+     * Delivers a batch of outbox entries via a non-blocking transport, with all calls in flight concurrently without occupying a thread
+     * each. Since the cluster lock of the outbox is only refreshed before each batch, calls which do not complete within the
+     * {@link #getDeliveryTimeout() delivery timeout} are cancelled and treated as failed attempts.
+     *
+     * @param entries
+     *            the entries to deliver
+     * @return the failures of the individual deliveries, containing {@code null} for each successful delivery, or {@code null} if the
+     *         current thread was interrupted
+     */
+    protected List<RuntimeException> sendNonBlocking(final List<WebhookOutboxEntry> entries)
+    {
+        final List<CompletableFuture<WebhookResponse>> futures = new ArrayList<>(entries.size());
+        for (final WebhookOutboxEntry entry : entries)
+        {
+            CompletableFuture<WebhookResponse> future;
+            try
+            {
+                future = this.webhookTransport.sendAsync(entry.getRequest());
+            }
+            catch (final RuntimeException ex)
+            {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(ex);
+            }
+            futures.add(future);
+        }
+
+        final long deliveryTimeout = this.getDeliveryTimeout();
+        final long deadline = System.currentTimeMillis() + deliveryTimeout;
+        final List<RuntimeException> results = new ArrayList<>(entries.size());
+        for (final CompletableFuture<WebhookResponse> future : futures)
+        {
+            try
+            {
+                future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                results.add(null);
+            }
+            catch (final TimeoutException tex)
+            {
+                future.cancel(true);
+                results.add(new WebhookCallException(
+                        "Delivery of webhook request did not complete within " + deliveryTimeout + " ms", tex));
+            }
+            catch (final ExecutionException eex)
+            {
+                final Throwable cause = eex.getCause();
+                results.add(cause instanceof RuntimeException ? (RuntimeException) cause
+                        : new WebhookCallException("Unexpected error delivering webhook request", cause));
+            }
+            catch (final InterruptedException iex)
+            {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Determines the time available for the delivery of a batch. As the cluster lock of the outbox also needs to cover recording the
+     * results of the batch, only half of its {@link #setLockTimeToLive(long) time to live} is available for the delivery.
+     *
+     * @return the maximum time (in milliseconds) to wait for the deliveries of a batch
+     */
+    protected long getDeliveryTimeout()
+    {
+        return this.lockTimeToLive / 2;
+    }
+
+    /**
+     * Calculates the delay before the next retry of a failed delivery using exponential backoff with jitter.
+     *
+     * @param attempt
+     *            the number of the failed attempt (starting with {@code 1})
+     * @return the delay in milliseconds
+     */
+    protected long calculateBackoff(final int attempt)
+    {
+        final double exponentialBackoff = this.initialBackoff * Math.pow(this.backoffMultiplier, attempt - 1);
+        final double cappedBackoff = Math.min(exponentialBackoff, this.maxBackoff);
+        final double jitter = cappedBackoff * this.jitterFactor * ThreadLocalRandom.current().nextDouble();
+        return (long) (cappedBackoff - jitter);
+    }
+
+    protected void replay(final WebhookOutboxEntry entry)
+    {
+        LOGGER.info("Replaying dead-letter entry {}", entry);
+        entry.resetForReplay(System.currentTimeMillis());
+        this.attributeService.removeAttribute(DEAD_LETTER_KEY, entry.getId());
+        this.storePending(entry);
+    }
+
+    /**
+     * Stores a pending entry in the outbox together with the time of its next delivery attempt in the index of due entries.
+     *
+     * @param entry
+     *            the entry to store
+     */
+    protected void storePending(final WebhookOutboxEntry entry)
+    {
+        this.attributeService.setAttribute(entry, OUTBOX_KEY, entry.getId());
+        this.attributeService.setAttribute(Long.valueOf(entry.getNextAttemptAt()), OUTBOX_DUE_KEY, entry.getId());
+    }
+
+    /**
+     * Removes a pending entry from the outbox and the index of due entries.
+     *
+     * @param id
+     *            the ID of the entry to remove
+     */
+    protected void removePending(final String id)
+    {
+        this.attributeService.removeAttribute(OUTBOX_KEY, id);
+        this.attributeService.removeAttribute(OUTBOX_DUE_KEY, id);
+    }
+
+    /**
+     * Scans the index of due entries for the IDs of entries which are due for a delivery attempt.
+     *
+     * @param maxItems
+     *            the maximum number of IDs to collect
+     * @return the IDs of the due entries
+     */
+    protected List<String> findDueEntryIds(final int maxItems)
+    {
+        final long now = System.currentTimeMillis();
+        final List<String> ids = new ArrayList<>();
+        this.attributeService.getAttributes((id, value, keys) -> {
+            if (value instanceof Long && ((Long) value).longValue() <= now)
+            {
+                ids.add(String.valueOf(keys[1]));
+            }
+            return ids.size() < maxItems;
+        }, OUTBOX_DUE_KEY);
+        return ids;
+    }
+
+    /**
+     * Loads pending entries from the outbox, removing any index entries which no longer refer to an existing entry.
+     *
+     * @param ids
+     *            the IDs of the entries to load
+     * @return the entries which still exist
+     */
+    protected List<WebhookOutboxEntry> loadPendingEntries(final List<String> ids)
+    {
+        final List<WebhookOutboxEntry> entries = new ArrayList<>(ids.size());
+        for (final String id : ids)
+        {
+            final Serializable value = this.attributeService.getAttribute(OUTBOX_KEY, id);
+            if (value instanceof WebhookOutboxEntry)
+            {
+                entries.add((WebhookOutboxEntry) value);
+            }
+            else
+            {
+                LOGGER.debug("Removing stale index entry for outbox entry {}", id);
+                this.attributeService.removeAttribute(OUTBOX_DUE_KEY, id);
+            }
+        }
+        return entries;
+    }
+
+    protected List<WebhookOutboxEntry> loadEntries(final String key, final int maxItems)
+    {
+        final List<WebhookOutboxEntry> entries = new ArrayList<>();
+        this.attributeService.getAttributes((id, value, keys) -> {
+            if (value instanceof WebhookOutboxEntry)
+            {
+                entries.add((WebhookOutboxEntry) value);
+            }
+            return entries.size() < maxItems;
+        }, key);
+        return entries;
+    }
+
+    protected int countEntries(final String key)
+    {
+        final int[] count = new int[1];
+        this.doInTransaction(() -> {
+            this.attributeService.getAttributes((id, value, keys) -> {
+                count[0]++;
+                return true;
+            }, key);
+            return null;
+        }, true);
+        return count[0];
+    }
+
+    protected <R> R doInTransaction(final RetryingTransactionHelper.RetryingTransactionCallback<R> callback, final boolean readOnly)
+    {
+        return this.transactionService.getRetryingTransactionHelper().doInTransaction(callback, readOnly, true);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.Serializable;
+
+import org.alfresco.util.ParameterCheck;
+
+/**
+ * Instances of this class represent a webhook request persisted in the {@link WebhookOutbox outbox} or its dead-letter store, together
+ * with the state of its delivery attempts.
+ *
+ * @author Axel Faust
+ */
+public class WebhookOutboxEntry implements Serializable
+{
+
+    private static final long serialVersionUID = -4424658431853014528L;
+
+    protected final String id;
+
+    protected final WebhookRequest request;
+
+    protected final long createdAt;
+
+    protected int attempts;
+
+    protected long nextAttemptAt;
+
+    protected String lastError;
+
+    /**
+     * Creates a new instance of this class for a request to be delivered as soon as possible.
+     *
+     * @param id
+     *            the unique ID of the entry
+     * @param request
+     *            the request to deliver
+     * @param createdAt
+     *            the creation timestamp of the entry
+     */
+    public WebhookOutboxEntry(final String id, final WebhookRequest request, final long createdAt)
+    {
+        ParameterCheck.mandatoryString("id", id);
+        ParameterCheck.mandatory("request", request);
+
+        this.id = id;
+        this.request = request;
+        this.createdAt = createdAt;
+        this.nextAttemptAt = createdAt;
+    }
+
+    /**
+     * @return the id
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * @return the request
+     */
+    public WebhookRequest getRequest()
+    {
+        return this.request;
+    }
+
+    /**
+     * @return the createdAt
+     */
+    public long getCreatedAt()
+    {
+        return this.createdAt;
+    }
+
+    /**
+     * @return the number of failed delivery attempts
+     */
+    public int getAttempts()
+    {
+        return this.attempts;
+    }
+
+    /**
+     * @return the timestamp at / after which the next delivery attempt should be made
+     */
+    public long getNextAttemptAt()
+    {
+        return this.nextAttemptAt;
+    }
+
+    /**
+     * @return the error message of the last failed delivery attempt
+     */
+    public String getLastError()
+    {
+        return this.lastError;
+    }
+
+    /**
+     * Checks whether this entry is due for a delivery attempt.
+     *
+     * @param now
+     *            the current timestamp
+     * @return {@code true} if the entry is due, {@code false} otherwise
+     */
+    public boolean isDue(final long now)
+    {
+        return this.nextAttemptAt <= now;
+    }
+
+    /**
+     * Records a failed delivery attempt.
+     *
+     * @param error
+     *            the error message of the failure
+     * @param nextAttemptAt
+     *            the timestamp at / after which the next delivery attempt should be made
+     */
+    public void recordFailure(final String error, final long nextAttemptAt)
+    {
+        this.attempts++;
+        this.lastError = error;
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    /**
+     * Defers the delivery of this entry without counting a delivery attempt, e.g. because the call was rejected locally before contacting
+     * the endpoint.
+     *
+     * @param reason
+     *            the reason for the deferral
+     * @param nextAttemptAt
+     *            the timestamp at / after which the next delivery attempt should be made
+     */
+    public void defer(final String reason, final long nextAttemptAt)
+    {
+        this.lastError = reason;
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    /**
+     * Resets the delivery state of this entry so it can be replayed from the dead-letter store.
+     *
+     * @param now
+     *            the current timestamp
+     */
+    public void resetForReplay(final long now)
+    {
+        this.attempts = 0;
+        this.nextAttemptAt = now;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("WebhookOutboxEntry [");
+        builder.append("id=");
+        builder.append(this.id);
+        builder.append(", request=");
+        builder.append(this.request);
+        builder.append(", createdAt=");
+        builder.append(this.createdAt);
+        builder.append(", attempts=");
+        builder.append(this.attempts);
+        builder.append(", nextAttemptAt=");
+        builder.append(this.nextAttemptAt);
+        builder.append(", lastError=");
+        builder.append(this.lastError);
+        builder.append("]");
+        return builder.toString();
+    }
+}
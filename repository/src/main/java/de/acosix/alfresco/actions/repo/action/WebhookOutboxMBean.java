@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link WebhookOutbox webhook outbox} allowing administrators to inspect and replay failed deliveries.
+ *
+ * @author Axel Faust
+ */
+public interface WebhookOutboxMBean
+{
+
+    /**
+     * @return the number of entries pending delivery
+     */
+    int getPendingCount();
+
+    /**
+     * @return the number of entries parked in the dead-letter store
+     */
+    int getDeadLetterCount();
+
+    /**
+     * Lists the entries in the dead-letter store.
+     *
+     * @param maxItems
+     *            the maximum number of entries to list
+     * @return textual descriptions of the entries
+     */
+    List<String> listDeadLetters(int maxItems);
+
+    /**
+     * Moves an entry from the dead-letter store back into the outbox for immediate delivery.
+     *
+     * @param id
+     *            the ID of the entry
+     * @return {@code true} if the entry was found and moved, {@code false} otherwise
+     */
+    boolean replayDeadLetter(String id);
+
+    /**
+     * Moves all entries from the dead-letter store back into the outbox for immediate delivery.
+     *
+     * @return the number of entries moved
+     */
+    int replayAllDeadLetters();
+
+    /**
+     * Permanently removes an entry from the dead-letter store.
+     *
+     * @param id
+     *            the ID of the entry
+     * @return {@code true} if the entry was found and removed, {@code false} otherwise
+     */
+    boolean purgeDeadLetter(String id);
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Instances of this interface provide the body of a webhook request.
+ *
+ * @author Axel Faust
+ */
+public interface WebhookPayload
+{
+
+    /**
+     * Writes the payload to an output stream.
+     *
+     * @param out
+     *            the stream to write to - the stream will be flushed but not closed
+     * @throws IOException
+     *             if an error occurs writing the payload
+     */
+    void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Opens a stream to read the payload. This operation is only supported by {@link #isRepeatable() repeatable} payloads.
+     *
+     * @return the stream to read the payload
+     * @throws IOException
+     *             if an error occurs opening the stream
+     */
+    InputStream openStream() throws IOException;
+
+    /**
+     * @return the length of the payload in bytes, or {@code -1} if the length is not known in advance
+     */
+    long getContentLength();
+
+    /**
+     * @return {@code true} if the payload can be written multiple times, e.g. for retries, {@code false} otherwise
+     */
+    boolean isRepeatable();
+
+    /**
+     * Releases any resources held by this payload, e.g. temporary files. Payloads may not be used after they have been released.
+     */
+    void release();
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.alfresco.util.ParameterCheck;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Instances of this class adapt a {@link WebhookPayload webhook payload} to the HTTP entity abstraction, writing the payload directly to
+ * the connection and optionally compressing it on the fly.
+ *
+ * @author Axel Faust
+ */
+public class WebhookPayloadEntity extends AbstractHttpEntity
+{
+
+    protected final WebhookPayload payload;
+
+    protected final boolean gzip;
+
+    protected long bytesWritten = -1;
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param payload
+     *            the payload to adapt
+     * @param contentType
+     *            the content type of the payload
+     * @param gzip
+     *            {@code true} if the payload should be compressed using gzip, {@code false} otherwise
+     */
+    public WebhookPayloadEntity(final WebhookPayload payload, final ContentType contentType, final boolean gzip)
+    {
+        ParameterCheck.mandatory("payload", payload);
+        ParameterCheck.mandatory("contentType", contentType);
+
+        this.payload = payload;
+        this.gzip = gzip;
+
+        this.setContentType(contentType.toString());
+        if (gzip)
+        {
+            this.setContentEncoding("gzip");
+        }
+        this.setChunked(this.getContentLength() < 0);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRepeatable()
+    {
+        return this.payload.isRepeatable();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getContentLength()
+    {
+        // compressed length cannot be known in advance
+        return this.gzip ? -1 : this.payload.getContentLength();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getContent() throws IOException
+    {
+        if (this.gzip)
+        {
+            throw new UnsupportedOperationException("Compressed payload can only be written");
+        }
+        return this.payload.openStream();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(final OutputStream outstream) throws IOException
+    {
+        ParameterCheck.mandatory("outstream", outstream);
+
+        if (this.gzip)
+        {
+            final GZIPOutputStream gzipStream = new GZIPOutputStream(outstream);
+            final CountingOutputStream countingStream = new CountingOutputStream(gzipStream);
+            this.payload.writeTo(countingStream);
+            this.bytesWritten = countingStream.getByteCount();
+            // must not close as this would close the underlying connection stream
+            gzipStream.finish();
+        }
+        else
+        {
+            final CountingOutputStream countingStream = new CountingOutputStream(outstream);
+            this.payload.writeTo(countingStream);
+            this.bytesWritten = countingStream.getByteCount();
+        }
+        outstream.flush();
+    }
+
+    /**
+     * @return the number of (uncompressed) payload bytes written by the last invocation of {@link #writeTo(OutputStream) writeTo}, or
+     *         {@code -1} if the payload has not been written yet
+     */
+    public long getBytesWritten()
+    {
+        return this.bytesWritten;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isStreaming()
+    {
+        return !this.payload.isRepeatable();
+    }
+}
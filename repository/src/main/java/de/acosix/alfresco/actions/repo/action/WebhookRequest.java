@@ -0,0 +1,275 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.alfresco.util.Pair;
+import org.alfresco.util.ParameterCheck;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Instances of this class represent a fully rendered webhook call. Unless the {@link #getPayload() payload} is a
+ * {@link StreamingWebhookPayload streaming payload}, the call can be performed independently of the transaction / context in which it was
+ * generated. Instances can only be serialised if their payload is serialisable.
+ *
+ * @author Axel Faust
+ */
+public class WebhookRequest implements Serializable
+{
+
+    private static final long serialVersionUID = 2441286208151498016L;
+
+    protected final String url;
+
+    protected final String mimetype;
+
+    protected final String charset;
+
+    protected final WebhookPayload payload;
+
+    protected final List<Pair<String, String>> headers;
+
+    protected final String idempotencyKey;
+
+    protected final List<String> responsePointers;
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param url
+     *            the URL to call
+     * @param contentType
+     *            the content type of the payload
+     * @param payload
+     *            the payload to send
+     * @param headers
+     *            the custom headers to send
+     */
+    public WebhookRequest(final String url, final ContentType contentType, final String payload, final List<Pair<String, String>> headers)
+    {
+        this(url, contentType, new ByteArrayWebhookPayload(payload,
+                contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8), headers);
+    }
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param url
+     *            the URL to call
+     * @param contentType
+     *            the content type of the payload
+     * @param payload
+     *            the payload to send
+     * @param headers
+     *            the custom headers to send
+     */
+    public WebhookRequest(final String url, final ContentType contentType, final WebhookPayload payload,
+            final List<Pair<String, String>> headers)
+    {
+        this(url, contentType, payload, headers, null);
+    }
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param url
+     *            the URL to call
+     * @param contentType
+     *            the content type of the payload
+     * @param payload
+     *            the payload to send
+     * @param headers
+     *            the custom headers to send
+     * @param idempotencyKey
+     *            the key identifying identical webhook calls
+     */
+    public WebhookRequest(final String url, final ContentType contentType, final WebhookPayload payload,
+            final List<Pair<String, String>> headers, final String idempotencyKey)
+    {
+        ParameterCheck.mandatoryString("url", url);
+        ParameterCheck.mandatory("contentType", contentType);
+        ParameterCheck.mandatory("payload", payload);
+
+        this.url = url;
+        this.mimetype = contentType.getMimeType();
+        this.charset = contentType.getCharset() != null ? contentType.getCharset().name() : null;
+        this.payload = payload;
+        this.headers = headers != null ? Collections.unmodifiableList(new ArrayList<>(headers)) : Collections.emptyList();
+        this.idempotencyKey = idempotencyKey;
+        this.responsePointers = Collections.emptyList();
+    }
+
+    protected WebhookRequest(final WebhookRequest request, final WebhookPayload payload, final List<String> responsePointers)
+    {
+        ParameterCheck.mandatory("payload", payload);
+
+        this.url = request.url;
+        this.mimetype = request.mimetype;
+        this.charset = request.charset;
+        this.payload = payload;
+        this.headers = request.headers;
+        this.idempotencyKey = request.idempotencyKey;
+        this.responsePointers = responsePointers != null && !responsePointers.isEmpty()
+                ? Collections.unmodifiableList(new ArrayList<>(responsePointers))
+                : Collections.emptyList();
+    }
+
+    /**
+     * Creates a copy of this request with a different payload.
+     *
+     * @param payload
+     *            the payload of the copy
+     * @return the copy of this request
+     */
+    public WebhookRequest withPayload(final WebhookPayload payload)
+    {
+        return new WebhookRequest(this, payload, this.responsePointers);
+    }
+
+    /**
+     * Creates a copy of this request which requests values to be extracted from the response body.
+     *
+     * @param responsePointers
+     *            the JSON pointers of the values to extract from the response body
+     * @return the copy of this request
+     */
+    public WebhookRequest withResponsePointers(final List<String> responsePointers)
+    {
+        return new WebhookRequest(this, this.payload, responsePointers);
+    }
+
+    /**
+     * @return the url
+     */
+    public String getUrl()
+    {
+        return this.url;
+    }
+
+    /**
+     * Determines the route of the URL, i.e. the part of the URL which identifies the endpoint.
+     *
+     * @return the route in the form {@code scheme://host:port}
+     */
+    public String getRoute()
+    {
+        String route;
+        try
+        {
+            final URI uri = new URI(this.url);
+            final String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ENGLISH) : "http";
+            final String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ENGLISH) : "";
+            int port = uri.getPort();
+            if (port == -1)
+            {
+                port = "https".equals(scheme) ? 443 : 80;
+            }
+            route = scheme + "://" + host + ":" + port;
+        }
+        catch (final URISyntaxException ex)
+        {
+            // call will fail in the transport anyway
+            route = this.url;
+        }
+        return route;
+    }
+
+    /**
+     * @return the content type of the payload
+     */
+    public ContentType getContentType()
+    {
+        return ContentType.create(this.mimetype, this.charset != null ? Charset.forName(this.charset) : null);
+    }
+
+    /**
+     * @return the payload
+     */
+    public WebhookPayload getPayload()
+    {
+        return this.payload;
+    }
+
+    /**
+     * @return the headers
+     */
+    public List<Pair<String, String>> getHeaders()
+    {
+        return this.headers;
+    }
+
+    /**
+     * @return the key identifying identical webhook calls, or {@code null} if no key has been computed
+     */
+    public String getIdempotencyKey()
+    {
+        return this.idempotencyKey;
+    }
+
+    /**
+     * @return the JSON pointers of the values to extract from the response body - never {@code null}
+     */
+    public List<String> getResponsePointers()
+    {
+        // requests persisted before pointers were supported have no value
+        return this.responsePointers != null ? this.responsePointers : Collections.emptyList();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("WebhookRequest [");
+        builder.append("url=");
+        builder.append(this.url);
+        builder.append(", mimetype=");
+        builder.append(this.mimetype);
+        builder.append(", charset=");
+        builder.append(this.charset);
+        builder.append(", contentLength=");
+        builder.append(this.payload.getContentLength());
+        // header values may contain credentials (e.g. Authorization or API key headers) and must not end up in logs / JMX
+        builder.append(", headerNames=[");
+        for (int idx = 0; idx < this.headers.size(); idx++)
+        {
+            if (idx > 0)
+            {
+                builder.append(", ");
+            }
+            builder.append(this.headers.get(idx).getFirst());
+        }
+        builder.append("]");
+        builder.append(", idempotencyKey=");
+        builder.append(this.idempotencyKey);
+        builder.append(", responsePointers=");
+        builder.append(this.responsePointers);
+        builder.append("]");
+        return builder.toString();
+    }
+}
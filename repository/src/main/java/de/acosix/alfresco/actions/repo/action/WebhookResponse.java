@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Instances of this class represent the relevant details of the response to a successful webhook call. The response body itself is never
+ * retained, only the values {@link WebhookRequest#getResponsePointers() requested} by the call.
+ *
+ * @author Axel Faust
+ */
+public class WebhookResponse
+{
+
+    protected final int statusCode;
+
+    protected final Map<String, String> values;
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param statusCode
+     *            the HTTP status code of the response
+     * @param values
+     *            the values extracted from the response body, keyed by JSON pointer
+     */
+    public WebhookResponse(final int statusCode, final Map<String, String> values)
+    {
+        this.statusCode = statusCode;
+        this.values = values != null && !values.isEmpty() ? Collections.unmodifiableMap(new HashMap<>(values)) : Collections.emptyMap();
+    }
+
+    /**
+     * @return the HTTP status code
+     */
+    public int getStatusCode()
+    {
+        return this.statusCode;
+    }
+
+    /**
+     * Retrieves the values extracted from the response body. Pointers for which no value was found are not contained in the result,
+     * pointers for which a JSON {@code null} value was found are mapped to {@code null}.
+     *
+     * @return the read-only map of extracted values, keyed by JSON pointer
+     */
+    public Map<String, String> getValues()
+    {
+        return this.values;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("WebhookResponse [");
+        builder.append("statusCode=");
+        builder.append(this.statusCode);
+        builder.append(", values=");
+        builder.append(this.values);
+        builder.append("]");
+        return builder.toString();
+    }
+}
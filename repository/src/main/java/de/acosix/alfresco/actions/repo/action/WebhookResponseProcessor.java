@@ -0,0 +1,280 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.util.ParameterCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instances of this class process the body of a webhook response while it is being received, decoding at most a limited number of bytes
+ * in order to {@link WebhookRequest#getResponsePointers() extract requested values} and / or capture an excerpt of the body for logging.
+ * The body is never buffered as a whole, and callers are expected to discard any bytes remaining once {@link #isComplete() processing is
+ * complete}. Instances are not thread-safe and can only be used for a single response.
+ *
+ * @author Axel Faust
+ */
+public class WebhookResponseProcessor
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebhookResponseProcessor.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    protected final long maxBytes;
+
+    protected final CharsetDecoder decoder;
+
+    protected final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+    protected final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+    protected final StringBuilder body;
+
+    protected final JsonPointerExtractor extractor;
+
+    protected long bytesProcessed;
+
+    protected boolean truncated;
+
+    protected boolean finished;
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param charset
+     *            the character set of the response body
+     * @param captureBody
+     *            {@code true} if an excerpt of the body should be captured
+     * @param pointers
+     *            the JSON pointers of the values to extract from the body
+     * @param maxBytes
+     *            the maximum number of bytes of the body to process
+     */
+    public WebhookResponseProcessor(final Charset charset, final boolean captureBody, final List<String> pointers, final long maxBytes)
+    {
+        ParameterCheck.mandatory("charset", charset);
+        if (maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("maxBytes must be a positive integer");
+        }
+
+        this.maxBytes = maxBytes;
+        this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.body = captureBody ? new StringBuilder((int) Math.min(maxBytes, BUFFER_SIZE)) : null;
+        this.extractor = pointers != null && !pointers.isEmpty() ? new JsonPointerExtractor(pointers) : null;
+    }
+
+    /**
+     * Creates a processor for the body of a response to a webhook request, if any processing is required.
+     *
+     * @param request
+     *            the request to which the response belongs
+     * @param extractValues
+     *            {@code true} if the requested values should be extracted from the body, {@code false} otherwise (e.g. for error
+     *            responses)
+     * @param mimetype
+     *            the mimetype of the response body
+     * @param charset
+     *            the character set of the response body, or {@code null} if the response does not specify one
+     * @param captureBody
+     *            {@code true} if an excerpt of the body should be captured for logging if the body is textual
+     * @param maxBytes
+     *            the maximum number of bytes of the body to process
+     * @return the processor, or {@code null} if the body can be discarded without processing
+     */
+    public static WebhookResponseProcessor create(final WebhookRequest request, final boolean extractValues, final String mimetype,
+            final Charset charset, final boolean captureBody, final long maxBytes)
+    {
+        final String normalisedMimetype = mimetype != null ? mimetype.toLowerCase(Locale.ENGLISH) : MimetypeMap.MIMETYPE_BINARY;
+        final boolean json = normalisedMimetype.equals(MimetypeMap.MIMETYPE_JSON) || normalisedMimetype.endsWith("+json");
+        final boolean textual = json || normalisedMimetype.startsWith(MimetypeMap.PREFIX_TEXT) || normalisedMimetype.endsWith("xml");
+
+        final List<String> pointers = extractValues ? request.getResponsePointers() : Collections.<String> emptyList();
+        if (!pointers.isEmpty() && !json)
+        {
+            LOGGER.debug("Webhook call to URL {} responded with non-JSON mimetype {} - response values cannot be extracted",
+                    request.getUrl(), mimetype);
+        }
+
+        WebhookResponseProcessor processor = null;
+        if ((captureBody && textual) || (json && !pointers.isEmpty()))
+        {
+            processor = new WebhookResponseProcessor(charset != null ? charset : StandardCharsets.UTF_8, captureBody && textual,
+                    json ? pointers : null, maxBytes);
+        }
+        return processor;
+    }
+
+    /**
+     * Processes the body read from a stream until processing is complete or the stream ends.
+     *
+     * @param in
+     *            the stream from which to read - the stream is not closed by this operation
+     * @throws IOException
+     *             if an error occurs reading from the stream
+     */
+    public void process(final InputStream in) throws IOException
+    {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while (!this.isComplete() && (read = in.read(buffer)) != -1)
+        {
+            this.update(ByteBuffer.wrap(buffer, 0, read));
+        }
+        if (this.bytesProcessed >= this.maxBytes && this.body != null)
+        {
+            // check whether the limit cut off the body
+            this.truncated = in.read() != -1;
+        }
+        this.finish();
+    }
+
+    /**
+     * Processes the next bytes of the body. Any bytes exceeding the limit of this processor are skipped.
+     *
+     * @param src
+     *            the bytes to process - the buffer will have no remaining bytes after this operation
+     */
+    public void update(final ByteBuffer src)
+    {
+        while (src.hasRemaining() && !this.isComplete())
+        {
+            final long remainingLimit = this.maxBytes - this.bytesProcessed;
+            final int count = (int) Math.min(Math.min(src.remaining(), this.bytes.remaining()), remainingLimit);
+
+            final ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + count);
+            this.bytes.put(slice);
+            src.position(src.position() + count);
+            this.bytesProcessed += count;
+
+            this.bytes.flip();
+            this.decoder.decode(this.bytes, this.chars, false);
+            this.bytes.compact();
+            this.processChars();
+        }
+        if (src.hasRemaining() && this.bytesProcessed >= this.maxBytes)
+        {
+            this.truncated = true;
+        }
+        // skip anything we do not need
+        src.position(src.limit());
+    }
+
+    /**
+     * Completes processing of the body, decoding any remaining bytes.
+     */
+    public void finish()
+    {
+        if (!this.finished)
+        {
+            this.finished = true;
+
+            this.bytes.flip();
+            this.decoder.decode(this.bytes, this.chars, true);
+            this.decoder.flush(this.chars);
+            this.bytes.clear();
+            this.processChars();
+
+            if (this.extractor != null)
+            {
+                this.extractor.finish();
+                if (this.extractor.isInvalid())
+                {
+                    LOGGER.debug("Webhook response is not valid JSON - values may not have been extracted");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if no further bytes need to be processed, either because the limit has been reached or all requested values
+     *         have been extracted and no body excerpt is being captured
+     */
+    public boolean isComplete()
+    {
+        return this.finished || this.bytesProcessed >= this.maxBytes
+                || (this.body == null && (this.extractor == null || this.extractor.isDone()));
+    }
+
+    /**
+     * @return the number of bytes which have been processed
+     */
+    public long getBytesProcessed()
+    {
+        return this.bytesProcessed;
+    }
+
+    /**
+     * @return the captured excerpt of the body, or {@code null} if no excerpt has been captured
+     */
+    public String getBody()
+    {
+        String body = null;
+        if (this.body != null)
+        {
+            body = this.truncated ? this.body + "... [truncated after " + this.maxBytes + " bytes]" : this.body.toString();
+        }
+        return body;
+    }
+
+    /**
+     * Builds the response from the processed body.
+     *
+     * @param statusCode
+     *            the HTTP status code of the response
+     * @return the response
+     */
+    public WebhookResponse toResponse(final int statusCode)
+    {
+        this.finish();
+        return new WebhookResponse(statusCode, this.extractor != null ? this.extractor.getValues() : null);
+    }
+
+    protected void processChars()
+    {
+        this.chars.flip();
+        if (this.chars.hasRemaining())
+        {
+            final char[] array = this.chars.array();
+            final int offset = this.chars.arrayOffset() + this.chars.position();
+            final int length = this.chars.remaining();
+            if (this.body != null)
+            {
+                this.body.append(array, offset, length);
+            }
+            if (this.extractor != null && !this.extractor.isDone())
+            {
+                this.extractor.accept(array, offset, length);
+            }
+        }
+        this.chars.clear();
+    }
+}
@@ -0,0 +1,767 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.processor.ProcessorExtension;
+import org.alfresco.repo.content.ContentServicePolicies.OnContentUpdatePolicy;
+import org.alfresco.repo.node.NodeServicePolicies.BeforeDeleteNodePolicy;
+import org.alfresco.repo.policy.Behaviour.NotificationFrequency;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.processor.BaseProcessor;
+import org.alfresco.repo.template.ClassPathRepoTemplateLoader;
+import org.alfresco.repo.template.QNameAwareObjectWrapper;
+import org.alfresco.repo.template.TemplateNode;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.TemplateException;
+import org.alfresco.service.cmr.repository.TemplateImageResolver;
+import org.alfresco.service.cmr.repository.TemplateProcessor;
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.PropertyCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+import freemarker.template.Configuration;
+import freemarker.template.SimpleCollection;
+import freemarker.template.Template;
+import freemarker.template.TemplateCollectionModel;
+import freemarker.template.TemplateExceptionHandler;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateHashModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+
+/**
+ * Instances of this class keep parsed FreeMarker templates used for webhook calls in bounded, least-recently-used caches, avoiding the
+ * repeated content read and parsing cost of the default template service, which does not retain parsed templates between calls.
+ * Templates stored in the repository are keyed by their node and validated against the URL of their current content, so that any
+ * update is picked up immediately. Entries are additionally invalidated via node policies when a template node is updated or deleted.
+ *
+ * @author Axel Faust
+ */
+public class WebhookTemplateCache implements InitializingBean, OnContentUpdatePolicy, BeforeDeleteNodePolicy, WebhookTemplateCacheMBean
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebhookTemplateCache.class);
+
+    private static final String TEMPLATE_TYPE_FREEMARKER = "freemarker";
+
+    private static final String KEY_IMAGE_RESOLVER = "imageresolver";
+
+    protected ServiceRegistry serviceRegistry;
+
+    protected PolicyComponent policyComponent;
+
+    protected int maxNodeTemplates = 100;
+
+    protected int maxStringTemplates = 500;
+
+    protected Configuration configuration;
+
+    protected Map<NodeRef, CachedNodeTemplate> nodeTemplates;
+
+    protected Map<String, Template> stringTemplates;
+
+    protected final AtomicLong nodeTemplateHits = new AtomicLong();
+
+    protected final AtomicLong nodeTemplateMisses = new AtomicLong();
+
+    protected final AtomicLong stringTemplateHits = new AtomicLong();
+
+    protected final AtomicLong stringTemplateMisses = new AtomicLong();
+
+    protected final AtomicLong evictions = new AtomicLong();
+
+    protected final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "serviceRegistry", this.serviceRegistry);
+        PropertyCheck.mandatory(this, "policyComponent", this.policyComponent);
+
+        this.configuration = new Configuration();
+        this.configuration.setObjectWrapper(new QNameAwareObjectWrapper());
+        this.configuration.setLocalizedLookup(false);
+        this.configuration.setDefaultEncoding(StandardCharsets.UTF_8.name());
+        this.configuration.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        // support includes / imports of other templates from the repository or classpath
+        this.configuration.setTemplateLoader(new ClassPathRepoTemplateLoader(this.serviceRegistry.getNodeService(),
+                this.serviceRegistry.getContentService(), StandardCharsets.UTF_8.name()));
+
+        this.nodeTemplates = new LruMap<>(this.maxNodeTemplates, this.evictions);
+        this.stringTemplates = new LruMap<>(this.maxStringTemplates, this.evictions);
+
+        this.policyComponent.bindClassBehaviour(OnContentUpdatePolicy.QNAME, ContentModel.TYPE_CONTENT,
+                new JavaBehaviour(this, "onContentUpdate", NotificationFrequency.EVERY_EVENT));
+        this.policyComponent.bindClassBehaviour(BeforeDeleteNodePolicy.QNAME, ContentModel.TYPE_CONTENT,
+                new JavaBehaviour(this, "beforeDeleteNode", NotificationFrequency.EVERY_EVENT));
+    }
+
+    /**
+     * @param serviceRegistry
+     *            the serviceRegistry to set
+     */
+    public void setServiceRegistry(final ServiceRegistry serviceRegistry)
+    {
+        this.serviceRegistry = serviceRegistry;
+    }
+
+    /**
+     * @param policyComponent
+     *            the policyComponent to set
+     */
+    public void setPolicyComponent(final PolicyComponent policyComponent)
+    {
+        this.policyComponent = policyComponent;
+    }
+
+    /**
+     * @param maxNodeTemplates
+     *            the maximum number of parsed templates from the repository to keep - a non-positive value disables caching
+     */
+    public void setMaxNodeTemplates(final int maxNodeTemplates)
+    {
+        this.maxNodeTemplates = maxNodeTemplates;
+    }
+
+    /**
+     * @param maxStringTemplates
+     *            the maximum number of parsed inline template strings to keep - a non-positive value disables caching
+     */
+    public void setMaxStringTemplates(final int maxStringTemplates)
+    {
+        this.maxStringTemplates = maxStringTemplates;
+    }
+
+    /**
+     * Checks whether an inline template string is constant, i.e. does not contain any FreeMarker interpolations, directives or comments,
+     * and would thus always render as-is regardless of the model.
+     *
+     * @param template
+     *            the template string
+     * @return {@code true} if the template is constant, {@code false} otherwise
+     */
+    public static boolean isConstant(final String template)
+    {
+        boolean constant = true;
+        for (int idx = 0, max = template.length() - 1; idx < max && constant; idx++)
+        {
+            final char c = template.charAt(idx);
+            final char next = template.charAt(idx + 1);
+            switch (c)
+            {
+                case '$':
+                case '#':
+                    // ${..} / #{..} interpolations
+                    constant = next != '{';
+                    break;
+                case '<':
+                case '[':
+                    // <#..> / <@..> / [#..] / [@..] directives / macro calls, including their closing tags
+                    constant = next != '#' && next != '@'
+                            && !(next == '/' && idx + 2 <= max && (template.charAt(idx + 2) == '#' || template.charAt(idx + 2) == '@'));
+                    break;
+                default:
+                    // NO-OP
+            }
+        }
+        return constant;
+    }
+
+    /**
+     * Validates a template stored in the repository by loading and parsing it, which also places it into this cache.
+     *
+     * @param template
+     *            the node of the template
+     * @throws IllegalArgumentException
+     *             if the template cannot be loaded or has syntax errors
+     */
+    public void validateTemplate(final NodeRef template)
+    {
+        ParameterCheck.mandatory("template", template);
+
+        try
+        {
+            this.getNodeTemplate(template);
+        }
+        catch (final TemplateException tex)
+        {
+            throw new IllegalArgumentException(describeFailure(tex), tex);
+        }
+    }
+
+    /**
+     * Validates an inline template string by parsing it, which also places it into this cache unless it is
+     * {@link #isConstant(String) constant}.
+     *
+     * @param template
+     *            the template string
+     * @throws IllegalArgumentException
+     *             if the template has syntax errors
+     */
+    public void validateTemplateString(final String template)
+    {
+        ParameterCheck.mandatory("template", template);
+
+        if (!isConstant(template))
+        {
+            try
+            {
+                this.getStringTemplate(template);
+            }
+            catch (final TemplateException tex)
+            {
+                throw new IllegalArgumentException(describeFailure(tex), tex);
+            }
+        }
+    }
+
+    /**
+     * Renders a template stored in the repository.
+     *
+     * @param template
+     *            the node of the template
+     * @param model
+     *            the model for the template
+     * @return the rendered result
+     */
+    public String processTemplate(final NodeRef template, final Map<String, Object> model)
+    {
+        ParameterCheck.mandatory("template", template);
+        ParameterCheck.mandatory("model", model);
+
+        final Template parsedTemplate = this.getNodeTemplate(template);
+        return this.process(parsedTemplate, model);
+    }
+
+    /**
+     * Renders a template stored in the repository directly into a writer.
+     *
+     * @param template
+     *            the node of the template
+     * @param model
+     *            the model for the template
+     * @param out
+     *            the writer to which to render the result
+     */
+    public void processTemplate(final NodeRef template, final Map<String, Object> model, final Writer out)
+    {
+        ParameterCheck.mandatory("template", template);
+        ParameterCheck.mandatory("model", model);
+        ParameterCheck.mandatory("out", out);
+
+        final Template parsedTemplate = this.getNodeTemplate(template);
+        this.process(parsedTemplate, model, out);
+    }
+
+    /**
+     * Renders an inline template string.
+     *
+     * @param template
+     *            the template string
+     * @param model
+     *            the model for the template
+     * @return the rendered result
+     */
+    public String processTemplateString(final String template, final Map<String, Object> model)
+    {
+        ParameterCheck.mandatory("template", template);
+        ParameterCheck.mandatory("model", model);
+
+        final String result;
+        if (isConstant(template))
+        {
+            result = template;
+        }
+        else
+        {
+            final Template parsedTemplate = this.getStringTemplate(template);
+            result = this.process(parsedTemplate, model);
+        }
+        return result;
+    }
+
+    /**
+     * Renders an inline template string directly into a writer.
+     *
+     * @param template
+     *            the template string
+     * @param model
+     *            the model for the template
+     * @param out
+     *            the writer to which to render the result
+     */
+    public void processTemplateString(final String template, final Map<String, Object> model, final Writer out)
+    {
+        ParameterCheck.mandatory("template", template);
+        ParameterCheck.mandatory("model", model);
+        ParameterCheck.mandatory("out", out);
+
+        if (isConstant(template))
+        {
+            try
+            {
+                out.write(template);
+            }
+            catch (final IOException ioex)
+            {
+                throw new TemplateException("Failed to write constant template string", ioex);
+            }
+        }
+        else
+        {
+            final Template parsedTemplate = this.getStringTemplate(template);
+            this.process(parsedTemplate, model, out);
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void onContentUpdate(final NodeRef nodeRef, final boolean newContent)
+    {
+        this.invalidate(nodeRef);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeDeleteNode(final NodeRef nodeRef)
+    {
+        this.invalidate(nodeRef);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        synchronized (this.nodeTemplates)
+        {
+            this.nodeTemplates.clear();
+        }
+        synchronized (this.stringTemplates)
+        {
+            this.stringTemplates.clear();
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNodeTemplateHits()
+    {
+        return this.nodeTemplateHits.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNodeTemplateMisses()
+    {
+        return this.nodeTemplateMisses.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getStringTemplateHits()
+    {
+        return this.stringTemplateHits.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getStringTemplateMisses()
+    {
+        return this.stringTemplateMisses.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEvictions()
+    {
+        return this.evictions.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long getInvalidations()
+    {
+        return this.invalidations.get();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNodeTemplateCount()
+    {
+        synchronized (this.nodeTemplates)
+        {
+            return this.nodeTemplates.size();
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int getStringTemplateCount()
+    {
+        synchronized (this.stringTemplates)
+        {
+            return this.stringTemplates.size();
+        }
+    }
+
+    protected void invalidate(final NodeRef nodeRef)
+    {
+        final CachedNodeTemplate removed;
+        synchronized (this.nodeTemplates)
+        {
+            removed = this.nodeTemplates.remove(nodeRef);
+        }
+
+        if (removed != null)
+        {
+            LOGGER.debug("Invalidated cached template {}", nodeRef);
+            this.invalidations.incrementAndGet();
+        }
+    }
+
+    protected static String describeFailure(final TemplateException tex)
+    {
+        // the parse error (incl. line / column) is only contained in the cause
+        return tex.getCause() != null ? tex.getMessage() + ": " + tex.getCause().getMessage() : tex.getMessage();
+    }
+
+    protected Template getNodeTemplate(final NodeRef template)
+    {
+        // reading the content property also enforces read permission of the current user on the template
+        final Serializable contentProperty = this.serviceRegistry.getNodeService().getProperty(template, ContentModel.PROP_CONTENT);
+        if (!(contentProperty instanceof ContentData))
+        {
+            throw new TemplateException("Template " + template + " has no content");
+        }
+        final String contentUrl = ((ContentData) contentProperty).getContentUrl();
+
+        CachedNodeTemplate cachedTemplate;
+        synchronized (this.nodeTemplates)
+        {
+            cachedTemplate = this.nodeTemplates.get(template);
+        }
+
+        if (cachedTemplate != null && cachedTemplate.contentUrl.equals(contentUrl))
+        {
+            this.nodeTemplateHits.incrementAndGet();
+        }
+        else
+        {
+            this.nodeTemplateMisses.incrementAndGet();
+            LOGGER.debug("Loading and parsing template {} with content {}", template, contentUrl);
+
+            final ContentReader reader = this.serviceRegistry.getContentService().getReader(template, ContentModel.PROP_CONTENT);
+            if (reader == null || !reader.exists())
+            {
+                throw new TemplateException("Template " + template + " has no content");
+            }
+            final String encoding = reader.getEncoding() != null ? reader.getEncoding() : StandardCharsets.UTF_8.name();
+            try (Reader templateReader = new InputStreamReader(reader.getContentInputStream(), encoding))
+            {
+                cachedTemplate = new CachedNodeTemplate(contentUrl, new Template(template.toString(), templateReader, this.configuration));
+            }
+            catch (final IOException ioex)
+            {
+                throw new TemplateException("Failed to load template " + template, ioex);
+            }
+
+            if (this.maxNodeTemplates > 0)
+            {
+                synchronized (this.nodeTemplates)
+                {
+                    this.nodeTemplates.put(template, cachedTemplate);
+                }
+            }
+        }
+
+        return cachedTemplate.template;
+    }
+
+    protected Template getStringTemplate(final String template)
+    {
+        Template parsedTemplate;
+        synchronized (this.stringTemplates)
+        {
+            parsedTemplate = this.stringTemplates.get(template);
+        }
+
+        if (parsedTemplate != null)
+        {
+            this.stringTemplateHits.incrementAndGet();
+        }
+        else
+        {
+            this.stringTemplateMisses.incrementAndGet();
+            LOGGER.debug("Parsing template string {}", template);
+
+            try
+            {
+                parsedTemplate = new Template("string template", new StringReader(template), this.configuration);
+            }
+            catch (final IOException ioex)
+            {
+                throw new TemplateException("Failed to parse template string " + template, ioex);
+            }
+
+            if (this.maxStringTemplates > 0)
+            {
+                synchronized (this.stringTemplates)
+                {
+                    this.stringTemplates.put(template, parsedTemplate);
+                }
+            }
+        }
+
+        return parsedTemplate;
+    }
+
+    protected String process(final Template template, final Map<String, Object> model)
+    {
+        final StringWriter writer = new StringWriter(1024);
+        this.process(template, model, writer);
+        return writer.toString();
+    }
+
+    protected void process(final Template template, final Map<String, Object> model, final Writer out)
+    {
+        final TemplateHashModel templateModel = new TemplateModelAdapter(model);
+        try
+        {
+            // parsed templates are immutable and can be processed concurrently
+            template.process(templateModel, out);
+        }
+        catch (final freemarker.template.TemplateException | IOException ex)
+        {
+            throw new TemplateException("Failed to process template " + template.getName(), ex);
+        }
+    }
+
+    protected Object convertValue(final Object value, final TemplateImageResolver imageResolver)
+    {
+        Object result = value;
+        if (value instanceof NodeRef)
+        {
+            result = new TemplateNode((NodeRef) value, this.serviceRegistry, imageResolver);
+        }
+        else if (value instanceof List<?>)
+        {
+            final List<?> values = (List<?>) value;
+            final List<Object> convertedValues = new ArrayList<>(values.size());
+            for (final Object element : values)
+            {
+                convertedValues.add(this.convertValue(element, imageResolver));
+            }
+            result = convertedValues;
+        }
+        return result;
+    }
+
+    /**
+     * Instances of this class expose a model to FreeMarker, converting node references (including in lists) in the same way as the default
+     * FreeMarker template processor. In contrast to the default processor, values are only retrieved from the model and converted when
+     * the template actually accesses them, so that {@link LazyTemplateModel lazy values} which are never used are never resolved.
+     *
+     * @author Axel Faust
+     */
+    protected class TemplateModelAdapter implements TemplateHashModelEx
+    {
+
+        protected final Map<String, Object> model;
+
+        protected final TemplateImageResolver imageResolver;
+
+        protected final Map<String, TemplateModel> wrappedValues = new HashMap<>();
+
+        protected Map<String, Object> extensions;
+
+        protected TemplateModelAdapter(final Map<String, Object> model)
+        {
+            this.model = model;
+
+            final Object imageResolverCandidate = model.get(KEY_IMAGE_RESOLVER);
+            this.imageResolver = imageResolverCandidate instanceof TemplateImageResolver ? (TemplateImageResolver) imageResolverCandidate
+                    : null;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public TemplateModel get(final String key) throws TemplateModelException
+        {
+            TemplateModel wrappedValue = this.wrappedValues.get(key);
+            // re-use wrapped values so that e.g. template nodes only load their properties once
+            if (wrappedValue == null && !this.wrappedValues.containsKey(key))
+            {
+                final Object value = this.model.containsKey(key) ? WebhookTemplateCache.this.convertValue(this.model.get(key),
+                        this.imageResolver) : this.getExtensions().get(key);
+                wrappedValue = value != null ? WebhookTemplateCache.this.configuration.getObjectWrapper().wrap(value) : null;
+                this.wrappedValues.put(key, wrappedValue);
+            }
+            return wrappedValue;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isEmpty()
+        {
+            return this.model.isEmpty() && this.getExtensions().isEmpty();
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public int size()
+        {
+            return this.getKeys().size();
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public TemplateCollectionModel keys()
+        {
+            return new SimpleCollection(this.getKeys(), WebhookTemplateCache.this.configuration.getObjectWrapper());
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public TemplateCollectionModel values() throws TemplateModelException
+        {
+            final Set<String> keys = this.getKeys();
+            final List<TemplateModel> values = new ArrayList<>(keys.size());
+            for (final String key : keys)
+            {
+                values.add(this.get(key));
+            }
+            return new SimpleCollection(values, WebhookTemplateCache.this.configuration.getObjectWrapper());
+        }
+
+        protected Set<String> getKeys()
+        {
+            final Set<String> keys = new LinkedHashSet<>(this.getExtensions().keySet());
+            keys.addAll(this.model.keySet());
+            return keys;
+        }
+
+        protected Map<String, Object> getExtensions()
+        {
+            if (this.extensions == null)
+            {
+                this.extensions = new HashMap<>();
+                final TemplateProcessor processor = WebhookTemplateCache.this.serviceRegistry.getTemplateService()
+                        .getTemplateProcessor(TEMPLATE_TYPE_FREEMARKER);
+                if (processor instanceof BaseProcessor)
+                {
+                    for (final ProcessorExtension extension : ((BaseProcessor) processor).getProcessorExtensions())
+                    {
+                        this.extensions.put(extension.getExtensionName(), extension);
+                    }
+                }
+            }
+            return this.extensions;
+        }
+    }
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    protected static class CachedNodeTemplate
+    {
+
+        protected final String contentUrl;
+
+        protected final Template template;
+
+        protected CachedNodeTemplate(final String contentUrl, final Template template)
+        {
+            this.contentUrl = contentUrl;
+            this.template = template;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+/**
+ * Management interface of the {@link WebhookTemplateCache webhook template cache} exposing its statistics.
+ *
+ * @author Axel Faust
+ */
+public interface WebhookTemplateCacheMBean
+{
+
+    /**
+     * @return the number of lookups of repository templates served from the cache
+     */
+    long getNodeTemplateHits();
+
+    /**
+     * @return the number of lookups of repository templates which required the template to be loaded and parsed
+     */
+    long getNodeTemplateMisses();
+
+    /**
+     * @return the number of lookups of inline template strings served from the cache
+     */
+    long getStringTemplateHits();
+
+    /**
+     * @return the number of lookups of inline template strings which required the template to be parsed
+     */
+    long getStringTemplateMisses();
+
+    /**
+     * @return the number of templates evicted from the cache due to its size limits
+     */
+    long getEvictions();
+
+    /**
+     * @return the number of templates removed from the cache due to updates / deletions
+     */
+    long getInvalidations();
+
+    /**
+     * @return the number of repository templates currently cached
+     */
+    int getNodeTemplateCount();
+
+    /**
+     * @return the number of inline template strings currently cached
+     */
+    int getStringTemplateCount();
+
+    /**
+     * Removes all parsed templates from the cache.
+     */
+    void clear();
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Instances of this interface perform the actual delivery of rendered webhook requests to their target endpoints.
+ *
+ * @author Axel Faust
+ */
+public interface WebhookTransport
+{
+
+    /**
+     * Sends a webhook request to its target endpoint, blocking until a response has been received.
+     *
+     * @param request
+     *            the request to send
+     * @return the response of the endpoint
+     * @throws WebhookCallException
+     *             if the call failed due to an I/O error or the endpoint responded with an HTTP error status
+     */
+    WebhookResponse send(WebhookRequest request);
+
+    /**
+     * Sends a webhook request to its target endpoint without blocking the calling thread, if supported by this transport. The default
+     * implementation simply performs a {@link #send(WebhookRequest) blocking call} in the calling thread. Non-blocking transports abort
+     * the call if the returned future is {@link CompletableFuture#cancel(boolean) cancelled} before it has completed.
+     *
+     * @param request
+     *            the request to send
+     * @return the future completing with the response of the endpoint once it has been received, or completing exceptionally with a
+     *         {@link WebhookCallException} if the call failed due to an I/O error or the endpoint responded with an HTTP error status
+     */
+    default CompletableFuture<WebhookResponse> sendAsync(final WebhookRequest request)
+    {
+        final CompletableFuture<WebhookResponse> future = new CompletableFuture<>();
+        try
+        {
+            future.complete(this.send(request));
+        }
+        catch (final RuntimeException ex)
+        {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Checks whether this transport performs {@link #sendAsync(WebhookRequest) asynchronous calls} without blocking the calling thread,
+     * so that callers may issue many concurrent calls from a single thread.
+     *
+     * @return {@code true} if asynchronous calls are non-blocking, {@code false} otherwise
+     */
+    default boolean isNonBlocking()
+    {
+        return false;
+    }
+}
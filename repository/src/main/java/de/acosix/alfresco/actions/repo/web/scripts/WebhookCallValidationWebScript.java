@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.web.scripts;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.alfresco.util.PropertyCheck;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.extensions.webscripts.Cache;
+import org.springframework.extensions.webscripts.DeclarativeWebScript;
+import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptException;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+
+import de.acosix.alfresco.actions.repo.action.WebhookCallActionExecuter;
+
+/**
+ * Instances of this web script validate the parameters of a webhook call action before it is saved, so that the rule configuration
+ * dialog can report invalid parameters / templates to the user instead of relying on the error raised when the rule is saved.
+ *
+ * @author Axel Faust
+ */
+public class WebhookCallValidationWebScript extends DeclarativeWebScript implements InitializingBean
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebhookCallValidationWebScript.class);
+
+    protected WebhookCallActionExecuter webhookCallActionExecuter;
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "webhookCallActionExecuter", this.webhookCallActionExecuter);
+    }
+
+    /**
+     * @param webhookCallActionExecuter
+     *            the webhookCallActionExecuter to set
+     */
+    public void setWebhookCallActionExecuter(final WebhookCallActionExecuter webhookCallActionExecuter)
+    {
+        this.webhookCallActionExecuter = webhookCallActionExecuter;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected Map<String, Object> executeImpl(final WebScriptRequest req, final Status status, final Cache cache)
+    {
+        final Map<String, Serializable> parameterValues = this.readParameterValues(req);
+
+        final Map<String, Object> model = new HashMap<>();
+        try
+        {
+            this.webhookCallActionExecuter.validateParameters(parameterValues);
+            model.put("valid", Boolean.TRUE);
+        }
+        catch (final RuntimeException ex)
+        {
+            LOGGER.debug("Webhook call action parameters {} failed validation", parameterValues, ex);
+            model.put("valid", Boolean.FALSE);
+            model.put("message", ex.getMessage());
+        }
+        return model;
+    }
+
+    protected Map<String, Serializable> readParameterValues(final WebScriptRequest req)
+    {
+        final Map<String, Serializable> parameterValues = new HashMap<>();
+        try
+        {
+            final JSONObject json = new JSONObject(new JSONTokener(req.getContent().getContent()));
+            final JSONObject params = json.optJSONObject("params");
+            if (params != null)
+            {
+                final Iterator<?> keys = params.keys();
+                while (keys.hasNext())
+                {
+                    final String key = String.valueOf(keys.next());
+                    final Object value = params.get(key);
+                    if (value != JSONObject.NULL)
+                    {
+                        parameterValues.put(key, value instanceof Boolean ? (Boolean) value : String.valueOf(value));
+                    }
+                }
+            }
+        }
+        catch (final IOException | JSONException ex)
+        {
+            throw new WebScriptException(Status.STATUS_BAD_REQUEST, "Request body could not be read as JSON", ex);
+        }
+        return parameterValues;
+    }
+}
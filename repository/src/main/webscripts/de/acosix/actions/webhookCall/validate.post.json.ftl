@@ -0,0 +1,6 @@
+<#escape x as jsonUtils.encodeJSONString(x)>
+{
+    "valid": ${valid?string}<#if message??>,
+    "message": "${message}"</#if>
+}
+</#escape>
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+
+import org.apache.http.entity.ContentType;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.acosix.alfresco.actions.repo.action.GuardedWebhookTransport.CircuitState;
+import de.acosix.alfresco.actions.repo.action.GuardedWebhookTransport.Endpoint;
+
+/**
+ * Tests for the circuit breaker and concurrency limit state of the endpoints of {@link GuardedWebhookTransport}.
+ *
+ * @author Axel Faust
+ */
+public class GuardedWebhookTransportTest
+{
+
+    private static final String ROUTE = "http://localhost:8080";
+
+    private static final long FAST = 10;
+
+    private static final long SLOW = 1000;
+
+    private GuardedWebhookTransport transport;
+
+    private boolean nonBlocking;
+
+    @Before
+    public void setup()
+    {
+        this.nonBlocking = false;
+        this.transport = new GuardedWebhookTransport();
+        this.transport.setDelegate(new WebhookTransport()
+        {
+
+            /**
+             *
+             * {@inheritDoc}
+             */
+            @Override
+            public WebhookResponse send(final WebhookRequest request)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            /**
+             *
+             * {@inheritDoc}
+             */
+            @Override
+            public boolean isNonBlocking()
+            {
+                return GuardedWebhookTransportTest.this.nonBlocking;
+            }
+        });
+        this.transport.setSlidingWindowSize(4);
+        this.transport.setMinimumNumberOfCalls(4);
+        this.transport.setFailureRateThreshold(75);
+        this.transport.setSlowCallRateThreshold(75);
+        this.transport.setSlowCallDurationThreshold(100);
+        this.transport.setWaitDurationInOpenState(60000);
+        this.transport.setPermittedCallsInHalfOpenState(2);
+        this.transport.setMaxConcurrentCallsPerRoute(1);
+        this.transport.setMaxConcurrentStreamsPerRoute(3);
+        this.transport.setMaxConcurrencyWait(0);
+        this.transport.afterPropertiesSet();
+    }
+
+    @Test
+    public void staysClosedBelowMinimumNumberOfCalls()
+    {
+        final Endpoint endpoint = this.transport.new Endpoint(ROUTE);
+        for (int idx = 0; idx < 3; idx++)
+        {
+            endpoint.onResult(true, FAST);
+        }
+        assertSame(CircuitState.CLOSED, endpoint.getState());
+
+        endpoint.onResult(false, FAST);
+        assertSame(CircuitState.OPEN, endpoint.getState());
+    }
+
+    @Test
+    public void slidingWindowEvictsOldestCalls()
+    {
+        final Endpoint endpoint = this.transport.new Endpoint(ROUTE);
+        for (int idx = 0; idx < 4; idx++)
+        {
+            endpoint.onResult(false, FAST);
+        }
+        endpoint.onResult(true, FAST);
+        endpoint.onResult(true, FAST);
+        assertSame(CircuitState.CLOSED, endpoint.getState());
+
+        // 3 of the last 4 calls failed, while only 3 of all 7 calls did
+        endpoint.onResult(true, FAST);
+        assertSame(CircuitState.OPEN, endpoint.getState());
+    }
+
+    @Test
+    public void opensOnSlowCallRate()
+    {
+        final Endpoint endpoint = this.transport.new Endpoint(ROUTE);
+        endpoint.onResult(false, FAST);
+        endpoint.onResult(false, SLOW);
+        endpoint.onResult(false, SLOW);
+        endpoint.onResult(false, FAST);
+        assertSame(CircuitState.CLOSED, endpoint.getState());
+
+        endpoint.onResult(false, SLOW);
+        assertSame(CircuitState.OPEN, endpoint.getState());
+    }
+
+    @Test
+    public void openCircuitRejectsCalls()
+    {
+        final Endpoint endpoint = this.openEndpoint();
+        assertFalse(endpoint.tryAcquirePermission());
+        assertTrue(endpoint.getRemainingOpenDuration() > 0);
+        assertTrue(endpoint.getRemainingOpenDuration() <= 60000);
+
+        // results of calls permitted before the circuit opened are ignored
+        endpoint.onResult(false, FAST);
+        assertSame(CircuitState.OPEN, endpoint.getState());
+    }
+
+    @Test
+    public void halfOpenPermitsLimitedProbes()
+    {
+        this.transport.setWaitDurationInOpenState(0);
+        final Endpoint endpoint = this.openEndpoint();
+
+        assertTrue(endpoint.tryAcquirePermission());
+        assertSame(CircuitState.HALF_OPEN, endpoint.getState());
+        assertTrue(endpoint.tryAcquirePermission());
+        assertFalse(endpoint.tryAcquirePermission());
+    }
+
+    @Test
+    public void halfOpenClosesAfterSuccessfulProbes()
+    {
+        this.transport.setWaitDurationInOpenState(0);
+        final Endpoint endpoint = this.openEndpoint();
+
+        assertTrue(endpoint.tryAcquirePermission());
+        assertTrue(endpoint.tryAcquirePermission());
+        endpoint.onResult(false, FAST);
+        assertSame(CircuitState.HALF_OPEN, endpoint.getState());
+        endpoint.onResult(false, FAST);
+        assertSame(CircuitState.CLOSED, endpoint.getState());
+
+        // the window starts empty after closing
+        for (int idx = 0; idx < 3; idx++)
+        {
+            endpoint.onResult(true, FAST);
+        }
+        assertSame(CircuitState.CLOSED, endpoint.getState());
+    }
+
+    @Test
+    public void halfOpenReopensOnFailedOrSlowProbe()
+    {
+        this.transport.setWaitDurationInOpenState(0);
+        Endpoint endpoint = this.openEndpoint();
+        assertTrue(endpoint.tryAcquirePermission());
+        endpoint.onResult(true, FAST);
+        assertSame(CircuitState.OPEN, endpoint.getState());
+
+        endpoint = this.openEndpoint();
+        assertTrue(endpoint.tryAcquirePermission());
+        endpoint.onResult(false, SLOW);
+        assertSame(CircuitState.OPEN, endpoint.getState());
+    }
+
+    @Test
+    public void releasedPermissionAllowsAnotherProbe()
+    {
+        this.transport.setWaitDurationInOpenState(0);
+        final Endpoint endpoint = this.openEndpoint();
+
+        assertTrue(endpoint.tryAcquirePermission());
+        assertTrue(endpoint.tryAcquirePermission());
+        assertFalse(endpoint.tryAcquirePermission());
+        endpoint.releasePermission();
+        assertTrue(endpoint.tryAcquirePermission());
+        assertSame(CircuitState.HALF_OPEN, endpoint.getState());
+    }
+
+    @Test
+    public void resetClosesCircuit()
+    {
+        final Endpoint endpoint = this.openEndpoint();
+        endpoint.reset();
+        assertSame(CircuitState.CLOSED, endpoint.getState());
+        assertTrue(endpoint.tryAcquirePermission());
+    }
+
+    @Test
+    public void concurrencyLimitDependsOnDelegate()
+    {
+        assertEquals(1, this.transport.new Endpoint(ROUTE).concurrencyLimit);
+
+        this.nonBlocking = true;
+        final Endpoint endpoint = this.transport.new Endpoint(ROUTE);
+        assertEquals(3, endpoint.concurrencyLimit);
+        for (int idx = 0; idx < 3; idx++)
+        {
+            assertTrue(endpoint.tryAcquireConcurrencySlot(false));
+        }
+        assertFalse(endpoint.tryAcquireConcurrencySlot(false));
+        endpoint.releaseConcurrencySlot();
+        assertTrue(endpoint.tryAcquireConcurrencySlot(false));
+    }
+
+    @Test
+    public void completeReleasesConcurrencySlot()
+    {
+        final WebhookRequest request = request();
+        final Endpoint endpoint = this.transport.acquire(request, false);
+        this.expectRejected(request);
+        assertEquals(1, this.transport.getConcurrencyLimitRejectedCount());
+
+        this.transport.complete(endpoint, System.nanoTime(), null);
+        assertSame(endpoint, this.transport.acquire(request, false));
+    }
+
+    @Test
+    public void rejectionByConcurrencyLimitReleasesPermission()
+    {
+        this.transport.setWaitDurationInOpenState(0);
+        final WebhookRequest request = request();
+        final Endpoint endpoint = this.transport.acquire(request, false);
+        this.openEndpoint(endpoint);
+
+        // first probe permission is taken by the rejected call and must be returned
+        this.expectRejected(request);
+        assertTrue(endpoint.tryAcquirePermission());
+        assertTrue(endpoint.tryAcquirePermission());
+    }
+
+    @Test
+    public void nonEndpointErrorReleasesPermissionWithoutRecording()
+    {
+        this.transport.setWaitDurationInOpenState(0);
+        final WebhookRequest request = request();
+        final Endpoint endpoint = this.openEndpoint(request);
+
+        assertSame(endpoint, this.transport.acquire(request, false));
+        assertTrue(endpoint.tryAcquirePermission());
+        assertFalse(endpoint.tryAcquirePermission());
+
+        this.transport.complete(endpoint, System.nanoTime(), new IllegalStateException("payload could not be read"));
+        assertSame(CircuitState.HALF_OPEN, endpoint.getState());
+        assertTrue(endpoint.tryAcquirePermission());
+    }
+
+    @Test
+    public void permanentClientErrorCountsAsSuccess()
+    {
+        this.transport.setWaitDurationInOpenState(0);
+        final WebhookRequest request = request();
+        final Endpoint endpoint = this.openEndpoint(request);
+
+        assertSame(endpoint, this.transport.acquire(request, false));
+        this.transport.complete(endpoint, System.nanoTime(), new WebhookCallException("Bad request", 400));
+        assertSame(endpoint, this.transport.acquire(request, false));
+        this.transport.complete(endpoint, System.nanoTime(), new WebhookCallException("Bad request", 400));
+        assertSame(CircuitState.CLOSED, endpoint.getState());
+    }
+
+    @Test
+    public void openCircuitRejectsWithRemainingDuration()
+    {
+        final WebhookRequest request = request();
+        this.openEndpoint(request);
+
+        final WebhookCallRejectedException rejected = this.expectRejected(request);
+        assertTrue(rejected.getRetryAfter() > 0);
+        assertEquals(1, this.transport.getCircuitOpenRejectedCount());
+    }
+
+    private Endpoint openEndpoint()
+    {
+        return this.openEndpoint(this.transport.new Endpoint(ROUTE));
+    }
+
+    private Endpoint openEndpoint(final WebhookRequest request)
+    {
+        return this.openEndpoint(this.transport.endpoints.computeIfAbsent(request.getRoute(), route -> this.transport.new Endpoint(route)));
+    }
+
+    private Endpoint openEndpoint(final Endpoint endpoint)
+    {
+        for (int idx = 0; idx < 4; idx++)
+        {
+            endpoint.onResult(true, FAST);
+        }
+        assertSame(CircuitState.OPEN, endpoint.getState());
+        return endpoint;
+    }
+
+    private WebhookCallRejectedException expectRejected(final WebhookRequest request)
+    {
+        try
+        {
+            this.transport.acquire(request, false);
+            fail("Call should have been rejected");
+            return null;
+        }
+        catch (final WebhookCallRejectedException expected)
+        {
+            return expected;
+        }
+    }
+
+    private static WebhookRequest request()
+    {
+        return new WebhookRequest(ROUTE + "/hook", ContentType.APPLICATION_JSON, "{}", Collections.emptyList());
+    }
+}
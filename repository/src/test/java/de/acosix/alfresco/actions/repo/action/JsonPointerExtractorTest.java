@@ -0,0 +1,296 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link JsonPointerExtractor}.
+ *
+ * @author Axel Faust
+ */
+public class JsonPointerExtractorTest
+{
+
+    private static final String DOCUMENT = "{\n" //
+            + "  \"id\": \"4711\",\n" //
+            + "  \"count\": -12.5e3,\n" //
+            + "  \"flag\": true,\n" //
+            + "  \"none\": null,\n" //
+            + "  \"text\": \"line\\nbreak \\\"quoted\\\" \\\\ \\/ \\t\\b\\f\\r\",\n" //
+            + "  \"unicode\": \"\\u00fc\\u00DF \\uD83D\\uDE00\",\n" //
+            + "  \"a/b\": \"slash\",\n" //
+            + "  \"m~n\": \"tilde\",\n" //
+            + "  \"\": \"empty key\",\n" //
+            + "  \"nested\": { \"list\": [ 1, { \"deep\": [ [], {}, \"x\" ] }, [ \"y\", \"z\" ] ], \"empty\": {} },\n" //
+            + "  \"skipped\": { \"id\": \"not this one\", \"list\": [ \"\\u0041\", { \"x\": [ ] } ] },\n" //
+            + "  \"last\": \"end\"\n" //
+            + "}";
+
+    @Test
+    public void scalarValues()
+    {
+        final Map<String, String> values = extract(DOCUMENT, "/id", "/count", "/flag", "/none", "/last");
+
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("/id", "4711");
+        expected.put("/count", "-12.5e3");
+        expected.put("/flag", "true");
+        expected.put("/none", null);
+        expected.put("/last", "end");
+        assertEquals(expected, values);
+    }
+
+    @Test
+    public void escapes()
+    {
+        final Map<String, String> values = extract(DOCUMENT, "/text", "/unicode");
+        assertEquals("line\nbreak \"quoted\" \\ / \t\b\f\r", values.get("/text"));
+        assertEquals("\u00fc\u00df \ud83d\ude00", values.get("/unicode"));
+    }
+
+    @Test
+    public void escapedPointerTokens()
+    {
+        final Map<String, String> values = extract(DOCUMENT, "/a~1b", "/m~0n", "/");
+        assertEquals("slash", values.get("/a~1b"));
+        assertEquals("tilde", values.get("/m~0n"));
+        assertEquals("empty key", values.get("/"));
+
+        assertEquals(Collections.singletonMap("/k~1~0", "v"), extract("{\"k/~\":\"v\",\"k~/\":\"w\"}", "/k~1~0"));
+        assertEquals(Collections.singletonMap("/k~01", "v"), extract("{\"k~1\":\"v\",\"k/\":\"w\"}", "/k~01"));
+    }
+
+    @Test
+    public void escapedKeys()
+    {
+        assertEquals(Collections.singletonMap("/a\"b", "1"), extract("{\"a\\\"b\": 1}", "/a\"b"));
+        assertEquals(Collections.singletonMap("/\u00fc", "2"), extract("{\"\\u00FC\": 2}", "/\u00fc"));
+    }
+
+    @Test
+    public void nestedValues()
+    {
+        final Map<String, String> values = extract(DOCUMENT, "/nested/list/0", "/nested/list/1/deep/2", "/nested/list/2/1",
+                "/nested/list/1/deep/0", "/nested/empty");
+
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("/nested/list/0", "1");
+        expected.put("/nested/list/1/deep/2", "x");
+        expected.put("/nested/list/2/1", "z");
+        expected.put("/nested/list/1/deep/0", "[]");
+        expected.put("/nested/empty", "{}");
+        assertEquals(expected, values);
+    }
+
+    @Test
+    public void containerValuesAsSource()
+    {
+        final Map<String, String> values = extract(DOCUMENT, "/nested/list", "/nested/list/1/deep/2");
+        assertEquals("[ 1, { \"deep\": [ [], {}, \"x\" ] }, [ \"y\", \"z\" ] ]", values.get("/nested/list"));
+        assertEquals("x", values.get("/nested/list/1/deep/2"));
+
+        assertEquals(Collections.singletonMap("", "[1, \"a\"]"), extract("[1, \"a\"]", ""));
+    }
+
+    @Test
+    public void onlyRequestedPathsMatch()
+    {
+        final Map<String, String> values = extract(DOCUMENT, "/skipped/list/0", "/id", "/nested/list/3", "/missing");
+        assertEquals("A", values.get("/skipped/list/0"));
+        assertEquals("4711", values.get("/id"));
+        assertFalse(values.containsKey("/nested/list/3"));
+        assertFalse(values.containsKey("/missing"));
+        assertEquals(2, values.size());
+    }
+
+    @Test
+    public void rootScalars()
+    {
+        assertEquals(Collections.singletonMap("", "42"), extract("42", ""));
+        assertEquals(Collections.singletonMap("", "42"), extract(" 42 ", ""));
+        assertEquals(Collections.singletonMap("", "text"), extract("\"text\"", ""));
+        assertEquals(Collections.singletonMap("", null), extract("null", ""));
+    }
+
+    @Test
+    public void everyChunkBoundary()
+    {
+        final String[] pointers = { "/id", "/count", "/flag", "/none", "/text", "/unicode", "/a~1b", "/m~0n", "/", "/nested/list",
+                "/nested/list/1/deep/2", "/nested/empty", "/skipped/list/0", "/last" };
+        final Map<String, String> expected = extract(DOCUMENT, pointers);
+        assertEquals(pointers.length, expected.size());
+
+        final char[] chars = DOCUMENT.toCharArray();
+        for (int split = 0; split <= chars.length; split++)
+        {
+            final JsonPointerExtractor extractor = new JsonPointerExtractor(Arrays.asList(pointers));
+            extractor.accept(chars, 0, split);
+            extractor.accept(chars, split, chars.length - split);
+            extractor.finish();
+            assertFalse("Split at " + split, extractor.isInvalid());
+            assertEquals("Split at " + split, expected, extractor.getValues());
+        }
+
+        final JsonPointerExtractor extractor = new JsonPointerExtractor(Arrays.asList(pointers));
+        for (final char c : chars)
+        {
+            extractor.accept(new char[] { c }, 0, 1);
+        }
+        extractor.finish();
+        assertEquals(expected, extractor.getValues());
+    }
+
+    @Test
+    public void stopsWhenAllValuesFound()
+    {
+        final String document = "{\"a\": 1, \"b\": \"two\", \"c\": [3], \"rest\": ";
+        assertDoneAfter(document, "/a", "{\"a\": 1,");
+        assertDoneAfter(document, "/b", "{\"a\": 1, \"b\": \"two\"");
+        assertDoneAfter(document, "/c", "{\"a\": 1, \"b\": \"two\", \"c\": [3]");
+        assertDoneAfter(document, "/c/0", "{\"a\": 1, \"b\": \"two\", \"c\": [3]");
+    }
+
+    @Test
+    public void stopsAfterRootValue()
+    {
+        final JsonPointerExtractor extractor = new JsonPointerExtractor(Collections.singleton("/missing"));
+        final String document = "{\"a\": 1} trailing garbage";
+        final char[] chars = document.toCharArray();
+        assertFalse(extractor.accept(chars, 0, chars.length));
+        assertTrue(extractor.isDone());
+        assertFalse(extractor.isInvalid());
+        assertTrue(extractor.getValues().isEmpty());
+    }
+
+    @Test
+    public void noPointers()
+    {
+        final JsonPointerExtractor extractor = new JsonPointerExtractor(Collections.<String> emptySet());
+        assertTrue(extractor.isDone());
+        assertFalse(extractor.accept('{'));
+    }
+
+    @Test
+    public void invalidDocuments()
+    {
+        assertInvalid("{a: 1}");
+        assertInvalid("{\"a\" 1}");
+        assertInvalid("{\"a\": 1 \"b\": 2}");
+        assertInvalid("[1 2]");
+        assertInvalid("{\"a\": 1]");
+        assertInvalid("[1}");
+        assertInvalid("{\"a\": \"\\u00zz\"}");
+        assertInvalid("{\"a\": ?}");
+        assertInvalid("{\"a\": ");
+        assertInvalid("{\"a\": \"unterminated");
+        assertInvalid("[1, 2");
+        assertInvalid("");
+    }
+
+    @Test
+    public void invalidDocumentKeepsValuesFoundBefore()
+    {
+        final JsonPointerExtractor extractor = new JsonPointerExtractor(Arrays.asList("/a", "/b"));
+        final char[] chars = "{\"a\": 1, \"b\" 2}".toCharArray();
+        assertFalse(extractor.accept(chars, 0, chars.length));
+        assertTrue(extractor.isInvalid());
+        assertEquals(Collections.singletonMap("/a", "1"), extractor.getValues());
+    }
+
+    @Test
+    public void pointerValidation()
+    {
+        assertTrue(JsonPointerExtractor.isValidPointer(""));
+        assertTrue(JsonPointerExtractor.isValidPointer("/"));
+        assertTrue(JsonPointerExtractor.isValidPointer("/a/0/~0~1"));
+        assertFalse(JsonPointerExtractor.isValidPointer(null));
+        assertFalse(JsonPointerExtractor.isValidPointer("a"));
+        assertFalse(JsonPointerExtractor.isValidPointer("/a~"));
+        assertFalse(JsonPointerExtractor.isValidPointer("/a~2"));
+
+        try
+        {
+            new JsonPointerExtractor(Collections.singleton("a/b"));
+            fail("Invalid pointer should have been rejected");
+        }
+        catch (final IllegalArgumentException expected)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void valuesAreReadOnly()
+    {
+        final Map<String, String> values = extract("{\"a\": 1}", "/a");
+        try
+        {
+            values.put("/b", "2");
+            fail("values should be read-only");
+        }
+        catch (final UnsupportedOperationException expected)
+        {
+            // expected
+        }
+        assertNull(values.get("/b"));
+    }
+
+    private static Map<String, String> extract(final String document, final String... pointers)
+    {
+        final JsonPointerExtractor extractor = new JsonPointerExtractor(Arrays.asList(pointers));
+        final char[] chars = document.toCharArray();
+        extractor.accept(chars, 0, chars.length);
+        extractor.finish();
+        assertFalse(document, extractor.isInvalid());
+        return extractor.getValues();
+    }
+
+    private static void assertDoneAfter(final String document, final String pointer, final String expectedPrefix)
+    {
+        final JsonPointerExtractor extractor = new JsonPointerExtractor(Collections.singleton(pointer));
+        int consumed = 0;
+        while (consumed < document.length() && extractor.accept(document.charAt(consumed)))
+        {
+            consumed++;
+        }
+        assertTrue(pointer, extractor.isDone());
+        assertFalse(pointer, extractor.isInvalid());
+        assertEquals(pointer, expectedPrefix, document.substring(0, consumed + 1));
+        assertEquals(1, extractor.getValues().size());
+    }
+
+    private static void assertInvalid(final String document)
+    {
+        final JsonPointerExtractor extractor = new JsonPointerExtractor(Collections.singleton("/b"));
+        final char[] chars = document.toCharArray();
+        extractor.accept(chars, 0, chars.length);
+        extractor.finish();
+        assertTrue(document, extractor.isInvalid());
+        assertTrue(document, extractor.isDone());
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.alfresco.util.Pair;
+import org.junit.Test;
+
+/**
+ * Tests for {@link KeyValueParameterParser}. Cases in which the syntax differs from the split-based parsing used before the parser was
+ * introduced are pinned against a copy of the legacy implementation, so that any further change to the semantics of stored action
+ * parameters is a deliberate one.
+ *
+ * @author Axel Faust
+ */
+public class KeyValueParameterParserTest
+{
+
+    private static final String PARAM = "headers";
+
+    @Test
+    public void simpleLines()
+    {
+        final String value = "a=1\nb=2";
+        assertEquals(pairs("a", "1", "b", "2"), KeyValueParameterParser.parse(PARAM, value));
+        assertEquals(KeyValueParameterParser.parse(PARAM, value), legacyParse(value));
+    }
+
+    @Test
+    public void surroundingWhitespaceIsTrimmed()
+    {
+        final String value = "  a  =  1  \n\tb\t=\t2\t";
+        assertEquals(pairs("a", "1", "b", "2"), KeyValueParameterParser.parse(PARAM, value));
+        assertEquals(KeyValueParameterParser.parse(PARAM, value), legacyParse(value));
+    }
+
+    @Test
+    public void valueMayContainSeparator()
+    {
+        final String value = "a = b = c";
+        assertEquals(pairs("a", "b = c"), KeyValueParameterParser.parse(PARAM, value));
+        assertEquals(KeyValueParameterParser.parse(PARAM, value), legacyParse(value));
+    }
+
+    @Test
+    public void crLfLineEndings()
+    {
+        final String value = "a=1\r\nb=2\r\n";
+        assertEquals(pairs("a", "1", "b", "2"), KeyValueParameterParser.parse(PARAM, value));
+        // legacy parser only split on \n, but trimmed the remaining \r
+        assertEquals(KeyValueParameterParser.parse(PARAM, value), legacyParse(value));
+    }
+
+    @Test
+    public void crLineEndings()
+    {
+        final String value = "a=1\rb=2";
+        assertEquals(pairs("a", "1", "b", "2"), KeyValueParameterParser.parse(PARAM, value));
+        // legacy parser treated a lone \r as part of the value
+        assertEquals(pairs("a", "1\rb=2"), legacyParse(value));
+    }
+
+    @Test
+    public void escapedSeparatorInKey()
+    {
+        final String value = "a\\=b=c";
+        assertEquals(pairs("a=b", "c"), KeyValueParameterParser.parse(PARAM, value));
+        // legacy parser had no escapes and split on the first =
+        assertEquals(pairs("a\\", "b=c"), legacyParse(value));
+    }
+
+    @Test
+    public void escapedSeparatorInValue()
+    {
+        final String value = "a=b\\=c";
+        assertEquals(pairs("a", "b=c"), KeyValueParameterParser.parse(PARAM, value));
+        assertEquals(pairs("a", "b\\=c"), legacyParse(value));
+    }
+
+    @Test
+    public void escapedBackslash()
+    {
+        final String value = "a\\\\b=c\\\\d";
+        assertEquals(pairs("a\\b", "c\\d"), KeyValueParameterParser.parse(PARAM, value));
+        // legacy parser kept double backslashes as-is
+        assertEquals(pairs("a\\\\b", "c\\\\d"), legacyParse(value));
+    }
+
+    @Test
+    public void otherBackslashesAreKept()
+    {
+        final String value = "a\\b=c\\d";
+        assertEquals(pairs("a\\b", "c\\d"), KeyValueParameterParser.parse(PARAM, value));
+        assertEquals(KeyValueParameterParser.parse(PARAM, value), legacyParse(value));
+    }
+
+    @Test
+    public void trailingBackslash()
+    {
+        final String value = "a=b\\\nc=d\\";
+        assertEquals(pairs("a", "b\\", "c", "d\\"), KeyValueParameterParser.parse(PARAM, value));
+        assertEquals(KeyValueParameterParser.parse(PARAM, value), legacyParse(value));
+    }
+
+    @Test
+    public void trailingBackslashBeforeSeparatorEscapesIt()
+    {
+        expectInvalid("a\\=b", "line 1");
+    }
+
+    @Test
+    public void emptyValue()
+    {
+        final String value = "a=\nb = ";
+        assertEquals(pairs("a", "", "b", ""), KeyValueParameterParser.parse(PARAM, value));
+        // legacy parser rejected empty values
+        try
+        {
+            legacyParse(value);
+            fail("legacy parser should have rejected empty value");
+        }
+        catch (final IllegalArgumentException expected)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void commentLines()
+    {
+        final String value = "# comment\n  #a=1\nb=2";
+        assertEquals(pairs("b", "2"), KeyValueParameterParser.parse(PARAM, value));
+        // legacy parser treated # as part of the key
+        try
+        {
+            legacyParse(value);
+            fail("legacy parser should have rejected comment line without =");
+        }
+        catch (final IllegalArgumentException expected)
+        {
+            // expected
+        }
+        assertEquals(pairs("#a", "1", "b", "2"), legacyParse("#a=1\nb=2"));
+    }
+
+    @Test
+    public void hashInsideValueIsNoComment()
+    {
+        final String value = "a=#1";
+        assertEquals(pairs("a", "#1"), KeyValueParameterParser.parse(PARAM, value));
+        assertEquals(KeyValueParameterParser.parse(PARAM, value), legacyParse(value));
+    }
+
+    @Test
+    public void blankLinesAreSkipped()
+    {
+        final String value = "\na=1\n\n   \nb=2\n";
+        assertEquals(pairs("a", "1", "b", "2"), KeyValueParameterParser.parse(PARAM, value));
+    }
+
+    @Test
+    public void emptyParameter()
+    {
+        assertEquals(Collections.emptyList(), KeyValueParameterParser.parse(PARAM, ""));
+        assertEquals(Collections.emptyList(), KeyValueParameterParser.parse(PARAM, "\n\r\n# only a comment"));
+    }
+
+    @Test
+    public void missingSeparator()
+    {
+        expectInvalid("a=1\nb", "line 2");
+    }
+
+    @Test
+    public void emptyKey()
+    {
+        expectInvalid("a=1\r\n\r\n  = 2", "line 3");
+    }
+
+    @Test
+    public void resultIsReadOnly()
+    {
+        final List<Pair<String, String>> keyValues = KeyValueParameterParser.parse(PARAM, "a=1");
+        try
+        {
+            keyValues.add(new Pair<>("b", "2"));
+            fail("result should be read-only");
+        }
+        catch (final UnsupportedOperationException expected)
+        {
+            // expected
+        }
+    }
+
+    private static void expectInvalid(final String value, final String expectedLine)
+    {
+        try
+        {
+            KeyValueParameterParser.parse(PARAM, value);
+            fail("Parser should have rejected " + value);
+        }
+        catch (final IllegalArgumentException iae)
+        {
+            assertTrue(iae.getMessage(), iae.getMessage().startsWith(PARAM + " " + expectedLine + " "));
+        }
+    }
+
+    private static List<Pair<String, String>> pairs(final String... keyValues)
+    {
+        final List<Pair<String, String>> pairs = new ArrayList<>();
+        for (int idx = 0; idx < keyValues.length; idx += 2)
+        {
+            pairs.add(new Pair<>(keyValues[idx], keyValues[idx + 1]));
+        }
+        return pairs;
+    }
+
+    /**
+     * Copy of the split-based parsing used before {@link KeyValueParameterParser} was introduced.
+     */
+    private static List<Pair<String, String>> legacyParse(final String parameterValue)
+    {
+        final List<Pair<String, String>> keyValues = new ArrayList<>();
+        for (final String line : Arrays.asList(parameterValue.split("\\n")))
+        {
+            final String[] keyVals = line.split("=");
+            if (keyVals.length >= 2)
+            {
+                final String key = keyVals[0].trim();
+                final String value = line.substring(line.indexOf('=', key.length()) + 1).trim();
+                keyValues.add(new Pair<>(key, value));
+            }
+            else
+            {
+                throw new IllegalArgumentException(PARAM + " must be provided as multiple text lines of =-separated keys + values");
+            }
+        }
+        return keyValues;
+    }
+}
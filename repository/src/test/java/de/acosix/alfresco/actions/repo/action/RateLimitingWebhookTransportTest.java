@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.actions.repo.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.acosix.alfresco.actions.repo.action.RateLimitingWebhookTransport.TokenBucket;
+
+/**
+ * Tests for the token buckets of {@link RateLimitingWebhookTransport}.
+ *
+ * @author Axel Faust
+ */
+public class RateLimitingWebhookTransportTest
+{
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // tolerance for the time elapsing (and tokens being refilled) between reservations
+    private static final long TOLERANCE = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    public void unlimitedBucketNeverDelays()
+    {
+        final TokenBucket bucket = new TokenBucket("unlimited", 0, 0);
+        final long now = System.nanoTime();
+        for (int idx = 0; idx < 100; idx++)
+        {
+            assertEquals(now, bucket.reserve(now, now, 1));
+        }
+    }
+
+    @Test
+    public void burstIsAvailableImmediately()
+    {
+        final TokenBucket bucket = new TokenBucket("burst", 1, 3);
+        for (int idx = 0; idx < 3; idx++)
+        {
+            assertImmediate(bucket.reserve(System.nanoTime(), Long.MAX_VALUE, 1));
+        }
+        assertDelayed(SECOND, bucket.reserve(System.nanoTime(), Long.MAX_VALUE, 1));
+    }
+
+    @Test
+    public void waitingCallsReserveConsecutiveTokens()
+    {
+        final TokenBucket bucket = new TokenBucket("queue", 1, 1);
+        assertImmediate(bucket.reserve(System.nanoTime(), Long.MAX_VALUE, 1));
+
+        // each waiting call leaves the bucket with one more negative token
+        final long start = System.nanoTime();
+        final long second = bucket.reserve(start, Long.MAX_VALUE, 1);
+        final long third = bucket.reserve(start, Long.MAX_VALUE, 1);
+        final long fourth = bucket.reserve(start, Long.MAX_VALUE, 1);
+        assertDelayed(SECOND, start, second);
+        assertDelayed(2 * SECOND, start, third);
+        assertDelayed(3 * SECOND, start, fourth);
+        assertTrue(bucket.tokens < -2);
+    }
+
+    @Test
+    public void reservationBeyondLatestTimeTakesNoToken()
+    {
+        final TokenBucket bucket = new TokenBucket("latest", 1, 1);
+        assertImmediate(bucket.reserve(System.nanoTime(), Long.MAX_VALUE, 1));
+
+        final long start = System.nanoTime();
+        final long latest = start + SECOND / 2;
+        final long rejected = bucket.reserve(start, latest, 1);
+        assertTrue(rejected > latest);
+        assertDelayed(SECOND, start, rejected);
+
+        // the next call still gets the token the rejected call would have had
+        assertDelayed(SECOND, start, bucket.reserve(start, Long.MAX_VALUE, 1));
+    }
+
+    @Test
+    public void earliestTimeIsRespected()
+    {
+        final TokenBucket bucket = new TokenBucket("earliest", 1, 1);
+        final long earliest = System.nanoTime() + 5 * SECOND;
+        assertEquals(earliest, bucket.reserve(earliest, Long.MAX_VALUE, 1));
+    }
+
+    @Test
+    public void rateAndBurstAreSharedAmongMembers()
+    {
+        final TokenBucket bucket = new TokenBucket("shared", 10, 10);
+        // each of two members only gets half of the burst
+        for (int idx = 0; idx < 5; idx++)
+        {
+            assertImmediate(bucket.reserve(System.nanoTime(), Long.MAX_VALUE, 2));
+        }
+        // ... and half of the rate
+        assertDelayed(SECOND / 5, bucket.reserve(System.nanoTime(), Long.MAX_VALUE, 2));
+    }
+
+    @Test
+    public void eachMemberGetsAtLeastOneToken()
+    {
+        final TokenBucket bucket = new TokenBucket("members", 1, 1);
+        assertImmediate(bucket.reserve(System.nanoTime(), Long.MAX_VALUE, 4));
+        assertDelayed(4 * SECOND, bucket.reserve(System.nanoTime(), Long.MAX_VALUE, 4));
+    }
+
+    private static void assertImmediate(final long proceedAt)
+    {
+        assertTrue("Call should not have been delayed", proceedAt <= System.nanoTime());
+    }
+
+    private static void assertDelayed(final long expectedDelay, final long proceedAt)
+    {
+        assertDelayed(expectedDelay, System.nanoTime(), proceedAt);
+    }
+
+    private static void assertDelayed(final long expectedDelay, final long start, final long proceedAt)
+    {
+        final long delay = proceedAt - start;
+        assertTrue("Delay of " + delay + " ns should be close to " + expectedDelay + " ns", Math.abs(delay - expectedDelay) <= TOLERANCE);
+    }
+}
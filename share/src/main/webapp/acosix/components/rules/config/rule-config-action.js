@@ -16,34 +16,47 @@
 
 (function()
 {
-    var Dom, $html;
+    var Dom, $html, registerConfigDialog;
 
     Dom = YAHOO.util.Dom;
     $html = Alfresco.util.encodeHTML;
 
-    if (Alfresco.RuleConfigAction)
+    /**
+     * Registers a customisation for an action which is configured via a dialog using the action form instead of the default parameter
+     * controls. The parameters are validated by the action-specific validation web script before being applied.
+     *
+     * @param actionName the name of the action
+     * @param textProps the names of the text parameters
+     * @param booleanProps the names of the boolean parameters
+     */
+    registerConfigDialog = function acosix_actions_RCA_registerConfigDialog(actionName, textProps, booleanProps)
     {
-        Alfresco.RuleConfigAction.prototype.customisations['acosix-actions.webhookCall'] = {
+        var rendererName, shortName;
+
+        rendererName = actionName + '.configDialogButton';
+        shortName = actionName.substring(actionName.lastIndexOf('.') + 1);
+
+        Alfresco.RuleConfigAction.prototype.customisations[actionName] = {
             itemType : 'action',
-            edit : function acosix_actions_RCA_webhookCall(configDef)
+            edit : function acosix_actions_RCA_configDialogAction(configDef)
             {
                 // custom UI, so hide default
                 this._hideParameters(configDef.parameterDefinitions);
 
                 configDef.parameterDefinitions.push({
-                    type : 'acosix-actions.webhookCall.configDialogButton',
+                    type : rendererName,
                     _buttonLabel : this.msg('button.options')
                 });
                 return configDef;
             }
         };
 
-        Alfresco.RuleConfigAction.prototype.renderers['acosix-actions.webhookCall.configDialogButton'] = {
+        Alfresco.RuleConfigAction.prototype.renderers[rendererName] = {
             manual : {
                 edit : true
             },
             currentCtx : {},
-            edit : function acosix_actions_RCA_webhookCall_configDialogButton(containerEl, configDef, paramDef, ruleConfig)
+            edit : function acosix_actions_RCA_configDialogButton(containerEl, configDef, paramDef, ruleConfig)
             {
                 this
                         ._createButton(
@@ -51,19 +64,20 @@
                                 configDef,
                                 paramDef,
                                 ruleConfig,
-                                function acosix_actions_RCA_webhookCall_configDialog__onClick(type, obj)
+                                function acosix_actions_RCA_configDialog__onClick(type, obj)
                                 {
-                                    var scope, templateUrl;
+                                    var scope, templateUrl, widgetName;
 
-                                    this.renderers['acosix-actions.webhookCall.configDialogButton'].currentCtx = {
+                                    this.renderers[rendererName].currentCtx = {
                                         configDef : obj.configDef,
                                         ruleConfig : obj.ruleConfig
                                     };
 
-                                    if (!this.widgets.acosixActionsWebhookConfigForm)
+                                    widgetName = 'acosixActionsConfigForm-' + shortName;
+                                    if (!this.widgets[widgetName])
                                     {
-                                        this.widgets.acosixActionsWebhookConfigForm = new Alfresco.module.SimpleDialog(this.id
-                                                + '-webhookCall.configDialog-' + Alfresco.util.generateDomId());
+                                        this.widgets[widgetName] = new Alfresco.module.SimpleDialog(this.id + '-' + shortName
+                                                + '.configDialog-' + Alfresco.util.generateDomId());
 
                                         templateUrl = YAHOO.lang
                                                 .substitute(
@@ -71,66 +85,131 @@
                                                                 + 'components/form?itemKind={itemKind}&itemId={itemId}&mode={mode}&submitType={submitType}&showCancelButton=true',
                                                         {
                                                             itemKind : 'action',
-                                                            itemId : 'acosix-actions.webhookCall',
+                                                            itemId : actionName,
                                                             mode : 'edit',
                                                             submitType : 'json'
                                                         });
 
                                         scope = this;
-                                        this.widgets.acosixActionsWebhookConfigForm.setOptions({
+                                        this.widgets[widgetName].setOptions({
                                             width : 'auto',
                                             templateUrl : templateUrl,
                                             actionUrl : null,
                                             destroyOnHide : false,
                                             doBeforeDialogShow : {
-                                                fn : function acosix_actions_RCA_webhookCall_configDialog__beforeDialogShow(form, dialog)
+                                                fn : function acosix_actions_RCA_configDialog__beforeDialogShow(form, dialog)
                                                 {
-                                                    var ctx, params, props, idx;
+                                                    var ctx, params, idx, checked;
 
                                                     Alfresco.util.populateHTML([ dialog.id + '-dialogTitle',
                                                             $html(scope.msg('button.options')) ]);
 
-                                                    ctx = scope.renderers['acosix-actions.webhookCall.configDialogButton'].currentCtx;
+                                                    ctx = scope.renderers[rendererName].currentCtx;
                                                     params = scope._getParameters(ctx.configDef);
-                                                    props = [ 'urlTemplate', 'urlTemplateArguments', 'payloadTemplate',
-                                                            'payloadTemplateArguments', 'payloadMimetype', 'payloadMimetype', 'headers' ];
 
-                                                    for (idx = 0; idx < props.length; idx++)
+                                                    for (idx = 0; idx < textProps.length; idx++)
+                                                    {
+                                                        Dom.get(this.id + '_prop_' + textProps[idx]).value = params[textProps[idx]] || '';
+                                                    }
+
+                                                    // boolean checkbox control keeps its state in a separate entry element
+                                                    for (idx = 0; idx < booleanProps.length; idx++)
                                                     {
-                                                        Dom.get(this.id + '_prop_' + props[idx]).value = params[props[idx]] || '';
+                                                        checked = String(params[booleanProps[idx]]) === 'true';
+                                                        Dom.get(this.id + '_prop_' + booleanProps[idx]).value = checked ? 'true' : 'false';
+                                                        Dom.get(this.id + '_prop_' + booleanProps[idx] + '-entry').checked = checked;
                                                     }
                                                 },
-                                                scope : this.widgets.acosixActionsWebhookConfigForm
+                                                scope : this.widgets[widgetName]
                                             },
                                             doBeforeAjaxRequest : {
-                                                fn : function acosix_actions_RCA_webhookCall_configDialog__beforeAjaxRequest(config)
+                                                fn : function acosix_actions_RCA_configDialog__beforeAjaxRequest(config)
                                                 {
-                                                    var ctx, props, idx;
+                                                    var ctx, params, idx, checked, dialog;
 
-                                                    ctx = scope.renderers['acosix-actions.webhookCall.configDialogButton'].currentCtx;
-                                                    props = [ 'urlTemplate', 'urlTemplateArguments', 'payloadTemplate',
-                                                            'payloadTemplateArguments', 'payloadMimetype', 'payloadMimetype', 'headers' ];
+                                                    ctx = scope.renderers[rendererName].currentCtx;
 
-                                                    for (idx = 0; idx < props.length; idx++)
+                                                    params = {};
+                                                    for (idx = 0; idx < textProps.length; idx++)
                                                     {
-                                                        scope._setHiddenParameter(ctx.configDef, ctx.ruleConfig, props[idx],
-                                                                config.dataObj['prop_' + props[idx]] || null);
+                                                        params[textProps[idx]] = config.dataObj['prop_' + textProps[idx]] || null;
+                                                    }
+                                                    for (idx = 0; idx < booleanProps.length; idx++)
+                                                    {
+                                                        checked = String(config.dataObj['prop_' + booleanProps[idx]]) === 'true';
+                                                        params[booleanProps[idx]] = checked ? 'true' : 'false';
                                                     }
 
-                                                    scope._updateSubmitElements(ctx.configDef);
+                                                    // validate before applying so errors are reported in the dialog
+                                                    dialog = this;
+                                                    Alfresco.util.Ajax.jsonPost({
+                                                        url : Alfresco.constants.PROXY_URI + 'acosix/api/actions/' + shortName
+                                                                + '/validate',
+                                                        dataObj : {
+                                                            params : params
+                                                        },
+                                                        successCallback : {
+                                                            fn : function acosix_actions_RCA_configDialog__validated(response)
+                                                            {
+                                                                var param;
+
+                                                                if (response.json && response.json.valid === true)
+                                                                {
+                                                                    for (param in params)
+                                                                    {
+                                                                        if (params.hasOwnProperty(param))
+                                                                        {
+                                                                            scope._setHiddenParameter(ctx.configDef, ctx.ruleConfig, param,
+                                                                                    params[param]);
+                                                                        }
+                                                                    }
+
+                                                                    scope._updateSubmitElements(ctx.configDef);
+
+                                                                    dialog.widgets.cancelButton.set('disabled', false);
+                                                                    dialog.hide();
+                                                                }
+                                                                else
+                                                                {
+                                                                    Alfresco.util.PopupManager.displayPrompt({
+                                                                        text : Alfresco.util.message('acosix-actions.' + shortName
+                                                                                + '.validation.failure', null,
+                                                                                response.json ? response.json.message : '')
+                                                                    });
+                                                                    dialog.widgets.okButton.set('disabled', false);
+                                                                    dialog.widgets.cancelButton.set('disabled', false);
+                                                                }
+                                                            }
+                                                        },
+                                                        failureMessage : Alfresco.util.message('acosix-actions.' + shortName
+                                                                + '.validation.error'),
+                                                        failureCallback : {
+                                                            fn : function acosix_actions_RCA_configDialog__validationFailed()
+                                                            {
+                                                                dialog.widgets.okButton.set('disabled', false);
+                                                                dialog.widgets.cancelButton.set('disabled', false);
+                                                            }
+                                                        }
+                                                    });
 
-                                                    this.widgets.cancelButton.set('disabled', false);
-                                                    scope.widgets.acosixActionsWebhookConfigForm.hide();
                                                     return false;
                                                 },
-                                                scope : this.widgets.acosixActionsWebhookConfigForm
+                                                scope : this.widgets[widgetName]
                                             }
                                         });
                                     }
 
-                                    this.widgets.acosixActionsWebhookConfigForm.show();
+                                    this.widgets[widgetName].show();
                                 });
             }
         };
+    };
+
+    if (Alfresco.RuleConfigAction)
+    {
+        registerConfigDialog('acosix-actions.webhookCall', [ 'urlTemplate', 'urlTemplateArguments', 'payloadTemplate',
+                'payloadTemplateArguments', 'payloadMimetype', 'headers', 'responseMappings' ], [ 'batch' ]);
+        registerConfigDialog('acosix-actions.webhookFanOut', [ 'targets', 'targetHeaders', 'urlTemplateArguments', 'payloadTemplate',
+                'payloadTemplateArguments', 'payloadMimetype', 'headers', 'successPolicy', 'quorum', 'targetTimeout' ], []);
     }
 }());